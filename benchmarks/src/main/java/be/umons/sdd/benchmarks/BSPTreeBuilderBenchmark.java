@@ -0,0 +1,91 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.StraightSegment2D;
+import be.umons.sdd.test.BuilderSpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Measures the time needed by each BSP tree builder to build a tree for every bundled scene.
+ *
+ * <p> The scene is loaded once per trial, and a fresh builder instance is used for every
+ * invocation so that no state leaks between runs. The size and height of the resulting
+ * trees are reported as secondary results ("size" and "height", see {@link TreeCounters}) and
+ * printed at the end of each trial, since they are what the build time buys.
+ * Run it through {@link BenchmarkMain} to get the allocation rate from the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class BSPTreeBuilderBenchmark {
+
+    @Param({
+        "OCTANGLE", "OCTOGONE",
+        "ELLIPSESSMALL", "ELLIPSESMEDIUM", "ELLIPSESLARGE",
+        "RANDOMSMALL", "RANDOMMEDIUM", "RANDOMLARGE", "RANDOMHUGE",
+        "RECTANGLESMALL", "RECTANGLEMEDIUM", "RECTANGLELARGE", "RECTANGLEHUGE"
+    })
+    public String scene;
+
+    @Param({"deterministic", "random", "teller:0.1", "teller:0.5", "teller:0.9", "autopartition"})
+    public String builder;
+
+    private List<StraightSegment2D> segments;
+    private BuilderSpec builderSpec;
+
+    @Setup(Level.Trial)
+    public void loadScene() {
+        segments = BenchmarkScenes.load(scene).getSegments();
+        builderSpec = BuilderSpec.parse(builder);
+    }
+
+    @Benchmark
+    public BSPNode buildTree(TreeCounters counters) {
+        BSPTreeBuilder treeBuilder = builderSpec.create();
+        BSPNode tree = treeBuilder.buildTree(segments, null);
+        counters.tree = tree;
+        return tree;
+    }
+
+    /**
+     * Reports the size and height of the last tree built in each iteration as secondary results.
+     * JMH sums event counters over the measurement iterations, so each iteration reports its share
+     * of the mean (its value divided by the number of iterations), and the aggregated results are
+     * the mean size and height of the trees.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TreeCounters {
+        BSPNode tree;
+        private double weight = 1;
+
+        @Setup(Level.Iteration)
+        public void startIteration(IterationParams params) {
+            tree = null;
+            weight = params.getType() == IterationType.MEASUREMENT ? 1.0 / params.getCount() : 1;
+        }
+
+        public double size() { return tree == null ? 0 : weight * tree.size(); }
+        public double height() { return tree == null ? 0 : weight * tree.height(); }
+    }
+}
@@ -0,0 +1,36 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.enums.EScenes;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.utils.SceneSerializer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Helper used by the benchmarks to load the scenes bundled in src/ressources/scenes.
+ */
+final class BenchmarkScenes {
+
+    private BenchmarkScenes() {
+    }
+
+    /**
+     * Loads a bundled scene from the name of its EScenes constant (e.g. "RANDOMHUGE").
+     *
+     * @param sceneName the EScenes constant name
+     * @return the loaded scene
+     * @throws IllegalArgumentException if the name does not denote a bundled scene
+     */
+    static Scene2D load(String sceneName) {
+        EScenes scene = EScenes.valueOf(sceneName);
+        if (scene.getPath() == null || scene == EScenes.CUSTOM) {
+            throw new IllegalArgumentException("Not a bundled scene: " + sceneName);
+        }
+
+        try {
+            return SceneSerializer.readScene(scene.getDisplayName(), scene.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load scene " + sceneName, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.builders.LineKernels;
+import be.umons.sdd.builders.SegmentBatch;
+import be.umons.sdd.interfaces.LineKernel;
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the line kernels used to score candidates: one operation evaluates the support line
+ * of one segment of the scene against all the segments of the scene (side counts for the
+ * balance, cut counts for Teller). Successive operations cycle through the candidate lines.
+ *
+ * <p> "objects" is the baseline without kernel: the same loop as the builders, on the StraightSegment2D.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class LineKernelBenchmark {
+
+    private static final double EPSILON = 1e-6;
+
+    @Param({"RANDOMLARGE", "RECTANGLEHUGE"})
+    public String scene;
+
+    @Param({"objects", "scalar", "vector"})
+    public String kernel;
+
+    private List<StraightSegment2D> segments;
+    private SegmentBatch batch;
+    private Line2D[] lines;
+    private LineKernel lineKernel;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Scene2D scene2D = BenchmarkScenes.load(scene);
+        segments = scene2D.getSegments();
+        batch = SegmentBatch.of(segments);
+        lines = new Line2D[segments.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = segments.get(i).getSupportLine();
+        }
+        lineKernel = kernel.equals("objects") ? null : LineKernels.byName(kernel);
+    }
+
+    private Line2D nextLine() {
+        Line2D line = lines[next];
+        next = next + 1 == lines.length ? 0 : next + 1;
+        return line;
+    }
+
+    @Benchmark
+    public int countSides() {
+        Line2D line = nextLine();
+        if (lineKernel == null) {
+            int positive = 0;
+            int negative = 0;
+            for (StraightSegment2D segment : segments) {
+                double eval = line.evaluate(segment.getCenter());
+                if (eval > EPSILON) {
+                    positive++;
+                } else if (eval < -EPSILON) {
+                    negative++;
+                }
+            }
+            return positive - negative;
+        }
+
+        int[] counts = new int[3];
+        lineKernel.countSides(line.getA(), line.getB(), line.getC(), batch.centerX, batch.centerY, 0, batch.size, EPSILON, counts);
+        return counts[0] - counts[1];
+    }
+
+    @Benchmark
+    public int countCuts() {
+        Line2D line = nextLine();
+        if (lineKernel == null) {
+            int cuts = 0;
+            for (StraightSegment2D segment : segments) {
+                if (line.evaluate(segment.getLeftEndpoint()) * line.evaluate(segment.getRightEndpoint()) < -EPSILON) {
+                    cuts++;
+                }
+            }
+            return cuts;
+        }
+
+        return lineKernel.countCuts(line.getA(), line.getB(), line.getC(), batch.x1, batch.y1, batch.x2, batch.y2, 0, batch.size, EPSILON);
+    }
+}
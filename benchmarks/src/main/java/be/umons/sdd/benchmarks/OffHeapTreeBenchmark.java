@@ -0,0 +1,149 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.PaintersViewBuilder;
+import be.umons.sdd.interfaces.BSPTreeStore;
+import be.umons.sdd.interfaces.OffHeapBSPTree;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.FlatBSPTree;
+import be.umons.sdd.models.OffHeapBSPTrees;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.models.SegmentStore;
+import be.umons.sdd.test.BuilderSpec;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the heap footprint and the GC cost of a BSP tree stored as linked BSPNode objects ("objects"),
+ * as a FlatBSPTree on the heap ("flat") or outside of the heap, either copied from the linked tree ("offheap")
+ * or written there by the builder without any node object ("offheap-direct", see OffHeapBSPTrees#build).
+ *
+ * <p> The tree is built once per trial and only the chosen storage is kept: the scene and the linked tree
+ * are dropped for the others. The heap retained by the stored tree (the used heap after full collections,
+ * before and after the setup), the peak heap of the build (the sum of the peak usages of the heap pools,
+ * reset before the build) and the size allocated off-heap are printed as {@code [heap]} lines at the end
+ * of each trial.
+ *
+ * <p> Two benchmarks run with the tree alive:
+ * - "fullGc" times a full collection (System.gc), whose marking cost grows with the number of live objects;
+ * - "paintersAlgorithm" computes the views of the "inside" grid of {@link PaintersViewBenchmark}, reading the
+ *   tree from its storage. Run through {@link BenchmarkMain}, the GC profiler adds the time spent in collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g", "--add-modules", "jdk.incubator.foreign"})
+public class OffHeapTreeBenchmark {
+
+    @Param({"RANDOMLARGE", "RANDOMHUGE", "RECTANGLEHUGE"})
+    public String scene;
+
+    @Param({"deterministic"})
+    public String builder;
+
+    @Param({"objects", "flat", "offheap", "offheap-direct"})
+    public String storage;
+
+    private BSPNode tree;
+    private BSPTreeStore store;
+    private OffHeapBSPTree offHeap;
+    private Point2D[] grid;
+    private long retainedBytes;
+    private long peakBytes;
+
+    @Setup(Level.Trial)
+    public void storeTree() {
+        long before = usedHeap();
+        // Built in another frame, so that the scene and the linked tree are not kept alive by this one.
+        createStorage(BenchmarkScenes.load(scene));
+        retainedBytes = usedHeap() - before;
+    }
+
+    private void createStorage(Scene2D scene2D) {
+        grid = PaintersViewBenchmark.insideGrid(scene2D);
+        BSPTreeBuilder treeBuilder = BuilderSpec.parse(builder).create();
+        resetPeakHeap();
+
+        switch (storage) {
+            case "objects" -> tree = treeBuilder.buildTree(scene2D.getSegments(), null);
+            case "flat" -> store = FlatBSPTree.of(treeBuilder.buildTree(scene2D.getSegments(), null));
+            case "offheap" -> store = offHeap = OffHeapBSPTrees.of(treeBuilder.buildTree(scene2D.getSegments(), null));
+            case "offheap-direct" -> store = offHeap = OffHeapBSPTrees.build(treeBuilder, SegmentStore.of(scene2D.getSegments()));
+            default -> throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+        peakBytes = peakHeap();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void fullGc() {
+        System.gc();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(PaintersViewBenchmark.GRID_SIZE)
+    public void paintersAlgorithm(Blackhole blackhole) {
+        for (Point2D observer : grid) {
+            blackhole.consume(tree != null
+                ? PaintersViewBuilder.paintersAlgorithm(tree, observer)
+                : PaintersViewBuilder.paintersAlgorithm(store, observer));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportHeap() {
+        int nodes = tree != null ? tree.size() : store.getNodeCount();
+        int fragments = tree != null ? tree.fragmentCount() : store.getFragmentCount();
+        System.out.printf("%n[heap] scene=%s builder=%s storage=%s nodes=%d fragments=%d retained=%.1f MB peak=%.1f MB offheap=%.1f MB%n",
+            scene, builder, storage, nodes, fragments, retainedBytes / 1e6, peakBytes / 1e6, offHeap != null ? offHeap.getByteSize() / 1e6 : 0.0);
+
+        if (offHeap != null) {
+            offHeap.close();
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
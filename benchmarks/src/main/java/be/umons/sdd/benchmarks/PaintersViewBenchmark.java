@@ -0,0 +1,162 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.builders.PaintersViewBuilder;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.models.StraightSegment2D;
+import be.umons.sdd.test.BuilderSpec;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures PaintersViewBuilder.paintersAlgorithm on prebuilt trees.
+ *
+ * <p> The tree is built once per trial for the given scene and builder. Each invocation then
+ * computes the view from every position of a fixed grid of {@value #GRID_SIZE} observers, so the
+ * reported time (ns/op) and allocation (gc.alloc.rate.norm, B/op) are per computed view.
+ *
+ * <p> Three observer grids are available:
+ * - "inside": a regular 4x4 grid inside the scene extent.
+ * - "outside": a ring of positions around the scene, outside of its extent.
+ * - "partition": positions lying on the partition lines of the first internal nodes
+ *   (centers of their coplanar fragments), in breadth-first order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PaintersViewBenchmark {
+
+    static final int GRID_SIZE = 16;
+
+    @Param({
+        "OCTANGLE", "OCTOGONE",
+        "ELLIPSESSMALL", "ELLIPSESMEDIUM", "ELLIPSESLARGE",
+        "RANDOMSMALL", "RANDOMMEDIUM", "RANDOMLARGE", "RANDOMHUGE",
+        "RECTANGLESMALL", "RECTANGLEMEDIUM", "RECTANGLELARGE", "RECTANGLEHUGE"
+    })
+    public String scene;
+
+    @Param({"deterministic", "random", "teller:0.5", "costmodel"})
+    public String builder;
+
+    @Param({"inside", "outside", "partition"})
+    public String observers;
+
+    private BSPNode tree;
+    private Point2D[] grid;
+
+    @Setup(Level.Trial)
+    public void buildTree() {
+        Scene2D scene2D = BenchmarkScenes.load(scene);
+        tree = BuilderSpec.parse(builder).create().buildTree(scene2D.getSegments(), null);
+
+        grid = switch (observers) {
+            case "inside" -> insideGrid(scene2D);
+            case "outside" -> outsideGrid(scene2D);
+            case "partition" -> partitionGrid(tree);
+            default -> throw new IllegalArgumentException("Unknown observer grid: " + observers);
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GRID_SIZE)
+    public void paintersAlgorithm(Blackhole blackhole) {
+        for (Point2D observer : grid) {
+            blackhole.consume(PaintersViewBuilder.paintersAlgorithm(tree, observer));
+        }
+    }
+
+    /**
+     * Builds a 4x4 grid of positions regularly spread inside the scene extent.
+     *
+     * @param scene the scene
+     * @return the observer positions
+     */
+    static Point2D[] insideGrid(Scene2D scene) {
+        double[] fractions = {-0.75, -0.25, 0.25, 0.75};
+        Point2D[] positions = new Point2D[GRID_SIZE];
+
+        int i = 0;
+        for (double fx : fractions) {
+            for (double fy : fractions) {
+                positions[i++] = new Point2D(fx * scene.getExtentX(), fy * scene.getExtentY());
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Builds a ring of positions around the scene, at 1.5 times its extent.
+     *
+     * @param scene the scene
+     * @return the observer positions
+     */
+    static Point2D[] outsideGrid(Scene2D scene) {
+        Point2D[] positions = new Point2D[GRID_SIZE];
+
+        for (int i = 0; i < GRID_SIZE; i++) {
+            double angle = 2 * Math.PI * i / GRID_SIZE;
+            positions[i] = new Point2D(1.5 * scene.getExtentX() * Math.cos(angle), 1.5 * scene.getExtentY() * Math.sin(angle));
+        }
+        return positions;
+    }
+
+    /**
+     * Collects positions lying on the partition lines of the tree. The center of a coplanar
+     * fragment of an internal node lies on the node's partition line, so the centers are taken
+     * from the first internal nodes in breadth-first order (cycling if the tree is too small).
+     *
+     * @param root the root of the tree
+     * @return the observer positions
+     */
+    static Point2D[] partitionGrid(BSPNode root) {
+        List<Point2D> onLines = new ArrayList<>();
+        Deque<BSPNode> queue = new ArrayDeque<>();
+        queue.add(root);
+
+        while (!queue.isEmpty() && onLines.size() < GRID_SIZE) {
+            BSPNode node = queue.poll();
+            if (node == null || node.isLeaf()) {
+                continue;
+            }
+
+            List<StraightSegment2D> coplanar = node.getCoplanarObjects();
+            if (!coplanar.isEmpty()) {
+                onLines.add(coplanar.get(0).getCenter());
+            }
+            queue.add(node.getLeft());
+            queue.add(node.getRight());
+        }
+
+        if (onLines.isEmpty()) {
+            throw new IllegalStateException("The tree has no internal node with a coplanar fragment.");
+        }
+
+        Point2D[] positions = new Point2D[GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            positions[i] = onLines.get(i % onLines.size());
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,65 @@
+package be.umons.sdd.benchmarks;
+
+import be.umons.sdd.builders.TellerBSPTreeBuilder;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares a tau tuning done with one Teller builder per tau against the single sweep of
+ * {@link TellerBSPTreeBuilder#buildTrees(List, double...)}, which builds the same trees.
+ *
+ * <p> The taus are spread regularly in (0, 1): i / (taus + 1) for i = 1..taus.
+ * Each invocation builds all the trees, so the scores are per tuning run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class TellerSweepBenchmark {
+
+    @Param({"ELLIPSESSMALL", "RANDOMSMALL", "RECTANGLEMEDIUM"})
+    public String scene;
+
+    @Param({"5", "20"})
+    public int taus;
+
+    private List<StraightSegment2D> segments;
+    private double[] tauValues;
+
+    @Setup(Level.Trial)
+    public void loadScene() {
+        segments = BenchmarkScenes.load(scene).getSegments();
+        tauValues = new double[taus];
+        for (int i = 0; i < taus; i++) {
+            tauValues[i] = (i + 1) / (double) (taus + 1);
+        }
+    }
+
+    @Benchmark
+    public void separateBuilds(Blackhole blackhole) {
+        for (double tau : tauValues) {
+            blackhole.consume(new TellerBSPTreeBuilder(tau).buildTree(segments, null));
+        }
+    }
+
+    @Benchmark
+    public void sweep(Blackhole blackhole) {
+        blackhole.consume(new TellerBSPTreeBuilder(0.5).buildTrees(segments, tauValues));
+    }
+}
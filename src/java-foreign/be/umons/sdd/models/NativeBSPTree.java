@@ -0,0 +1,307 @@
+package be.umons.sdd.models;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.BuildCancelledException;
+import be.umons.sdd.builders.BuildContext;
+import be.umons.sdd.interfaces.BSPTreeStore;
+import be.umons.sdd.interfaces.BSPTreeWriter;
+import be.umons.sdd.interfaces.OffHeapBSPTree;
+import java.awt.Color;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Off-heap BSP tree, stored in native memory with the foreign memory API, laid out as a {@link FlatBSPTree}.
+ *
+ * <p> Node i is a record of {@value #NODE_BYTES} bytes at offset i * {@value #NODE_BYTES} of the node segment:
+ * its partition line (a, b, c) as three doubles (NaN for a leaf), then its negative child, its positive child,
+ * and the range of its fragments [from, to) as four ints. Fragment j is a record of {@value #FRAGMENT_BYTES}
+ * bytes of the fragment segment: (x1, y1, x2, y2) as four doubles, then the id of its color in the palette,
+ * which is the only part of the tree kept on the heap.
+ *
+ * <p> A tree is either copied from a stored tree ({@link #of(BSPTreeStore)}), or written by a builder while it
+ * partitions a segment store ({@link #build(BSPTreeBuilder, SegmentStore, BuildContext)}): the records are then
+ * appended to native memory as the nodes are created, and no node object is ever allocated on the heap.
+ *
+ * <p> Both segments belong to a shared resource scope, freed by {@link #close()}; a tree that is never closed
+ * is freed once it is unreachable. Requires {@code --add-modules jdk.incubator.foreign}; see {@link OffHeapBSPTrees}.
+ */
+public final class NativeBSPTree implements OffHeapBSPTree {
+
+    static final int NODE_BYTES = 40;
+    static final int FRAGMENT_BYTES = 40;
+
+    private static final long A = 0;
+    private static final long B = 8;
+    private static final long C = 16;
+    private static final long LEFT = 24;
+    private static final long RIGHT = 28;
+    private static final long FROM = 32;
+    private static final long TO = 36;
+
+    private static final long X1 = 0;
+    private static final long Y1 = 8;
+    private static final long X2 = 16;
+    private static final long Y2 = 24;
+    private static final long COLOR = 32;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ResourceScope scope;
+    private final MemorySegment nodes;
+    private final MemorySegment fragments;
+    private final int nodeCount;
+    private final int fragmentCount;
+    private final Color[] palette;
+
+    private NativeBSPTree(ResourceScope scope, MemorySegment nodes, MemorySegment fragments, int nodeCount, int fragmentCount, Color[] palette) {
+        this.scope = scope;
+        this.nodes = nodes;
+        this.fragments = fragments;
+        this.nodeCount = nodeCount;
+        this.fragmentCount = fragmentCount;
+        this.palette = palette;
+    }
+
+    /**
+     * Copies a stored BSP tree to native memory, with the same node and fragment indices.
+     *
+     * @param tree the tree to copy.
+     * @return the off-heap tree.
+     */
+    public static NativeBSPTree of(BSPTreeStore tree) {
+        int nodeCount = tree.getNodeCount();
+        int fragmentCount = tree.getFragmentCount();
+        ResourceScope scope = ResourceScope.newSharedScope(CLEANER);
+
+        try {
+            // An empty segment cannot be allocated, so there is always room for one record.
+            MemorySegment nodes = MemorySegment.allocateNative((long) Math.max(1, nodeCount) * NODE_BYTES, 8, scope);
+            MemorySegment fragments = MemorySegment.allocateNative((long) Math.max(1, fragmentCount) * FRAGMENT_BYTES, 8, scope);
+            List<Color> palette = new ArrayList<>();
+            Map<Color, Integer> paletteIds = new HashMap<>();
+
+            for (int node = 0; node < nodeCount; node++) {
+                long offset = (long) node * NODE_BYTES;
+                MemoryAccess.setDoubleAtOffset(nodes, offset + A, tree.getA(node));
+                MemoryAccess.setDoubleAtOffset(nodes, offset + B, tree.getB(node));
+                MemoryAccess.setDoubleAtOffset(nodes, offset + C, tree.getC(node));
+                MemoryAccess.setIntAtOffset(nodes, offset + LEFT, tree.getLeft(node));
+                MemoryAccess.setIntAtOffset(nodes, offset + RIGHT, tree.getRight(node));
+                MemoryAccess.setIntAtOffset(nodes, offset + FROM, tree.getFragmentsFrom(node));
+                MemoryAccess.setIntAtOffset(nodes, offset + TO, tree.getFragmentsTo(node));
+            }
+
+            for (int fragment = 0; fragment < fragmentCount; fragment++) {
+                long offset = (long) fragment * FRAGMENT_BYTES;
+                MemoryAccess.setDoubleAtOffset(fragments, offset + X1, tree.getX1(fragment));
+                MemoryAccess.setDoubleAtOffset(fragments, offset + Y1, tree.getY1(fragment));
+                MemoryAccess.setDoubleAtOffset(fragments, offset + X2, tree.getX2(fragment));
+                MemoryAccess.setDoubleAtOffset(fragments, offset + Y2, tree.getY2(fragment));
+                MemoryAccess.setIntAtOffset(fragments, offset + COLOR, paletteIds.computeIfAbsent(tree.getColor(fragment), color -> {
+                    palette.add(color);
+                    return palette.size() - 1;
+                }));
+            }
+
+            return new NativeBSPTree(scope, nodes, fragments, nodeCount, fragmentCount, palette.toArray(new Color[0]));
+        } catch (RuntimeException | Error e) {
+            scope.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store straight to native memory, with the layout of
+     * {@link FlatBSPTree}: the builder gives each node to a writer that appends its record and the records
+     * of its fragments (see {@link BSPTreeBuilder#buildTree(SegmentStore, Line2D, BuildContext, BSPTreeWriter)}).
+     * The records are appended to buffers that double when full, then copied to segments of their exact size.
+     *
+     * @param builder the builder partitioning the store.
+     * @param store the segments to partition, to which fragments are appended.
+     * @param context the build context of the build.
+     * @return the off-heap tree.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    public static NativeBSPTree build(BSPTreeBuilder builder, SegmentStore store, BuildContext context) {
+        try (Writer writer = new Writer(store.size())) {
+            builder.buildTree(store, null, context, writer);
+            return writer.toTree();
+        }
+    }
+
+    @Override public int getNodeCount() { return nodeCount; }
+    @Override public int getFragmentCount() { return fragmentCount; }
+
+    @Override public boolean isLeaf(int node) { return Double.isNaN(getA(node)); }
+    @Override public int getLeft(int node) { return MemoryAccess.getIntAtOffset(nodes, (long) node * NODE_BYTES + LEFT); }
+    @Override public int getRight(int node) { return MemoryAccess.getIntAtOffset(nodes, (long) node * NODE_BYTES + RIGHT); }
+    @Override public int getFragmentsFrom(int node) { return MemoryAccess.getIntAtOffset(nodes, (long) node * NODE_BYTES + FROM); }
+    @Override public int getFragmentsTo(int node) { return MemoryAccess.getIntAtOffset(nodes, (long) node * NODE_BYTES + TO); }
+    @Override public double getA(int node) { return MemoryAccess.getDoubleAtOffset(nodes, (long) node * NODE_BYTES + A); }
+    @Override public double getB(int node) { return MemoryAccess.getDoubleAtOffset(nodes, (long) node * NODE_BYTES + B); }
+    @Override public double getC(int node) { return MemoryAccess.getDoubleAtOffset(nodes, (long) node * NODE_BYTES + C); }
+
+    @Override
+    public double evaluate(int node, double x, double y) {
+        long offset = (long) node * NODE_BYTES;
+        return MemoryAccess.getDoubleAtOffset(nodes, offset + A) * x
+            + MemoryAccess.getDoubleAtOffset(nodes, offset + B) * y
+            + MemoryAccess.getDoubleAtOffset(nodes, offset + C);
+    }
+
+    @Override public double getX1(int fragment) { return MemoryAccess.getDoubleAtOffset(fragments, (long) fragment * FRAGMENT_BYTES + X1); }
+    @Override public double getY1(int fragment) { return MemoryAccess.getDoubleAtOffset(fragments, (long) fragment * FRAGMENT_BYTES + Y1); }
+    @Override public double getX2(int fragment) { return MemoryAccess.getDoubleAtOffset(fragments, (long) fragment * FRAGMENT_BYTES + X2); }
+    @Override public double getY2(int fragment) { return MemoryAccess.getDoubleAtOffset(fragments, (long) fragment * FRAGMENT_BYTES + Y2); }
+
+    @Override
+    public Color getColor(int fragment) {
+        return palette[MemoryAccess.getIntAtOffset(fragments, (long) fragment * FRAGMENT_BYTES + COLOR)];
+    }
+
+    @Override
+    public long getByteSize() {
+        return nodes.byteSize() + fragments.byteSize();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return scope.isAlive();
+    }
+
+    @Override
+    public void close() {
+        if (scope.isAlive()) {
+            scope.close();
+        }
+    }
+
+    /**
+     * Appends the nodes given by a builder to native buffers, in the order they are added (see {@link BSPTreeWriter}).
+     * A node is identified by its index; its children are NO_CHILD until they are linked.
+     */
+    private static final class Writer implements BSPTreeWriter<Integer>, AutoCloseable {
+        private final RecordBuffer nodes;
+        private final RecordBuffer fragments;
+        private final List<Color> palette = new ArrayList<>();
+        private final Map<Color, Integer> paletteIds = new HashMap<>();
+
+        Writer(int size) {
+            // Each object ends up in one node, and a split node has two children.
+            this.nodes = new RecordBuffer(NODE_BYTES, 2 * size + 1);
+            this.fragments = new RecordBuffer(FRAGMENT_BYTES, size + size / 2 + 1);
+        }
+
+        @Override
+        public Integer addNode(Line2D partition, SegmentStore store, int[] indices, int from, int to) {
+            int node = nodes.count;
+            long offset = nodes.append();
+            MemorySegment records = nodes.segment;
+            MemoryAccess.setDoubleAtOffset(records, offset + A, partition != null ? partition.getA() : Double.NaN);
+            MemoryAccess.setDoubleAtOffset(records, offset + B, partition != null ? partition.getB() : Double.NaN);
+            MemoryAccess.setDoubleAtOffset(records, offset + C, partition != null ? partition.getC() : Double.NaN);
+            MemoryAccess.setIntAtOffset(records, offset + LEFT, NO_CHILD);
+            MemoryAccess.setIntAtOffset(records, offset + RIGHT, NO_CHILD);
+            MemoryAccess.setIntAtOffset(records, offset + FROM, fragments.count);
+            MemoryAccess.setIntAtOffset(records, offset + TO, fragments.count + to - from);
+
+            for (int i = from; i < to; i++) {
+                int index = indices[i];
+                long fragment = fragments.append();
+                MemorySegment fragmentRecords = fragments.segment;
+                MemoryAccess.setDoubleAtOffset(fragmentRecords, fragment + X1, store.getX1(index));
+                MemoryAccess.setDoubleAtOffset(fragmentRecords, fragment + Y1, store.getY1(index));
+                MemoryAccess.setDoubleAtOffset(fragmentRecords, fragment + X2, store.getX2(index));
+                MemoryAccess.setDoubleAtOffset(fragmentRecords, fragment + Y2, store.getY2(index));
+                MemoryAccess.setIntAtOffset(fragmentRecords, fragment + COLOR, paletteIds.computeIfAbsent(store.getColor(index), color -> {
+                    palette.add(color);
+                    return palette.size() - 1;
+                }));
+            }
+            return node;
+        }
+
+        @Override
+        public void setLeft(Integer node, Integer child) {
+            MemoryAccess.setIntAtOffset(nodes.segment, (long) node * NODE_BYTES + LEFT, child);
+        }
+
+        @Override
+        public void setRight(Integer node, Integer child) {
+            MemoryAccess.setIntAtOffset(nodes.segment, (long) node * NODE_BYTES + RIGHT, child);
+        }
+
+        NativeBSPTree toTree() {
+            ResourceScope scope = ResourceScope.newSharedScope(CLEANER);
+            try {
+                return new NativeBSPTree(scope, nodes.copyTo(scope), fragments.copyTo(scope), nodes.count, fragments.count,
+                    palette.toArray(new Color[0]));
+            } catch (RuntimeException | Error e) {
+                scope.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            nodes.close();
+            fragments.close();
+        }
+    }
+
+    /**
+     * Native records of a fixed size, appended to a segment of its own scope that is replaced by one twice as large when full.
+     */
+    private static final class RecordBuffer {
+        private final int recordBytes;
+        private ResourceScope scope;
+        private MemorySegment segment;
+        private int count;
+
+        RecordBuffer(int recordBytes, int capacity) {
+            this.recordBytes = recordBytes;
+            this.scope = ResourceScope.newConfinedScope();
+            this.segment = MemorySegment.allocateNative((long) capacity * recordBytes, 8, scope);
+        }
+
+        // Returns the offset of a new record at the end of the buffer.
+        long append() {
+            long offset = (long) count * recordBytes;
+            if (offset == segment.byteSize()) {
+                ResourceScope grownScope = ResourceScope.newConfinedScope();
+                MemorySegment grown = MemorySegment.allocateNative(2 * segment.byteSize(), 8, grownScope);
+                grown.copyFrom(segment);
+                scope.close();
+                scope = grownScope;
+                segment = grown;
+            }
+            count++;
+            return offset;
+        }
+
+        // Copies the records to a segment of their exact size (at least one record, as for an empty tree).
+        MemorySegment copyTo(ResourceScope target) {
+            long size = (long) count * recordBytes;
+            MemorySegment copy = MemorySegment.allocateNative(Math.max(size, recordBytes), 8, target);
+            copy.copyFrom(segment.asSlice(0, size));
+            return copy;
+        }
+
+        void close() {
+            scope.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NativeBSPTree[" + nodeCount + " nodes, " + fragmentCount + " fragments, " + getByteSize() + " bytes"
+            + (isOpen() ? "" : ", closed") + "]";
+    }
+}
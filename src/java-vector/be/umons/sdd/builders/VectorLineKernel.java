@@ -0,0 +1,79 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.LineKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of the line kernel with the Vector API, using the widest vectors of the platform.
+ * Lanes compute a*x + b*y + c with the same operations as the scalar kernel, so the counts are identical.
+ *
+ * <p> Requires {@code --add-modules jdk.incubator.vector}; see {@link LineKernels#vector()}.
+ */
+public class VectorLineKernel implements LineKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void countSides(double a, double b, double c, double[] xs, double[] ys, int from, int to, double epsilon, int[] counts) {
+        int positive = 0;
+        int negative = 0;
+
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+            DoubleVector eval = x.mul(a).add(y.mul(b)).add(c);
+
+            positive += eval.compare(VectorOperators.GT, epsilon).trueCount();
+            negative += eval.compare(VectorOperators.LT, -epsilon).trueCount();
+        }
+
+        // Remaining points, fewer than a vector.
+        for (; i < to; i++) {
+            double eval = a * xs[i] + b * ys[i] + c;
+            if (eval > epsilon) {
+                positive++;
+            } else if (eval < -epsilon) {
+                negative++;
+            }
+        }
+
+        counts[0] = positive;
+        counts[1] = negative;
+        counts[2] = to - from - positive - negative;
+    }
+
+    @Override
+    public int countCuts(double a, double b, double c, double[] x1, double[] y1, double[] x2, double[] y2, int from, int to, double epsilon) {
+        int cuts = 0;
+
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector evalStart = DoubleVector.fromArray(SPECIES, x1, i).mul(a)
+                .add(DoubleVector.fromArray(SPECIES, y1, i).mul(b)).add(c);
+            DoubleVector evalEnd = DoubleVector.fromArray(SPECIES, x2, i).mul(a)
+                .add(DoubleVector.fromArray(SPECIES, y2, i).mul(b)).add(c);
+
+            cuts += evalStart.mul(evalEnd).compare(VectorOperators.LT, -epsilon).trueCount();
+        }
+
+        // Remaining segments, fewer than a vector.
+        for (; i < to; i++) {
+            double evalStart = a * x1[i] + b * y1[i] + c;
+            double evalEnd = a * x2[i] + b * y2[i] + c;
+            if (evalStart * evalEnd < -epsilon) {
+                cuts++;
+            }
+        }
+        return cuts;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
@@ -0,0 +1,411 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.BSPTreeWriter;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.SegmentStore;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * A BSP tree builder using the randomized autopartition of Paterson and Yao.
+ *
+ * <p> The segments are given a random priority once, from a seeded random permutation, and fragments
+ * keep the priority of the segment they come from. Each region is split by the support line of its
+ * fragment of highest priority, without scoring any candidate, unless the region holds a free split:
+ * a fragment whose two endpoints lie on splitting lines of its ancestors. Such a fragment crosses the
+ * whole region, so it is used first since it cuts nothing.
+ *
+ * <p> Each region costs a linear scan to choose its line and another to partition it, so a level of
+ * the tree costs O(n) plus its fragments. For n segments, the expected number of fragments is O(n log n)
+ * whatever the scene, so this builder suits huge scenes where the scoring of the other builders is too slow.
+ * The tree only depends on the seed and the scene.
+ *
+ * <p> The build always runs on a {@link SegmentStore}, with an explicit stack. The scoring options of
+ * {@link BSPTreeBuilder} (sampling, kernels, parallel scoring...) do not apply to this builder, nor
+ * does the lazy build. Deadlines are ignored: the build is cheap enough to complete the tree at once.
+ */
+public class AutopartitionBSPTreeBuilder extends BSPTreeBuilder {
+
+    private static final byte START_ON_BOUNDARY = 1;
+    private static final byte END_ON_BOUNDARY = 2;
+    private static final byte FREE_SPLIT = START_ON_BOUNDARY | END_ON_BOUNDARY;
+
+    private final long seed;
+
+    /**
+     * Constructs an AutopartitionBSPTreeBuilder with a random seed.
+     */
+    public AutopartitionBSPTreeBuilder() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructs an AutopartitionBSPTreeBuilder with a given seed.
+     *
+     * @param seed the seed of the random priorities.
+     */
+    public AutopartitionBSPTreeBuilder(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the seed of the random priorities.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String getLabel() {
+        return "Autopartition";
+    }
+
+    @Override
+    protected String getParameters() {
+        return "seed=" + seed;
+    }
+
+    /**
+     * Builds a BSP tree from a list of objects, on a segment store holding them.
+     *
+     * @param objects the list of scene objects.
+     * @param parentLine the parent's splitting line (null for root).
+     * @param context the build context of the build.
+     * @return the BSP tree node representing the region.
+     */
+    @Override
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine, BuildContext context) {
+        return buildTree(SegmentStore.of(objects), parentLine, context);
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store by randomized autopartition.
+     * Fragments created by the splits are appended to the store.
+     *
+     * @param <N> the type of the nodes of the written tree.
+     * @param store the segments to partition.
+     * @param parentLine the parent's splitting line (null for root).
+     * @param context the build context of the build.
+     * @param writer the writer of the nodes.
+     * @return the root of the written tree.
+     */
+    @Override
+    public <N> N buildTree(SegmentStore store, Line2D parentLine, BuildContext context, BSPTreeWriter<N> writer) {
+        return new Autopartition(store, parentLine).build(context, writer);
+    }
+
+    /**
+     * Builds the whole tree by autopartition, whatever the deadline: the build costs a linear scan
+     * per region, so it has no coarse leaves to leave for later. It still stops if the context is cancelled.
+     *
+     * @param objects the list of scene objects.
+     * @param parentLine the parent's splitting line (null for root).
+     * @param deadline ignored.
+     * @param context the build context of the build.
+     * @return the BSP tree node representing the region.
+     * @throws IllegalArgumentException if the objects are null.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    @Override
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine, long deadline, BuildContext context) {
+        if (objects == null) {
+            throw new IllegalArgumentException("The objects cannot be null.");
+        }
+        return buildTree(objects, parentLine, context);
+    }
+
+    /**
+     * Replaces the coarse leaves of a tree, left by the anytime build of another builder, by subtrees
+     * built by autopartition, whatever the deadline. A coarse leaf is only replaced once its subtree is built.
+     *
+     * @param root the root of the tree.
+     * @param deadline ignored.
+     * @param context the build context of the refinement.
+     * @return the root of the tree, which is a new node if the root was a coarse leaf.
+     * @throws BuildCancelledException if the refinement was stopped by the context.
+     */
+    @Override
+    public BSPNode refineTree(BSPNode root, long deadline, BuildContext context) {
+        if (root.isCoarse()) {
+            return buildTree(root.getCoplanarObjects(), null, context);
+        }
+
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            if (!node.isExpanded() || node.isLeaf()) {
+                continue;
+            }
+
+            if (node.getLeft().isCoarse()) {
+                node.setLeft(buildTree(node.getLeft().getCoplanarObjects(), node.getPartition(), context));
+            } else {
+                stack.push(node.getLeft());
+            }
+            if (node.getRight().isCoarse()) {
+                node.setRight(buildTree(node.getRight().getCoplanarObjects(), node.getPartition(), context));
+            } else {
+                stack.push(node.getRight());
+            }
+        }
+        return root;
+    }
+
+    /**
+     * The lazy build does not apply to this builder, whose build always runs on a {@link SegmentStore}.
+     *
+     * @param lazy true to build lazily.
+     * @throws UnsupportedOperationException if lazy is true.
+     */
+    @Override
+    public void setLazyBuild(boolean lazy) {
+        if (lazy) {
+            throw new UnsupportedOperationException("The autopartition builder does not build lazily.");
+        }
+        super.setLazyBuild(false);
+    }
+
+    /**
+     * Chooses the support line of a free split lying on the parent's line if there is one,
+     * otherwise the support line of a random object. The builds of this builder all run on a
+     * {@link SegmentStore}, so this line is only chosen by the list build of {@link BSPTreeBuilder}
+     * if a subclass falls back to it.
+     *
+     * @param objects the list of scene objects.
+     * @param parentLine the parent's splitting line (null for root).
+     * @return the splitting line.
+     */
+    @Override
+    protected Line2D selectSplittingLine(List<StraightSegment2D> objects, Line2D parentLine) {
+        if (parentLine != null) {
+            for (StraightSegment2D obj : objects) {
+                if (Math.abs(parentLine.evaluate(obj.getStart())) < EPSILON && Math.abs(parentLine.evaluate(obj.getEnd())) < EPSILON) {
+                    return obj.getSupportLine();
+                }
+            }
+        }
+        return objects.get(new SplittableRandom(31 * seed + objects.size()).nextInt(objects.size())).getSupportLine();
+    }
+
+    /**
+     * State of one build: the priorities and boundary flags of the segments of the store,
+     * indexed like the store and grown as fragments are appended.
+     */
+    private final class Autopartition {
+        private final SegmentStore store;
+        private int[] ranks;
+        private byte[] boundaries;
+        private int[] kept;
+        private int keptSize;
+        private BuildStatistics statistics;
+
+        Autopartition(SegmentStore store, Line2D parentLine) {
+            this.store = store;
+
+            int size = store.size();
+            int capacity = size + size / 2 + 1;
+            this.ranks = new int[capacity];
+            this.boundaries = new byte[capacity];
+            this.kept = new int[capacity];
+
+            // Random permutation of the priorities (Fisher-Yates), smaller rank first.
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < size; i++) {
+                int j = random.nextInt(i + 1);
+                ranks[i] = ranks[j];
+                ranks[j] = i;
+            }
+
+            if (parentLine != null) {
+                for (int i = 0; i < size; i++) {
+                    markBoundaries(i, parentLine);
+                }
+            }
+        }
+
+        <N> N build(BuildContext context, BSPTreeWriter<N> writer) {
+            statistics = context.getStatistics();
+            int[] all = new int[store.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+
+            List<N> root = new ArrayList<>(1);
+            Deque<Region<N>> pending = new ArrayDeque<>();
+            pending.push(new Region<>(all, 0, root::add));
+            context.recordInput(all.length);
+
+            while (!pending.isEmpty()) {
+                Region<N> region = pending.pop();
+
+                // Base case: if 0 or 1 object, create a leaf.
+                if (region.indices.length <= 1) {
+                    int keptFrom = keptSize;
+                    for (int index : region.indices) {
+                        keep(index);
+                    }
+                    region.link.accept(writer.addNode(null, store, kept, keptFrom, keptSize));
+                    context.recordLeaf(region.depth, region.indices.length);
+                    continue;
+                }
+
+                context.checkpoint();
+                long start = statistics != null ? System.nanoTime() : 0;
+                int chosen = choose(region.indices);
+                boolean freeSplit = boundaries[chosen] == FREE_SPLIT;
+                Line2D line = store.getSupportLine(chosen);
+
+                int keptFrom = keptSize;
+                int[][] sides = partition(region.indices, line);
+
+                N node = writer.addNode(line, store, kept, keptFrom, keptSize);
+                region.link.accept(node);
+                context.recordSplit(region.depth, region.indices.length, keptSize - keptFrom, sides[1].length, sides[0].length);
+                if (statistics != null) {
+                    statistics.recordSplit(region.depth, System.nanoTime() - start, region.indices.length, keptSize - keptFrom,
+                        sides[1].length, sides[0].length, freeSplit);
+                }
+
+                pending.push(new Region<>(sides[0], region.depth + 1, child -> writer.setRight(node, child)));
+                pending.push(new Region<>(sides[1], region.depth + 1, child -> writer.setLeft(node, child)));
+            }
+
+            return root.get(0);
+        }
+
+        /**
+         * Returns the free split of highest priority of a region, or its fragment of highest priority if there is none.
+         */
+        private int choose(int[] indices) {
+            int best = -1;
+            int bestFree = -1;
+            for (int index : indices) {
+                if (best < 0 || ranks[index] < ranks[best]) {
+                    best = index;
+                }
+                if (boundaries[index] == FREE_SPLIT && (bestFree < 0 || ranks[index] < ranks[bestFree])) {
+                    bestFree = index;
+                }
+            }
+            return bestFree >= 0 ? bestFree : best;
+        }
+
+        /**
+         * Partitions a region by a line like {@link BSPTreeBuilder#partitionObjects(List, Line2D)}:
+         * coplanar objects are kept by the node, the others are returned as {positive, negative}.
+         */
+        private int[][] partition(int[] indices, Line2D line) {
+            int[] positives = new int[indices.length];
+            int[] negatives = new int[indices.length];
+            int positiveCount = 0;
+            int negativeCount = 0;
+            int keptFrom = keptSize;
+            int splits = 0;
+
+            for (int index : indices) {
+                double eval = line.evaluate(store.getCenterX(index), store.getCenterY(index));
+
+                if (Math.abs(eval) < EPSILON) {
+                    keep(index);
+                    continue;
+                }
+
+                double e1 = line.evaluate(store.getX1(index), store.getY1(index));
+                double e2 = line.evaluate(store.getX2(index), store.getY2(index));
+
+                if (e1 * e2 < -EPSILON) {
+                    int[] fragments = store.split(index, line);
+                    splits++;
+                    if (fragments[0] >= 0) {
+                        inherit(fragments[0], index);
+                        positives[positiveCount++] = fragments[0];
+                    }
+                    if (fragments[1] >= 0) {
+                        inherit(fragments[1], index);
+                        negatives[negativeCount++] = fragments[1];
+                    }
+                } else {
+                    markBoundaries(index, line);
+                    if (eval > 0) {
+                        positives[positiveCount++] = index;
+                    } else {
+                        negatives[negativeCount++] = index;
+                    }
+                }
+            }
+
+            if (statistics != null) {
+                // The center of every object, the endpoints of the objects that are not coplanar,
+                // and the endpoints again to mark the boundaries of the objects that are not split.
+                int coplanar = keptSize - keptFrom;
+                statistics.addLineEvaluations(indices.length + 4L * (indices.length - coplanar) - 2L * splits);
+                statistics.addSegmentSplits(splits, positiveCount + negativeCount + coplanar - indices.length + splits);
+            }
+
+            return new int[][] { Arrays.copyOf(positives, positiveCount), Arrays.copyOf(negatives, negativeCount) };
+        }
+
+        /**
+         * Gives a fragment the priority of its segment. The end created by the split lies on
+         * the splitting line, the other one keeps the flag of the segment.
+         */
+        private void inherit(int fragment, int segment) {
+            ensureCapacity(fragment + 1);
+            ranks[fragment] = ranks[segment];
+
+            boolean sameStart = store.getX1(fragment) == store.getX1(segment) && store.getY1(fragment) == store.getY1(segment);
+            boundaries[fragment] = sameStart
+                ? (byte) ((boundaries[segment] & START_ON_BOUNDARY) | END_ON_BOUNDARY)
+                : (byte) (START_ON_BOUNDARY | (boundaries[segment] & END_ON_BOUNDARY));
+        }
+
+        private void markBoundaries(int index, Line2D line) {
+            if (Math.abs(line.evaluate(store.getX1(index), store.getY1(index))) < EPSILON) {
+                boundaries[index] |= START_ON_BOUNDARY;
+            }
+            if (Math.abs(line.evaluate(store.getX2(index), store.getY2(index))) < EPSILON) {
+                boundaries[index] |= END_ON_BOUNDARY;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > ranks.length) {
+                int grown = Math.max(capacity, ranks.length + (ranks.length >> 1));
+                ranks = Arrays.copyOf(ranks, grown);
+                boundaries = Arrays.copyOf(boundaries, grown);
+            }
+        }
+
+        private void keep(int index) {
+            if (keptSize == kept.length) {
+                kept = Arrays.copyOf(kept, keptSize + (keptSize >> 1) + 1);
+            }
+            kept[keptSize++] = index;
+        }
+    }
+
+    /**
+     * Region waiting to be built, with its depth and the link to its parent node.
+     */
+    private static final class Region<N> {
+        private final int[] indices;
+        private final int depth;
+        private final Consumer<N> link;
+
+        Region(int[] indices, int depth, Consumer<N> link) {
+            this.indices = indices;
+            this.depth = depth;
+            this.link = link;
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package be.umons.sdd.builders;
 
+import be.umons.sdd.interfaces.BSPTreeWriter;
+import be.umons.sdd.interfaces.LineKernel;
 import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Line2D;
 import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.SegmentStore;
 import be.umons.sdd.models.StraightSegment2D;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Abstract base class for BSP tree builders.
@@ -14,7 +26,364 @@ import java.util.List;
 public abstract class BSPTreeBuilder {
 
     protected static final double EPSILON = 1e-6;
-    
+
+    /**
+     * Deadline of the anytime builds that must run to completion.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // Initial estimate of the time to score one candidate against one object, for anytime builds.
+    private static final double INITIAL_NANOS_PER_PAIR = 1.0;
+    private static final int CALIBRATION_SIZE = 64;
+    // Largest coarse leaf left by an anytime build: larger regions out of time are split on a sample.
+    private static final int COARSE_LEAF_SIZE = 64;
+    // Number of objects the line of a split on a sample is selected from.
+    private static final int SPLIT_SAMPLE_SIZE = 64;
+
+    // Writes the trees built on segment stores as BSPNode objects, referencing their objects in the store.
+    private static final BSPTreeWriter<BSPNode> NODE_WRITER = new BSPTreeWriter<>() {
+        @Override
+        public BSPNode addNode(Line2D partition, SegmentStore store, int[] indices, int from, int to) {
+            return new BSPNode(partition, store, indices, from, to);
+        }
+
+        @Override public void setLeft(BSPNode node, BSPNode child) { node.setLeft(child); }
+        @Override public void setRight(BSPNode node, BSPNode child) { node.setRight(child); }
+    };
+
+    /**
+     * Approximate scoring configuration, or null to always score candidates exactly.
+     */
+    protected CandidateSampling sampling = null;
+
+    /**
+     * Minimal node size for which subtrees are built as fork/join tasks (0 for a sequential build).
+     */
+    protected int parallelCutoff = 0;
+
+    /**
+     * Pool running the parallel build and scoring, or null for the common pool.
+     */
+    protected ForkJoinPool forkJoinPool = null;
+
+    /**
+     * Minimal amount of work (candidates times scored objects) in a node for its candidates
+     * to be scored in parallel (0 to always score them sequentially).
+     */
+    protected long parallelScoringThreshold = 0;
+
+    /**
+     * True if subtrees are built with an explicit stack of pending regions instead of recursion.
+     */
+    protected boolean iterativeBuild = false;
+
+    /**
+     * True if trees are built on a {@link SegmentStore} with index ranges instead of lists of segments.
+     */
+    protected boolean indexedBuild = false;
+
+    /**
+     * True if the candidates lying on the same support line are merged and scored once per node.
+     */
+    protected boolean lineInterning = false;
+
+    /**
+     * Kernel scoring the candidates against primitive coordinate arrays, or null to score them on the objects.
+     */
+    protected LineKernel lineKernel = null;
+
+    /**
+     * True if candidates are scored with branch-and-bound, abandoning the ones that cannot win.
+     */
+    protected boolean branchAndBound = false;
+
+    /**
+     * True if trees are built lazily, each node being partitioned on its first traversal.
+     */
+    protected boolean lazyBuild = false;
+
+    /**
+     * Enables the approximate candidate scoring on large nodes, or disables it if null.
+     *
+     * @param sampling the sampling configuration, or null for exact scoring.
+     */
+    public void setCandidateSampling(CandidateSampling sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * Returns the approximate candidate scoring configuration.
+     *
+     * @return the sampling configuration, or null if candidates are scored exactly.
+     */
+    public CandidateSampling getCandidateSampling() {
+        return sampling;
+    }
+
+    /**
+     * Enables the parallel build: nodes holding at least {@code cutoff} objects have their two
+     * subtrees built as fork/join tasks in the common pool. Smaller nodes are built sequentially.
+     * The resulting tree is identical to the sequential one.
+     *
+     * @param cutoff the minimal node size for which subtrees are built in parallel, or 0 to disable.
+     */
+    public void setParallelBuild(int cutoff) {
+        setParallelBuild(cutoff, null);
+    }
+
+    /**
+     * Enables the parallel build in the given fork/join pool.
+     *
+     * @param cutoff the minimal node size for which subtrees are built in parallel, or 0 to disable.
+     * @param pool the pool running the tasks, or null for the common pool.
+     * @see #setParallelBuild(int)
+     */
+    public void setParallelBuild(int cutoff, ForkJoinPool pool) {
+        if (cutoff < 0) {
+            throw new IllegalArgumentException("The parallel cutoff cannot be negative.");
+        }
+
+        // A node needs at least 2 objects to be split.
+        this.parallelCutoff = cutoff == 0 ? 0 : Math.max(cutoff, 2);
+        this.forkJoinPool = pool;
+    }
+
+    /**
+     * Returns the minimal node size for which subtrees are built in parallel.
+     *
+     * @return the parallel cutoff, or 0 if the build is sequential.
+     */
+    public int getParallelCutoff() {
+        return parallelCutoff;
+    }
+
+    /**
+     * Enables the parallel scoring of candidates: in nodes where the number of candidates times the
+     * number of scored objects reaches {@code threshold}, the candidates are split across the pool
+     * given to {@link #setParallelBuild(int, ForkJoinPool)} (the common pool by default).
+     * Scores are stored in candidate order, so the chosen line is the same as with serial scoring.
+     * This helps at the top of the tree, where there are too few subtrees to build in parallel.
+     *
+     * @param threshold the minimal work for parallel scoring, or 0 to disable.
+     */
+    public void setParallelScoring(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The parallel scoring threshold cannot be negative.");
+        }
+        this.parallelScoringThreshold = threshold;
+    }
+
+    /**
+     * Returns the minimal work for the candidates of a node to be scored in parallel.
+     *
+     * @return the parallel scoring threshold, or 0 if scoring is sequential.
+     */
+    public long getParallelScoringThreshold() {
+        return parallelScoringThreshold;
+    }
+
+    /**
+     * Enables the iterative build: regions are built from an explicit stack of pending regions
+     * instead of recursive calls, so the depth of the tree is not limited by the thread stack size.
+     * This also applies to the sequential subtrees of a parallel build, which run in pooled worker threads.
+     * The resulting tree is identical to the recursive one.
+     *
+     * @param iterative true to build iteratively, false to build recursively.
+     */
+    public void setIterativeBuild(boolean iterative) {
+        this.iterativeBuild = iterative;
+    }
+
+    /**
+     * Returns true if subtrees are built iteratively.
+     *
+     * @return true if the iterative build is enabled.
+     */
+    public boolean isIterativeBuild() {
+        return iterativeBuild;
+    }
+
+    /**
+     * Enables the indexed build: {@link #buildTree(List, Line2D)} copies the objects into a
+     * {@link SegmentStore} and builds the tree with {@link #buildTree(SegmentStore, Line2D)}.
+     * The resulting tree is identical to the one built on the list.
+     *
+     * @param indexed true to build on a segment store, false to build on lists.
+     */
+    public void setIndexedBuild(boolean indexed) {
+        this.indexedBuild = indexed;
+    }
+
+    /**
+     * Returns true if trees are built on a segment store.
+     *
+     * @return true if the indexed build is enabled.
+     */
+    public boolean isIndexedBuild() {
+        return indexedBuild;
+    }
+
+    /**
+     * Enables the interning of support lines: in each node, candidates lying on the same line
+     * are merged into one candidate, which is built and scored only once (see {@link SupportLines}).
+     * Among candidates of equal score, the line holding the most segments is preferred, since they all
+     * become coplanar objects of the node. A line is a free split if any of its segments is one.
+     * Trees may differ from the ones built without interning when lines tie.
+     *
+     * @param interning true to merge collinear candidates.
+     */
+    public void setLineInterning(boolean interning) {
+        this.lineInterning = interning;
+    }
+
+    /**
+     * Returns true if collinear candidates are merged.
+     *
+     * @return true if the interning of support lines is enabled.
+     */
+    public boolean isLineInterning() {
+        return lineInterning;
+    }
+
+    /**
+     * Sets the kernel used to score the candidates (see {@link LineKernels}). With a kernel, the
+     * coordinates of the scored objects of a node are first gathered in a {@link SegmentBatch},
+     * then each candidate line is evaluated against the whole batch by the kernel.
+     * Kernels give the same counts as the default scoring, so the tree does not change.
+     *
+     * @param kernel the kernel, or null to evaluate the objects one by one.
+     */
+    public void setLineKernel(LineKernel kernel) {
+        this.lineKernel = kernel;
+    }
+
+    /**
+     * Returns the kernel used to score the candidates.
+     *
+     * @return the kernel, or null if the objects are evaluated one by one.
+     */
+    public LineKernel getLineKernel() {
+        return lineKernel;
+    }
+
+    /**
+     * Enables the branch-and-bound scoring of the candidates (see {@link BoundedScoring}): candidates are
+     * tried from the most promising on a sample, and abandoned as soon as they provably cannot beat the
+     * best candidate found so far. The selected line, and so the tree, is the same as with exhaustive scoring.
+     * Builders without a bounded selection ignore this setting.
+     *
+     * @param enabled true to use branch-and-bound.
+     */
+    public void setBranchAndBound(boolean enabled) {
+        this.branchAndBound = enabled;
+    }
+
+    /**
+     * Returns true if candidates are scored with branch-and-bound.
+     *
+     * @return true if branch-and-bound is enabled.
+     */
+    public boolean isBranchAndBound() {
+        return branchAndBound;
+    }
+
+    /**
+     * Enables the lazy build: {@link #buildTree(List, Line2D)} only copies the objects and returns a
+     * lazy node (see {@link BSPNode#lazy(java.util.function.Supplier)}). A node is partitioned the first
+     * time it is traversed, and its sides become lazy nodes in turn, so only the regions actually
+     * visited are built, with the same splitting lines as the eager build. Concurrent readers
+     * expand each node once; the builder must not be reconfigured while its lazy trees are in use.
+     * The indexed, parallel and anytime builds do not apply to lazy trees: a lazy tree is returned at once,
+     * so the deadline of {@link #buildTree(List, Line2D, long, BuildContext)} is ignored.
+     *
+     * <p> The build context of the build is kept by the tree: each expansion is a split of the build,
+     * recorded to its progress and statistics. Once the context is cancelled (or its own deadline has passed),
+     * expanding a node throws a {@link BuildCancelledException} and the node stays unexpanded.
+     *
+     * @param lazy true to build lazily.
+     */
+    public void setLazyBuild(boolean lazy) {
+        this.lazyBuild = lazy;
+    }
+
+    /**
+     * Returns true if trees are built lazily.
+     *
+     * @return true if the lazy build is enabled.
+     */
+    public boolean isLazyBuild() {
+        return lazyBuild;
+    }
+
+    /**
+     * Returns a description of the parameters of this builder that determine its trees: its class
+     * and, in subclasses, its own parameters (tau, seed...), then the sampling and interning options.
+     * Options that give identical trees (parallel, iterative, indexed, lazy builds, kernels,
+     * branch-and-bound) are not included. Two builders with the same configuration build the same
+     * tree for the same scene: builders drawing random numbers include their seed in their parameters.
+     *
+     * @return the configuration of this builder.
+     */
+    public String getConfiguration() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        String parameters = getParameters();
+        if (!parameters.isEmpty()) {
+            sb.append('(').append(parameters).append(')');
+        }
+        if (sampling != null) {
+            sb.append(" sampling=").append(sampling);
+        }
+        if (lineInterning) {
+            sb.append(" interned");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a short human readable name of this builder, e.g. "Teller (Tau = 0.5)".
+     *
+     * @return the display label.
+     */
+    public abstract String getLabel();
+
+    /**
+     * Returns the parameters specific to this builder, for {@link #getConfiguration()}.
+     *
+     * @return the parameters, or an empty string if the builder has none.
+     */
+    protected String getParameters() {
+        return "";
+    }
+
+    /**
+     * Returns the order in which the objects of a build are partitioned, as a permutation of their
+     * positions, or null to keep their order. Every build entry point (lists, time budgets, segment
+     * stores) asks for it once, so a builder changing the order of the objects only overrides this.
+     *
+     * @param count the number of objects of the build.
+     * @return the positions of the objects in build order, or null.
+     */
+    protected int[] buildOrder(int count) {
+        return null;
+    }
+
+    private List<StraightSegment2D> inBuildOrder(List<StraightSegment2D> objects) {
+        int[] order = objects == null ? null : buildOrder(objects.size());
+        if (order == null) {
+            return objects;
+        }
+
+        List<StraightSegment2D> ordered = new ArrayList<>(objects.size());
+        for (int position : order) {
+            ordered.add(objects.get(position));
+        }
+        return ordered;
+    }
+
+    private ForkJoinPool pool() {
+        return forkJoinPool != null ? forkJoinPool : ForkJoinPool.commonPool();
+    }
+
     /**
      * Builds a BSP tree from a list of objects with an optional parent splitting line.
      * 
@@ -22,61 +391,682 @@ public abstract class BSPTreeBuilder {
      * @param parentLine the parent's splitting line (null for the root).
      * @return the BSP tree node representing the region.
      */
-    public abstract BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine);
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine) {
+        return buildTree(objects, parentLine, BuildContext.NONE);
+    }
+
+    /**
+     * Builds a BSP tree from a list of objects, stopping if the context is cancelled or its deadline
+     * passes. The context is checked before each node is split, also by the parallel tasks.
+     * Subclasses changing how trees are built override this method.
+     * 
+     * @param objects the list of scene objects (StraightSegment2D) to partition.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param context the build context of the build.
+     * @return the BSP tree node representing the region.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine, BuildContext context) {
+        // The indexed build orders the objects of the store.
+        if (indexedBuild && !lazyBuild && objects != null) {
+            return buildTree(SegmentStore.of(objects), parentLine, context);
+        }
+
+        objects = inBuildOrder(objects);
+        if (lazyBuild && objects != null) {
+            context.recordInput(objects.size());
+            return lazySubtree(new ArrayList<>(objects), parentLine, 0, context);
+        }
+
+        context.recordInput(objects == null ? 0 : objects.size());
+        if (parallelCutoff > 0 && objects != null && objects.size() >= parallelCutoff) {
+            SubtreeTask root = new SubtreeTask(null, objects, parentLine, 0, context);
+            pool().invoke(root);
+            return root.node;
+        }
+
+        return buildSubtree(objects, parentLine, 0, context);
+    }
+
+    /**
+     * Builds a BSP tree within a time budget (anytime build).
+     * 
+     * <p> Regions are split in breadth-first order, so that the whole scene is refined evenly.
+     * A region is only split if the estimated time to score its candidates (quadratic in its size,
+     * calibrated on the regions already split) fits before the deadline; otherwise, and for all the
+     * regions left when the deadline is reached, it becomes a coarse leaf holding all its objects
+     * (see {@link BSPNode#isCoarse()}). The tree is always valid: the painter orders the objects of
+     * a coarse leaf by occlusion (see {@link PaintersViewBuilder#paintersAlgorithm(BSPNode, Point2D)}).
+     * Coarse leaves are split later by {@link #refineTree(BSPNode, long)}.
+     * 
+     * <p> Coarse leaves hold at most {@value #COARSE_LEAF_SIZE} objects, so that they stay cheap to
+     * paint: a larger region out of time is still split, on a line selected from a sample of
+     * {@value #SPLIT_SAMPLE_SIZE} of its objects (evenly spaced in build order), which only costs
+     * the partition of the region, even after the deadline. These splits are not revisited by the
+     * refinement: a tree built within a budget too small for the scene can differ near the root
+     * from the tree built without deadline. They are counted by the context
+     * ({@link BuildContext#getSampledSplitCount()}), so that such a tree is not taken for the
+     * tree built without deadline, e.g. by a {@link BSPTreeCache}.
+     * 
+     * <p> A split that has started is not interrupted, so the deadline can be exceeded by the
+     * duration of one split if the estimate is too low.
+     * 
+     * @param objects the list of scene objects (StraightSegment2D) to partition.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link #NO_DEADLINE}.
+     * @return the BSP tree node representing the region.
+     * @throws IllegalArgumentException if the objects are null.
+     */
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine, long deadline) {
+        return buildTree(objects, parentLine, deadline, BuildContext.NONE);
+    }
+
+    /**
+     * Builds a BSP tree within a time budget, stopping if the context is cancelled, see {@link #buildTree(List, Line2D, long)}.
+     * 
+     * @param objects the list of scene objects (StraightSegment2D) to partition.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link #NO_DEADLINE}.
+     * @param context the build context of the build.
+     * @return the BSP tree node representing the region.
+     * @throws IllegalArgumentException if the objects are null.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine, long deadline, BuildContext context) {
+        if (objects == null) {
+            throw new IllegalArgumentException("The objects cannot be null.");
+        }
+
+        objects = inBuildOrder(objects);
+        context.recordInput(objects.size());
+        // A lazy tree is returned at once, so the deadline does not apply to it.
+        if (lazyBuild) {
+            return lazySubtree(new ArrayList<>(objects), parentLine, 0, context);
+        }
+
+        BSPNode[] root = new BSPNode[1];
+        Deque<PendingRegion> pending = new ArrayDeque<>();
+        pending.add(new PendingRegion(objects, parentLine, 0, node -> root[0] = node));
+        buildBreadthFirst(pending, deadline, context, false);
+        return root[0];
+    }
+
+    /**
+     * Continues an anytime build: splits the coarse leaves of a tree, within a time budget.
+     * The tree is modified in place by replacing its coarse leaves. It is valid at every step
+     * (a split node is linked with its two sides as coarse leaves), so it can be read by other
+     * threads in the meantime, but it must not be modified by them.
+     * 
+     * <p> The first coarse leaf is split even if its estimate does not fit before the deadline, so
+     * that a refinement by small steps always makes progress, and the deadline is then exceeded by
+     * the duration of that split.
+     * 
+     * @param root the root of the tree.
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link #NO_DEADLINE}.
+     * @return the root of the tree, which is a new node if the root was a coarse leaf.
+     */
+    public BSPNode refineTree(BSPNode root, long deadline) {
+        return refineTree(root, deadline, BuildContext.NONE);
+    }
+
+    /**
+     * Continues an anytime build, stopping if the context is cancelled, see {@link #refineTree(BSPNode, long)}.
+     * When the refinement is stopped, the tree is left valid with the regions not split yet as coarse
+     * leaves. If the root itself was a coarse leaf, it is only replaced if the refinement completes.
+     * 
+     * @param root the root of the tree.
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link #NO_DEADLINE}.
+     * @param context the build context of the refinement.
+     * @return the root of the tree, which is a new node if the root was a coarse leaf.
+     * @throws BuildCancelledException if the refinement was stopped by the context.
+     */
+    public BSPNode refineTree(BSPNode root, long deadline, BuildContext context) {
+        BSPNode[] newRoot = { root };
+        Deque<PendingRegion> pending = new ArrayDeque<>();
+        if (root.isCoarse()) {
+            pending.add(new PendingRegion(root.getCoplanarObjects(), null, 0, node -> newRoot[0] = node));
+        }
+
+        // Coarse leaves in breadth-first order, with the line and the depth of their parent.
+        Deque<BSPNode> level = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        level.add(root);
+        depths.add(0);
+        while (!level.isEmpty()) {
+            BSPNode node = level.poll();
+            int depth = depths.poll();
+            if (!node.isExpanded() || node.isLeaf()) {
+                continue;
+            }
+
+            BSPNode left = node.getLeft();
+            BSPNode right = node.getRight();
+            if (left.isCoarse()) {
+                pending.add(new PendingRegion(left.getCoplanarObjects(), node.getPartition(), depth + 1, node::setLeft));
+            } else {
+                level.add(left);
+                depths.add(depth + 1);
+            }
+            if (right.isCoarse()) {
+                pending.add(new PendingRegion(right.getCoplanarObjects(), node.getPartition(), depth + 1, node::setRight));
+            } else {
+                level.add(right);
+                depths.add(depth + 1);
+            }
+        }
+
+        for (PendingRegion region : pending) {
+            context.recordInput(region.objects.size());
+        }
+        buildBreadthFirst(pending, deadline, context, true);
+        return newRoot[0];
+    }
+
+    /**
+     * Builds the pending regions in breadth-first order until the deadline, see {@link #buildTree(List, Line2D, long)}.
+     * A split node is linked with its two sides as coarse leaves, replaced when their region is built.
+     * If {@code progress} is true, the first region is split whatever its estimate.
+     */
+    private void buildBreadthFirst(Deque<PendingRegion> pending, long deadline, BuildContext context, boolean progress) {
+        double nanosPerPair = INITIAL_NANOS_PER_PAIR;
+        boolean split = false;
+
+        while (!pending.isEmpty()) {
+            PendingRegion region = pending.poll();
+            int size = region.objects.size();
+
+            // Base case: if 0 or 1 object, create a leaf.
+            if (size <= 1) {
+                region.link.accept(new BSPNode(new ArrayList<>(region.objects)));
+                context.recordLeaf(region.depth, size);
+                continue;
+            }
+
+            // Out of time: the region stays a coarse leaf, or is split on a sample if it is too large.
+            long start = System.nanoTime();
+            double estimate = nanosPerPair * size * size;
+            boolean sampled = false;
+            if (deadline != NO_DEADLINE && (split || !progress) && (deadline - start <= 0 || estimate > deadline - start)) {
+                if (size <= COARSE_LEAF_SIZE) {
+                    region.link.accept(new BSPNode(new ArrayList<>(region.objects)));
+                    continue;
+                }
+                sampled = true;
+                context.recordSampledSplit();
+            }
+
+            List<StraightSegment2D> candidates = sampled ? splitSample(region.objects) : region.objects;
+            Split regionSplit = splitRegion(region.objects, candidates, region.parentLine, region.depth, context);
+            split = true;
+            Line2D bestLine = regionSplit.line;
+            PartitionResult partition = regionSplit.partition;
+            BSPNode node = new BSPNode(bestLine);
+            node.getCoplanarObjects().addAll(partition.coplanarList);
+
+            // The sides stay coarse leaves until their region is built.
+            node.setLeft(new BSPNode(partition.negativeList));
+            node.setRight(new BSPNode(partition.positiveList));
+            region.link.accept(node);
+            pending.add(new PendingRegion(partition.negativeList, bestLine, region.depth + 1, node::setLeft));
+            pending.add(new PendingRegion(partition.positiveList, bestLine, region.depth + 1, node::setRight));
+
+            // Calibrate on regions large enough for the quadratic scoring to dominate.
+            if (!sampled && size >= CALIBRATION_SIZE) {
+                double measured = (double) (System.nanoTime() - start) / ((double) size * size);
+                nanosPerPair = (nanosPerPair + measured) / 2;
+            }
+        }
+    }
+
+    /**
+     * Returns the objects of a region a split out of time is selected from: at most
+     * {@value #SPLIT_SAMPLE_SIZE} objects, evenly spaced in build order.
+     */
+    private static List<StraightSegment2D> splitSample(List<StraightSegment2D> objects) {
+        int size = objects.size();
+        if (size <= SPLIT_SAMPLE_SIZE) {
+            return objects;
+        }
+        List<StraightSegment2D> sample = new ArrayList<>(SPLIT_SAMPLE_SIZE);
+        for (int i = 0; i < SPLIT_SAMPLE_SIZE; i++) {
+            sample.add(objects.get((int) ((long) i * size / SPLIT_SAMPLE_SIZE)));
+        }
+        return sample;
+    }
+
+    /**
+     * Returns the lazy subtree of a region, see {@link #setLazyBuild(boolean)}.
+     * Regions of 0 or 1 object are leaves at once.
+     */
+    private BSPNode lazySubtree(List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+        if (objects.size() <= 1) {
+            context.recordLeaf(depth, objects.size());
+            return new BSPNode(objects);
+        }
+        return BSPNode.lazy(() -> expandRegion(objects, parentLine, depth, context));
+    }
+
+    /**
+     * Partitions the region of a lazy node: one level of {@link #buildSubtree(List, Line2D, int, BuildContext)}, with lazy sides.
+     * The split is checked and recorded by the context of the build, see {@link #splitRegion(List, Line2D, int, BuildContext)}.
+     */
+    private BSPNode expandRegion(List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+        Split split = splitRegion(objects, parentLine, depth, context);
+        Line2D bestLine = split.line;
+        PartitionResult partition = split.partition;
+        BSPNode node = new BSPNode(bestLine);
+        node.getCoplanarObjects().addAll(partition.coplanarList);
+
+        node.setLeft(lazySubtree(partition.negativeList, bestLine, depth + 1, context));
+        node.setRight(lazySubtree(partition.positiveList, bestLine, depth + 1, context));
+        return node;
+    }
+
+    /**
+     * Sequentially builds the subtree of a region.
+     * 
+     * @param objects the objects of the region.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param depth the depth of the region in the tree (0 for the root).
+     * @param context the build context, checked before each split.
+     * @return the BSP tree node representing the region.
+     */
+    protected BSPNode buildSubtree(List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+        if (iterativeBuild) {
+            return buildSubtreeIteratively(objects, parentLine, depth, context);
+        }
+
+        // Base case: if 0 or 1 object, create a leaf.
+        if (objects == null || objects.isEmpty() || objects.size() <= 1) {
+            context.recordLeaf(depth, objects.size());
+            return new BSPNode(new ArrayList<>(objects));
+        }
+        
+        // Choose the splitting line, partition objects and create the current node.
+        Split split = splitRegion(objects, parentLine, depth, context);
+        Line2D bestLine = split.line;
+        PartitionResult partition = split.partition;
+        BSPNode node = new BSPNode(bestLine);
+        node.getCoplanarObjects().addAll(partition.coplanarList);
+        
+        // Recursively build subtrees, passing bestLine as parent's line for continuity.
+        node.setLeft(buildSubtree(partition.negativeList, bestLine, depth + 1, context));
+        node.setRight(buildSubtree(partition.positiveList, bestLine, depth + 1, context));
+        
+        return node;
+    }
+
+    /**
+     * Splits a region holding at least two objects: chooses its splitting line and partitions
+     * its objects. The context is checked before the split, and the split is recorded to it.
+     * 
+     * @param objects the objects of the region.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param depth the depth of the region in the tree (0 for the root).
+     * @param context the build context of the build.
+     * @return the splitting line and the partition of the objects.
+     */
+    private Split splitRegion(List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+        return splitRegion(objects, objects, parentLine, depth, context);
+    }
+
+    /**
+     * Splits a region on a line selected from some of its objects, see {@link #splitRegion(List, Line2D, int, BuildContext)}.
+     * 
+     * @param objects the objects of the region.
+     * @param candidates the objects the splitting line is selected from (all the objects, or a sample of them).
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param depth the depth of the region in the tree (0 for the root).
+     * @param context the build context of the build.
+     * @return the splitting line and the partition of the objects.
+     */
+    private Split splitRegion(List<StraightSegment2D> objects, List<StraightSegment2D> candidates, Line2D parentLine,
+            int depth, BuildContext context) {
+        context.checkpoint();
+        BuildStatistics statistics = context.getStatistics();
+        long start = statistics != null ? System.nanoTime() : 0;
+        BuildStatistics outer = BuildStatistics.enter(statistics);
+        Line2D bestLine;
+        PartitionResult partition;
+        try {
+            bestLine = selectSplittingLine(candidates, parentLine);
+            partition = partitionObjects(objects, bestLine);
+        } finally {
+            BuildStatistics.exit(statistics, outer);
+        }
+
+        int coplanar = partition.coplanarList.size();
+        int negative = partition.negativeList.size();
+        int positive = partition.positiveList.size();
+        context.recordSplit(depth, objects.size(), coplanar, negative, positive);
+        if (statistics != null) {
+            statistics.recordSplit(depth, System.nanoTime() - start, objects.size(), coplanar, negative, positive,
+                isFreeSplit(partition.coplanarList, parentLine));
+        }
+        return new Split(bestLine, partition);
+    }
+
+    /**
+     * Returns true if one of the objects of a node lies on the parent's line, so that the line
+     * of the node splits its region without cutting any object (free split).
+     * 
+     * @param coplanarObjects the objects of the node.
+     * @param parentLine the parent's splitting line, or null for the root.
+     * @return true if the split of the node is a free split.
+     */
+    protected static boolean isFreeSplit(List<StraightSegment2D> coplanarObjects, Line2D parentLine) {
+        if (parentLine == null) {
+            return false;
+        }
+        for (StraightSegment2D obj : coplanarObjects) {
+            if (Math.abs(parentLine.evaluate(obj.getStart())) < EPSILON && Math.abs(parentLine.evaluate(obj.getEnd())) < EPSILON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if one of the objects of a node lies on the parent's line, see {@link #isFreeSplit(List, Line2D)}.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the objects of the node in the array (inclusive).
+     * @param to the last position of the objects of the node in the array (exclusive).
+     * @param parentLine the parent's splitting line, or null for the root.
+     * @return true if the split of the node is a free split.
+     */
+    protected static boolean isFreeSplit(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        if (parentLine == null) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            int index = indices[i];
+            if (Math.abs(parentLine.evaluate(store.getX1(index), store.getY1(index))) < EPSILON
+                    && Math.abs(parentLine.evaluate(store.getX2(index), store.getY2(index))) < EPSILON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the subtree of a region without recursion.
+     * Pending regions are kept on an explicit stack along with the link to their parent node.
+     * The negative side is pushed last so that regions are built in the same order as the recursion.
+     * 
+     * @param objects the objects of the region.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param depth the depth of the region in the tree (0 for the root).
+     * @param context the build context, checked before each split.
+     * @return the BSP tree node representing the region.
+     */
+    private BSPNode buildSubtreeIteratively(List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+        BSPNode[] root = new BSPNode[1];
+        Deque<PendingRegion> pending = new ArrayDeque<>();
+        pending.push(new PendingRegion(objects, parentLine, depth, node -> root[0] = node));
+
+        while (!pending.isEmpty()) {
+            PendingRegion region = pending.pop();
+
+            // Base case: if 0 or 1 object, create a leaf.
+            if (region.objects.size() <= 1) {
+                region.link.accept(new BSPNode(new ArrayList<>(region.objects)));
+                context.recordLeaf(region.depth, region.objects.size());
+                continue;
+            }
+
+            Split split = splitRegion(region.objects, region.parentLine, region.depth, context);
+            Line2D bestLine = split.line;
+            PartitionResult partition = split.partition;
+            BSPNode node = new BSPNode(bestLine);
+            region.link.accept(node);
+            node.getCoplanarObjects().addAll(partition.coplanarList);
+
+            pending.push(new PendingRegion(partition.positiveList, bestLine, region.depth + 1, node::setRight));
+            pending.push(new PendingRegion(partition.negativeList, bestLine, region.depth + 1, node::setLeft));
+        }
+
+        return root[0];
+    }
+
+    /**
+     * Chooses the line splitting a region holding at least two objects.
+     * The line must be the support line of one of the objects, so that every split makes progress.
+     * 
+     * @param objects the objects of the region.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @return the splitting line.
+     */
+    protected abstract Line2D selectSplittingLine(List<StraightSegment2D> objects, Line2D parentLine);
     
     /**
      * Evaluates candidate splitting lines from the given objects.
      * Only candidates whose support line touches the parent's line (if provided) are accepted.
      * The candidate "balance" is the absolute difference between the number of objects
      * lying entirely in the positive and negative half-planes.
+     * If sampling is enabled and the node is large enough, only a sample of the candidates is
+     * scored, against a sample of the objects.
+     * If line interning is enabled, there is one candidate per distinct support line.
      * 
      * @param objects the list of objects.
      * @param parentLine the parent's splitting line, or null if none.
      * @return a list of Candidate objects.
      */
     protected List<Candidate> evaluateCandidates(List<StraightSegment2D> objects, Line2D parentLine) {
-        List<Candidate> candidates = new ArrayList<>();
-        for (StraightSegment2D obj : objects) {
-            Line2D candidateLine = obj.getSupportLine();
-            if (parentLine != null && !candidateLine.touches(parentLine)) {
-                continue;
+        List<StraightSegment2D> candidateObjects = objects;
+        List<StraightSegment2D> scoredObjects = objects;
+        if (sampling != null && sampling.appliesTo(objects.size())) {
+            SplittableRandom random = sampling.randomFor(objects);
+            candidateObjects = CandidateSampling.sample(objects, sampling.getCandidateSamples(), random);
+            scoredObjects = CandidateSampling.sample(objects, sampling.getCenterSamples(), random);
+        }
+
+        // Support lines of the candidates, merged if interning is enabled.
+        SupportLines lines = new SupportLines(lineInterning, candidateObjects.size());
+        for (StraightSegment2D obj : candidateObjects) {
+            Point2D start = obj.getStart();
+            Point2D end = obj.getEnd();
+            int id = lines.add(start.x, start.y, end.x, end.y);
+
+            // Check free split condition.
+            if (parentLine != null && Math.abs(parentLine.evaluate(start)) < EPSILON && Math.abs(parentLine.evaluate(end)) < EPSILON) {
+                lines.setFreeSplit(id);
             }
+        }
+
+        int[] accepted = acceptedLines(lines, parentLine, false);
+        Candidate[] candidates = new Candidate[accepted.length];
+        List<StraightSegment2D> others = scoredObjects;
+        SegmentBatch batch = lineKernel != null && accepted.length > 0 ? SegmentBatch.of(others) : null;
+
+        forEachCandidate(candidates.length, others.size(), i -> {
+            int id = accepted[i];
+            Line2D candidateLine = lines.getLine(id);
             
             int countPositive = 0;
             int countNegative = 0;
 
-            for (StraightSegment2D other : objects) {
-                Point2D center = other.getCenter();
-                double eval = candidateLine.evaluate(center);
+            if (batch != null) {
+                int[] counts = new int[3];
+                lineKernel.countSides(candidateLine.getA(), candidateLine.getB(), candidateLine.getC(),
+                                      batch.centerX, batch.centerY, 0, batch.size, EPSILON, counts);
+                countPositive = counts[0];
+                countNegative = counts[1];
+            } else {
+                for (StraightSegment2D other : others) {
+                    // Evaluate at the center without allocating it.
+                    Point2D start = other.getStart();
+                    Point2D end = other.getEnd();
+                    double eval = candidateLine.evaluate((start.x + end.x) / 2.0, (start.y + end.y) / 2.0);
 
-                if (eval > EPSILON) {
-                    countPositive++;
-                } else if (eval < -EPSILON) {
-                    countNegative++;
+                    if (eval > EPSILON) {
+                        countPositive++;
+                    } else if (eval < -EPSILON) {
+                        countNegative++;
+                    }
                 }
             }
 
             double balance = Math.abs(countPositive - countNegative);
-
-            // Check free split condition.
-            boolean freeSplit = false;
-            if (parentLine != null) {
-                freeSplit = (Math.abs(parentLine.evaluate(obj.getLeftEndpoint())) < EPSILON &&
-                             Math.abs(parentLine.evaluate(obj.getRightEndpoint())) < EPSILON);
-            }
-            if (freeSplit) {
+            if (lines.isFreeSplit(id)) {
                 // Prioritize free splits.
                 balance = -Double.MAX_VALUE; 
             }
 
-            candidates.add(new Candidate(candidateLine, balance));
+            candidates[i] = new Candidate(candidateLine, balance, lines.getCount(id));
+        });
+        countLineEvaluations((long) candidates.length * others.size());
+
+        return new ArrayList<>(Arrays.asList(candidates));
+    }
+
+    /**
+     * Returns the ids of the support lines accepted as candidates, in order.
+     * If there is a parent's line, a candidate must intersect it, or also be coincident with it
+     * unless {@code strictIntersection} is set.
+     * 
+     * @param lines the support lines of the candidates.
+     * @param parentLine the parent's splitting line, or null if none.
+     * @param strictIntersection true to reject the lines coincident with the parent's line.
+     * @return the ids of the accepted lines.
+     */
+    protected static int[] acceptedLines(SupportLines lines, Line2D parentLine, boolean strictIntersection) {
+        int[] accepted = new int[lines.size()];
+        int count = 0;
+        for (int id = 0; id < lines.size(); id++) {
+            Line2D line = lines.getLine(id);
+            if (parentLine != null && !(strictIntersection ? line.intersect(parentLine) : line.touches(parentLine))) {
+                continue;
+            }
+            accepted[count++] = id;
+        }
+        return count == accepted.length ? accepted : Arrays.copyOf(accepted, count);
+    }
+
+    /**
+     * Prepares the branch-and-bound scoring of a node: the support lines of the candidates,
+     * the accepted ones, and the scored objects gathered in a batch (with sampling if enabled).
+     * 
+     * @param objects the list of objects.
+     * @param parentLine the parent's splitting line, or null if none.
+     * @param strictIntersection true to reject the candidates coincident with the parent's line.
+     * @return the bounded scoring of the node.
+     */
+    protected BoundedScoring prepareBoundedScoring(List<StraightSegment2D> objects, Line2D parentLine, boolean strictIntersection) {
+        List<StraightSegment2D> candidateObjects = objects;
+        List<StraightSegment2D> scoredObjects = objects;
+        if (sampling != null && sampling.appliesTo(objects.size())) {
+            SplittableRandom random = sampling.randomFor(objects);
+            candidateObjects = CandidateSampling.sample(objects, sampling.getCandidateSamples(), random);
+            scoredObjects = CandidateSampling.sample(objects, sampling.getCenterSamples(), random);
+        }
+
+        SupportLines lines = new SupportLines(lineInterning, candidateObjects.size());
+        for (StraightSegment2D obj : candidateObjects) {
+            Point2D start = obj.getStart();
+            Point2D end = obj.getEnd();
+            int id = lines.add(start.x, start.y, end.x, end.y);
+            if (parentLine != null && Math.abs(parentLine.evaluate(start)) < EPSILON && Math.abs(parentLine.evaluate(end)) < EPSILON) {
+                lines.setFreeSplit(id);
+            }
+        }
+
+        return new BoundedScoring(lines, acceptedLines(lines, parentLine, strictIntersection), SegmentBatch.of(scoredObjects),
+                                  lineKernel != null ? lineKernel : LineKernels.scalar());
+    }
+
+    /**
+     * Prepares the branch-and-bound scoring of a region of a segment store.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line, or null if none.
+     * @param strictIntersection true to reject the candidates coincident with the parent's line.
+     * @return the bounded scoring of the node.
+     * @see #prepareBoundedScoring(List, Line2D, boolean)
+     */
+    protected BoundedScoring prepareBoundedScoring(SegmentStore store, int[] indices, int from, int to, Line2D parentLine, boolean strictIntersection) {
+        int[] candidateIndices = indices;
+        int candidateFrom = from;
+        int candidateTo = to;
+        SegmentBatch batch;
+        if (sampling != null && sampling.appliesTo(to - from)) {
+            SplittableRandom random = sampling.randomFor(store, indices, from, to);
+            candidateIndices = CandidateSampling.sample(indices, from, to, sampling.getCandidateSamples(), random);
+            candidateFrom = 0;
+            candidateTo = candidateIndices.length;
+            int[] scoredIndices = CandidateSampling.sample(indices, from, to, sampling.getCenterSamples(), random);
+            batch = SegmentBatch.of(store, scoredIndices, 0, scoredIndices.length);
+        } else {
+            batch = SegmentBatch.of(store, indices, from, to);
+        }
+
+        SupportLines lines = new SupportLines(lineInterning, candidateTo - candidateFrom);
+        for (int c = candidateFrom; c < candidateTo; c++) {
+            int index = candidateIndices[c];
+            double x1 = store.getX1(index);
+            double y1 = store.getY1(index);
+            double x2 = store.getX2(index);
+            double y2 = store.getY2(index);
+            int id = lines.add(x1, y1, x2, y2);
+            if (parentLine != null && Math.abs(parentLine.evaluate(x1, y1)) < EPSILON && Math.abs(parentLine.evaluate(x2, y2)) < EPSILON) {
+                lines.setFreeSplit(id);
+            }
+        }
+
+        return new BoundedScoring(lines, acceptedLines(lines, parentLine, strictIntersection), batch,
+                                  lineKernel != null ? lineKernel : LineKernels.scalar());
+    }
+
+    /**
+     * Runs the scoring of the candidates {@code 0..count-1} of a node, in parallel if the
+     * work is above the parallel scoring threshold, sequentially otherwise. The scorer must
+     * only write the result of candidate i at index i, so the outcome does not depend on
+     * the order in which candidates are scored.
+     * 
+     * @param count the number of candidates.
+     * @param objectCount the number of objects each candidate is scored against.
+     * @param scorer the scoring of one candidate, given its index.
+     */
+    protected void forEachCandidate(int count, int objectCount, IntConsumer scorer) {
+        BuildStatistics statistics = BuildStatistics.current();
+        if (statistics != null) {
+            statistics.addCandidates(count);
+        }
+
+        if (parallelScoringThreshold <= 0 || count < 2 || (long) count * objectCount < parallelScoringThreshold) {
+            for (int i = 0; i < count; i++) {
+                scorer.accept(i);
+            }
+            return;
         }
 
-        return candidates;
+        ForkJoinPool pool = pool();
+        int granularity = Math.max(1, count / (pool.getParallelism() * 4));
+        pool.invoke(new ScoringTask(scorer, 0, count, granularity));
     }
     
+    /**
+     * Counts line evaluations in the statistics of the node being split, if it is instrumented.
+     * Called by the scoring code after {@link #forEachCandidate(int, int, IntConsumer)}, on the thread splitting the node.
+     * 
+     * @param count the number of evaluations.
+     */
+    protected static void countLineEvaluations(long count) {
+        BuildStatistics statistics = BuildStatistics.current();
+        if (statistics != null) {
+            statistics.addLineEvaluations(count);
+        }
+    }
+
     /**
      * Selects the candidate with the minimal balance value.
+     * Ties go to the candidate with the most collinear objects, then to the first one. The collinear
+     * objects are only a tie-break: the scores already count them as coplanar (neither side, not cut),
+     * so a line shared by several objects of the node is not scored as better a second time.
      * 
      * @param candidates list of candidates.
      * @return the best candidate.
@@ -84,7 +1074,7 @@ public abstract class BSPTreeBuilder {
     protected Candidate selectBestCandidate(List<Candidate> candidates) {
         Candidate best = candidates.get(0);
         for (Candidate cand : candidates) {
-            if (cand.balance < best.balance) {
+            if (cand.balance < best.balance || (cand.balance == best.balance && cand.collinearCount > best.collinearCount)) {
                 best = cand;
             }
         }
@@ -106,10 +1096,13 @@ public abstract class BSPTreeBuilder {
         List<StraightSegment2D> coplanarList = new ArrayList<>();
         List<StraightSegment2D> positiveList = new ArrayList<>();
         List<StraightSegment2D> negativeList = new ArrayList<>();
+        int splits = 0;
         
         for (StraightSegment2D obj : objects) {
-            Point2D center = obj.getCenter();
-            double eval = splittingLine.evaluate(center);
+            // Evaluate at the center without allocating it.
+            Point2D start = obj.getStart();
+            Point2D end = obj.getEnd();
+            double eval = splittingLine.evaluate((start.x + end.x) / 2.0, (start.y + end.y) / 2.0);
 
             if (Math.abs(eval) < EPSILON) {
                 coplanarList.add(obj);
@@ -120,6 +1113,7 @@ public abstract class BSPTreeBuilder {
 
                 if (e1 * e2 < -EPSILON) {
                     StraightSegment2D[] fragments = obj.split(splittingLine);
+                    splits++;
 
                     if (fragments[0] != null) positiveList.add(fragments[0]);
                     if (fragments[1] != null) negativeList.add(fragments[1]);
@@ -132,6 +1126,7 @@ public abstract class BSPTreeBuilder {
 
                 if (e1 * e2 < -EPSILON) {
                     StraightSegment2D[] fragments = obj.split(splittingLine);
+                    splits++;
 
                     if (fragments[1] != null) negativeList.add(fragments[1]);
                     if (fragments[0] != null) positiveList.add(fragments[0]);
@@ -140,10 +1135,481 @@ public abstract class BSPTreeBuilder {
                 }
             }
         }
+
+        BuildStatistics statistics = BuildStatistics.current();
+        if (statistics != null) {
+            // The center of every object, and the endpoints of the objects that are not coplanar.
+            statistics.addLineEvaluations(objects.size() + 2L * (objects.size() - coplanarList.size()));
+            statistics.addSegmentSplits(splits, positiveList.size() + negativeList.size() + coplanarList.size() - objects.size() + splits);
+        }
         
         return new PartitionResult(coplanarList, positiveList, negativeList);
     }
     
+    /**
+     * Builds a BSP tree from all the segments of a store.
+     * Regions are ranges of segment indices, built with an explicit stack, and the fragments
+     * created by the splits are appended to the store. Nodes reference their objects by index
+     * and only create the StraightSegment2D when they are requested.
+     * 
+     * <p> Regions are partitioned in place (see {@link IndexBuffers}), so apart from the nodes
+     * and the candidate lines, a build only allocates a few buffers that grow with the scene.
+     * Subtrees are built sequentially, but candidates can still be scored in parallel.
+     * 
+     * @param store the segments to partition, to which fragments are appended.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @return the BSP tree node representing the region.
+     */
+    public BSPNode buildTree(SegmentStore store, Line2D parentLine) {
+        return buildTree(store, parentLine, BuildContext.NONE);
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store, stopping if the context is cancelled,
+     * see {@link #buildTree(SegmentStore, Line2D)}.
+     * 
+     * @param store the segments to partition, to which fragments are appended.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param context the build context of the build.
+     * @return the BSP tree node representing the region.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    public BSPNode buildTree(SegmentStore store, Line2D parentLine, BuildContext context) {
+        return buildTree(store, parentLine, context, NODE_WRITER);
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store, giving its nodes to a writer instead of
+     * creating BSPNode objects, see {@link #buildTree(SegmentStore, Line2D)}. The tree can so be written
+     * straight to a compact or off-heap storage. Subclasses building on stores override this method.
+     * 
+     * @param <N> the type of the nodes of the written tree.
+     * @param store the segments to partition, to which fragments are appended.
+     * @param parentLine the parent's splitting line (null for the root).
+     * @param context the build context of the build.
+     * @param writer the writer of the nodes.
+     * @return the root of the written tree.
+     * @throws BuildCancelledException if the build was stopped by the context.
+     */
+    public <N> N buildTree(SegmentStore store, Line2D parentLine, BuildContext context, BSPTreeWriter<N> writer) {
+        IndexBuffers buffers = new IndexBuffers(store.size());
+        int[] order = buildOrder(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            buffers.work[i] = order == null ? i : order[i];
+        }
+
+        List<N> root = new ArrayList<>(1);
+        Deque<IndexedRegion<N>> pending = new ArrayDeque<>();
+        pending.push(new IndexedRegion<>(0, store.size(), parentLine, 0, root::add));
+        context.recordInput(store.size());
+
+        while (!pending.isEmpty()) {
+            IndexedRegion<N> region = pending.pop();
+
+            // Base case: if 0 or 1 object, create a leaf.
+            if (region.to - region.from <= 1) {
+                int keptFrom = buffers.keptSize;
+                for (int i = region.from; i < region.to; i++) {
+                    buffers.keep(buffers.work[i]);
+                }
+                region.link.accept(writer.addNode(null, store, buffers.kept, keptFrom, buffers.keptSize));
+                context.recordLeaf(region.depth, region.to - region.from);
+                continue;
+            }
+
+            context.checkpoint();
+            BuildStatistics statistics = context.getStatistics();
+            long start = statistics != null ? System.nanoTime() : 0;
+            BuildStatistics outer = BuildStatistics.enter(statistics);
+            Line2D bestLine;
+            int keptFrom = buffers.keptSize;
+            try {
+                bestLine = selectSplittingLine(store, buffers.work, region.from, region.to, region.parentLine);
+                partitionInPlace(store, buffers, region.from, region.to, bestLine);
+            } finally {
+                BuildStatistics.exit(statistics, outer);
+            }
+
+            int size = region.to - region.from;
+            int coplanar = buffers.keptSize - keptFrom;
+            int negative = buffers.negativeTo - buffers.negativeFrom;
+            int positive = buffers.negativeFrom - region.from;
+            context.recordSplit(region.depth, size, coplanar, negative, positive);
+            if (statistics != null) {
+                statistics.recordSplit(region.depth, System.nanoTime() - start, size, coplanar, negative, positive,
+                    isFreeSplit(store, buffers.kept, keptFrom, buffers.keptSize, region.parentLine));
+            }
+
+            N node = writer.addNode(bestLine, store, buffers.kept, keptFrom, buffers.keptSize);
+            region.link.accept(node);
+
+            // The negative region is on top of the work buffer, so it is built first.
+            pending.push(new IndexedRegion<>(region.from, buffers.negativeFrom, bestLine, region.depth + 1, child -> writer.setRight(node, child)));
+            pending.push(new IndexedRegion<>(buffers.negativeFrom, buffers.negativeTo, bestLine, region.depth + 1, child -> writer.setLeft(node, child)));
+        }
+
+        return root.get(0);
+    }
+
+    /**
+     * Chooses the line splitting a region of a segment store holding at least two objects.
+     * By default the segments of the region are created and given to
+     * {@link #selectSplittingLine(List, Line2D)}; builders override it to scan the store directly.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line (null for the root).
+     * @return the splitting line.
+     */
+    protected Line2D selectSplittingLine(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        return selectSplittingLine(store.getSegments(indices, from, to), parentLine);
+    }
+
+    /**
+     * Evaluates candidate splitting lines of a region of a segment store.
+     * Candidates, balances and sampling are the same as {@link #evaluateCandidates(List, Line2D)}.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line, or null if none.
+     * @return a list of Candidate objects.
+     */
+    protected List<Candidate> evaluateCandidates(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        int[] candidateIndices = indices;
+        int candidateFrom = from;
+        int candidateTo = to;
+        int[] scoredIndices = indices;
+        int scoredFrom = from;
+        int scoredTo = to;
+        if (sampling != null && sampling.appliesTo(to - from)) {
+            SplittableRandom random = sampling.randomFor(store, indices, from, to);
+            candidateIndices = CandidateSampling.sample(indices, from, to, sampling.getCandidateSamples(), random);
+            candidateFrom = 0;
+            candidateTo = candidateIndices.length;
+            scoredIndices = CandidateSampling.sample(indices, from, to, sampling.getCenterSamples(), random);
+            scoredFrom = 0;
+            scoredTo = scoredIndices.length;
+        }
+
+        // Support lines of the candidates, merged if interning is enabled.
+        SupportLines lines = new SupportLines(lineInterning, candidateTo - candidateFrom);
+        for (int c = candidateFrom; c < candidateTo; c++) {
+            int index = candidateIndices[c];
+            double x1 = store.getX1(index);
+            double y1 = store.getY1(index);
+            double x2 = store.getX2(index);
+            double y2 = store.getY2(index);
+            int id = lines.add(x1, y1, x2, y2);
+
+            // Free split: both endpoints lie on the parent's line.
+            if (parentLine != null && Math.abs(parentLine.evaluate(x1, y1)) < EPSILON && Math.abs(parentLine.evaluate(x2, y2)) < EPSILON) {
+                lines.setFreeSplit(id);
+            }
+        }
+
+        int[] accepted = acceptedLines(lines, parentLine, false);
+        Candidate[] candidates = new Candidate[accepted.length];
+        int[] others = scoredIndices;
+        int othersFrom = scoredFrom;
+        int othersTo = scoredTo;
+
+        SegmentBatch batch = lineKernel != null && accepted.length > 0 ? SegmentBatch.of(store, others, othersFrom, othersTo) : null;
+
+        forEachCandidate(candidates.length, othersTo - othersFrom, i -> {
+            int id = accepted[i];
+            Line2D candidateLine = lines.getLine(id);
+
+            int countPositive = 0;
+            int countNegative = 0;
+
+            if (batch != null) {
+                int[] counts = new int[3];
+                lineKernel.countSides(candidateLine.getA(), candidateLine.getB(), candidateLine.getC(),
+                                      batch.centerX, batch.centerY, 0, batch.size, EPSILON, counts);
+                countPositive = counts[0];
+                countNegative = counts[1];
+            } else {
+                for (int o = othersFrom; o < othersTo; o++) {
+                    int other = others[o];
+                    double eval = candidateLine.evaluate(store.getCenterX(other), store.getCenterY(other));
+
+                    if (eval > EPSILON) {
+                        countPositive++;
+                    } else if (eval < -EPSILON) {
+                        countNegative++;
+                    }
+                }
+            }
+
+            double balance = Math.abs(countPositive - countNegative);
+            if (lines.isFreeSplit(id)) {
+                balance = -Double.MAX_VALUE;
+            }
+
+            candidates[i] = new Candidate(candidateLine, balance, lines.getCount(id));
+        });
+        countLineEvaluations((long) candidates.length * (othersTo - othersFrom));
+
+        return new ArrayList<>(Arrays.asList(candidates));
+    }
+
+    /**
+     * Partitions the region {@code work[from..to)} of the index buffers by a line, like
+     * {@link #partitionObjects(List, Line2D)} but without allocating lists:
+     * 1. Coplanar indices are appended to the kept indices, referenced by the node.
+     * 2. Positive indices (or the positive fragment of split segments) are compacted in place at the start of the region.
+     * 3. Negative indices are gathered in a scratch buffer, then copied right after the positive ones.
+     * The relative order of the objects is preserved on each side, so the tree is the same as with lists.
+     * On return, the positive region is {@code work[from..negativeFrom)} and the negative region
+     * {@code work[negativeFrom..negativeTo)}, which may extend beyond {@code to} if segments were split.
+     * 
+     * @param store the store holding the objects, to which fragments are appended.
+     * @param buffers the index buffers of the build.
+     * @param from the first position of the region in the work buffer (inclusive).
+     * @param to the last position of the region in the work buffer (exclusive).
+     * @param splittingLine the splitting line.
+     */
+    private void partitionInPlace(SegmentStore store, IndexBuffers buffers, int from, int to, Line2D splittingLine) {
+        int[] work = buffers.work;
+        int positiveEnd = from;
+        int negativeCount = 0;
+        int keptFrom = buffers.keptSize;
+        int splits = 0;
+
+        for (int i = from; i < to; i++) {
+            int index = work[i];
+            double eval = splittingLine.evaluate(store.getCenterX(index), store.getCenterY(index));
+
+            if (Math.abs(eval) < EPSILON) {
+                buffers.keep(index);
+                continue;
+            }
+
+            double e1 = splittingLine.evaluate(store.getX1(index), store.getY1(index));
+            double e2 = splittingLine.evaluate(store.getX2(index), store.getY2(index));
+
+            int positive = -1;
+            int negative = -1;
+            if (e1 * e2 < -EPSILON) {
+                int[] fragments = store.split(index, splittingLine);
+                positive = fragments[0];
+                negative = fragments[1];
+                splits++;
+            } else if (eval > 0) {
+                positive = index;
+            } else {
+                negative = index;
+            }
+
+            // At most one index is written per index read, so positiveEnd never passes i.
+            if (positive >= 0) {
+                work[positiveEnd++] = positive;
+            }
+            if (negative >= 0) {
+                if (negativeCount == buffers.negatives.length) {
+                    buffers.negatives = Arrays.copyOf(buffers.negatives, negativeCount + (negativeCount >> 1) + 1);
+                }
+                buffers.negatives[negativeCount++] = negative;
+            }
+        }
+
+        buffers.ensureWorkCapacity(positiveEnd + negativeCount);
+        System.arraycopy(buffers.negatives, 0, buffers.work, positiveEnd, negativeCount);
+        buffers.negativeFrom = positiveEnd;
+        buffers.negativeTo = positiveEnd + negativeCount;
+
+        BuildStatistics statistics = BuildStatistics.current();
+        if (statistics != null) {
+            int coplanar = buffers.keptSize - keptFrom;
+            statistics.addLineEvaluations((to - from) + 2L * (to - from - coplanar));
+            statistics.addSegmentSplits(splits, (positiveEnd - from) + negativeCount + coplanar - (to - from) + splits);
+        }
+    }
+
+    /**
+     * Fork/join task building the subtree of a region.
+     * Regions holding at least parallelCutoff objects are split in this task and their two
+     * subtrees are forked as new tasks; smaller regions are built sequentially. Tasks complete
+     * through their completer instead of being joined, so waiting does not grow the stack.
+     */
+    private final class SubtreeTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<StraightSegment2D> objects;
+        private final Line2D parentLine;
+        private final int depth;
+        private final BuildContext context;
+        private BSPNode node;
+        private SubtreeTask left;
+        private SubtreeTask right;
+
+        SubtreeTask(SubtreeTask parent, List<StraightSegment2D> objects, Line2D parentLine, int depth, BuildContext context) {
+            super(parent);
+            this.objects = objects;
+            this.parentLine = parentLine;
+            this.depth = depth;
+            this.context = context;
+        }
+
+        @Override
+        public void compute() {
+            if (objects.size() < parallelCutoff) {
+                node = buildSubtree(objects, parentLine, depth, context);
+                tryComplete();
+                return;
+            }
+
+            Split split = splitRegion(objects, parentLine, depth, context);
+            Line2D bestLine = split.line;
+            PartitionResult partition = split.partition;
+            node = new BSPNode(bestLine);
+            node.getCoplanarObjects().addAll(partition.coplanarList);
+
+            left = new SubtreeTask(this, partition.negativeList, bestLine, depth + 1, context);
+            right = new SubtreeTask(this, partition.positiveList, bestLine, depth + 1, context);
+            setPendingCount(2);
+            left.fork();
+            right.fork();
+            tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            // Children are complete: link their subtrees to this node.
+            if (left != null) {
+                node.setLeft(left.node);
+                node.setRight(right.node);
+            }
+        }
+    }
+
+    /**
+     * Fork/join task scoring a range of candidates, split in halves down to a given granularity.
+     */
+    private static final class ScoringTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer scorer;
+        private final int from;
+        private final int to;
+        private final int granularity;
+
+        ScoringTask(IntConsumer scorer, int from, int to, int granularity) {
+            this.scorer = scorer;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= granularity) {
+                for (int i = from; i < to; i++) {
+                    scorer.accept(i);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScoringTask(scorer, from, middle, granularity), new ScoringTask(scorer, middle, to, granularity));
+        }
+    }
+
+    /**
+     * Splitting line of a region and the partition of its objects.
+     */
+    private static final class Split {
+        private final Line2D line;
+        private final PartitionResult partition;
+
+        Split(Line2D line, PartitionResult partition) {
+            this.line = line;
+            this.partition = partition;
+        }
+    }
+
+    /**
+     * Region waiting to be built by the iterative build, with its depth and the link to its parent node.
+     */
+    private static final class PendingRegion {
+        private final List<StraightSegment2D> objects;
+        private final Line2D parentLine;
+        private final int depth;
+        private final Consumer<BSPNode> link;
+
+        PendingRegion(List<StraightSegment2D> objects, Line2D parentLine, int depth, Consumer<BSPNode> link) {
+            this.objects = objects;
+            this.parentLine = parentLine;
+            this.depth = depth;
+            this.link = link;
+        }
+    }
+
+    /**
+     * Range of the work buffer waiting to be built by the indexed build, with its depth and the link to its parent node.
+     */
+    private static final class IndexedRegion<N> {
+        private final int from;
+        private final int to;
+        private final Line2D parentLine;
+        private final int depth;
+        private final Consumer<N> link;
+
+        IndexedRegion(int from, int to, Line2D parentLine, int depth, Consumer<N> link) {
+            this.from = from;
+            this.to = to;
+            this.parentLine = parentLine;
+            this.depth = depth;
+            this.link = link;
+        }
+    }
+
+    /**
+     * Index buffers shared by all the nodes of an indexed build.
+     * 
+     * <p> The work buffer is used as a stack of regions: the region being built is always the
+     * last one of the buffer, so its partition can grow past its end when segments are split.
+     * Its positive side stays in place and its negative side is written after it; the negative
+     * region is built first, and once its subtree is done its space is reused by the positive one.
+     * 
+     * <p> The kept buffer is append-only and holds the indices referenced by the nodes (coplanar
+     * objects and leaves). When it grows, the nodes already built keep the previous array, whose
+     * content they reference does not change.
+     */
+    private static final class IndexBuffers {
+        private int[] work;
+        private int[] kept;
+        private int keptSize;
+        private int[] negatives;
+        private int negativeFrom;
+        private int negativeTo;
+
+        IndexBuffers(int size) {
+            // Leave room for the fragments created by the splits.
+            int capacity = size + size / 2 + 1;
+            this.work = new int[capacity];
+            this.kept = new int[capacity];
+            this.negatives = new int[capacity / 2 + 1];
+        }
+
+        void keep(int index) {
+            if (keptSize == kept.length) {
+                kept = Arrays.copyOf(kept, keptSize + (keptSize >> 1) + 1);
+            }
+            kept[keptSize++] = index;
+        }
+
+        void ensureWorkCapacity(int capacity) {
+            if (capacity > work.length) {
+                work = Arrays.copyOf(work, Math.max(capacity, work.length + (work.length >> 1)));
+            }
+        }
+    }
+
     /**
      * Helper class to encapsulate partition results.
      */
@@ -167,10 +1633,17 @@ public abstract class BSPTreeBuilder {
     protected static class Candidate {
         public final Line2D supportLine;
         public final double balance;
+        // Number of objects of the node lying on this support line, only used to break ties.
+        public final int collinearCount;
         
         public Candidate(Line2D supportLine, double balance) {
+            this(supportLine, balance, 1);
+        }
+
+        public Candidate(Line2D supportLine, double balance, int collinearCount) {
             this.supportLine = supportLine;
             this.balance = balance;
+            this.collinearCount = collinearCount;
         }
     }
 }
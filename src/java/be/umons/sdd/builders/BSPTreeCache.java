@@ -0,0 +1,235 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Scene2D;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of built BSP trees, so that a tree built for a scene and a builder configuration
+ * is not built again.
+ *
+ * <p> Trees are keyed by the content hash of the scene ({@link Scene2D#contentHash()}) and the
+ * configuration of the builder ({@link BSPTreeBuilder#getConfiguration()}), so a scene edited
+ * or loaded again, or a builder created again with the same parameters, find the same entry.
+ *
+ * <p> The memory used by the trees is estimated from their number of nodes and fragments, and
+ * bounded: when a new tree exceeds the budget, the least recently used trees are evicted.
+ * A tree larger than the whole budget is not cached.
+ *
+ * <p> Only trees equal to the tree built without deadline must be cached: an anytime build that
+ * split regions on sampled lines (see {@link BuildContext#getSampledSplitCount()}) gives
+ * another tree, even once refined.
+ *
+ * <p> Cached trees are shared: a tree that is about to be modified (e.g. by a {@link DynamicBSPTree})
+ * must first be removed with {@link #remove(Key)}. The cache is thread-safe.
+ */
+public class BSPTreeCache {
+
+    /**
+     * Default memory budget of the cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    // Estimated size of a node (with its list of objects) and of a fragment (with its points).
+    private static final long NODE_BYTES = 96;
+    private static final long FRAGMENT_BYTES = 88;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache with the default memory budget.
+     */
+    public BSPTreeCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a cache with a given memory budget.
+     *
+     * @param maxBytes the estimated memory the cached trees can use, in bytes.
+     */
+    public BSPTreeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The memory budget of the cache must be positive.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the key of the tree built by a builder for a scene.
+     * Computing the key hashes the whole scene, so it should be kept while the scene does not change.
+     *
+     * @param scene the scene.
+     * @param builder the builder.
+     * @return the key of the tree.
+     */
+    public static Key key(Scene2D scene, BSPTreeBuilder builder) {
+        return new Key(scene.contentHash(), builder.getConfiguration());
+    }
+
+    /**
+     * Returns the cached tree of a key, and counts a hit or a miss.
+     *
+     * @param key the key of the tree.
+     * @return the root of the tree, or null if it is not cached.
+     */
+    public synchronized BSPNode get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.root;
+    }
+
+    /**
+     * Caches a tree, evicting the least recently used trees if needed.
+     *
+     * @param key the key of the tree.
+     * @param root the root of the tree.
+     */
+    public synchronized void put(Key key, BSPNode root) {
+        remove(key);
+
+        long bytes = estimateBytes(root);
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && usedBytes + bytes > maxBytes;) {
+            usedBytes -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+
+        entries.put(key, new Entry(root, bytes));
+        usedBytes += bytes;
+    }
+
+    /**
+     * Removes a tree from the cache.
+     *
+     * @param key the key of the tree.
+     * @return true if the tree was cached.
+     */
+    public synchronized boolean remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        usedBytes -= entry.bytes;
+        return true;
+    }
+
+    /**
+     * Removes all the trees, and resets the statistics.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    /**
+     * Returns the ratio of the lookups that found their tree.
+     *
+     * @return the hit ratio, in [0, 1] (0 if there was no lookup).
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BSPTreeCache[" + entries.size() + " trees, " + usedBytes / 1024 + " KiB / " + maxBytes / 1024
+            + " KiB, hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    /**
+     * Estimates the memory used by a tree. Lazy nodes that are not expanded are counted
+     * as single nodes, without expanding them.
+     */
+    private static long estimateBytes(BSPNode root) {
+        long bytes = 0;
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            bytes += NODE_BYTES;
+            if (node.isExpanded()) {
+                bytes += FRAGMENT_BYTES * node.getCoplanarCount();
+                if (!node.isLeaf()) {
+                    stack.push(node.getRight());
+                    stack.push(node.getLeft());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Key of a cached tree: the content hash of the scene and the configuration of the builder.
+     */
+    public static final class Key {
+        private final long sceneHash;
+        private final String configuration;
+
+        Key(long sceneHash, String configuration) {
+            this.sceneHash = sceneHash;
+            this.configuration = configuration;
+        }
+
+        public long getSceneHash() { return sceneHash; }
+        public String getConfiguration() { return configuration; }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sceneHash) * 31 + configuration.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return sceneHash == other.sceneHash && configuration.equals(other.configuration);
+        }
+
+        @Override
+        public String toString() {
+            return configuration + " @ " + Long.toHexString(sceneHash);
+        }
+    }
+
+    /**
+     * A cached tree with its estimated size.
+     */
+    private static final class Entry {
+        private final BSPNode root;
+        private final long bytes;
+
+        Entry(BSPNode root, long bytes) {
+            this.root = root;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.LineKernel;
+import be.umons.sdd.models.Line2D;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Branch-and-bound selection of the splitting line of a node, giving the same line as exhaustive scoring.
+ *
+ * <p> Every candidate gets a key ordering it exactly as the exhaustive selection does: its score, then
+ * its collinear count, then its position among the candidates, packed in a long so that a smaller key
+ * is a better candidate. Candidates are scored against the objects chunk by chunk with a line kernel;
+ * after each chunk, the best key the candidate could still reach is computed from the counts so far and
+ * the number of remaining objects. As soon as it is above the best key found (the incumbent), the
+ * candidate is abandoned. The incumbent is shared, so candidates can also be scored in parallel.
+ *
+ * <p> To find a good incumbent early, candidates are first ordered by their score on a small sample
+ * of the objects. The order only affects the amount of work, not the selected line.
+ *
+ * <p> Keys hold each field on 20 bits, so nodes with a million objects or candidates or more are not
+ * handled ({@link #isApplicable()} returns false) and must be scored exhaustively.
+ */
+public final class BoundedScoring {
+
+    private static final double EPSILON = 1e-6;
+    private static final int FIELD_BITS = 20;
+    private static final long FIELD_MASK = (1L << FIELD_BITS) - 1;
+    private static final int CHUNK_SIZE = 256;
+    private static final int PRESCORE_SAMPLES = 64;
+
+    /**
+     * Runs the scoring of candidates 0..count-1, see {@link BSPTreeBuilder#forEachCandidate(int, int, IntConsumer)}.
+     */
+    interface CandidateRunner {
+        void forEach(int count, int objectCount, IntConsumer scorer);
+    }
+
+    private final SupportLines lines;
+    private final int[] accepted;
+    private final SegmentBatch batch;
+    private final LineKernel kernel;
+
+    /**
+     * Creates the bounded scoring of a node.
+     *
+     * @param lines the support lines of the candidates.
+     * @param accepted the ids of the accepted lines, in candidate order.
+     * @param batch the scored objects.
+     * @param kernel the kernel evaluating the lines.
+     */
+    BoundedScoring(SupportLines lines, int[] accepted, SegmentBatch batch, LineKernel kernel) {
+        this.lines = lines;
+        this.accepted = accepted;
+        this.batch = batch;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Returns true if there are candidates and the keys can hold the size of the node.
+     *
+     * @return true if the bounded selection can be used.
+     */
+    public boolean isApplicable() {
+        return accepted.length > 0 && accepted.length <= FIELD_MASK && batch.size <= FIELD_MASK;
+    }
+
+    /**
+     * Selects the candidate of minimal balance, as {@link BSPTreeBuilder#selectBestCandidate(java.util.List)}:
+     * free splits first, then the minimal balance, the largest collinear count and the first candidate.
+     *
+     * @param runner the runner of the candidate scoring.
+     * @return the selected line.
+     */
+    Line2D selectBalanced(CandidateRunner runner) {
+        // Free splits have the lowest possible balance, no need to score anything.
+        int bestFree = -1;
+        for (int i = 0; i < accepted.length; i++) {
+            if (lines.isFreeSplit(accepted[i]) && (bestFree < 0 || count(i) > count(bestFree))) {
+                bestFree = i;
+            }
+        }
+        if (bestFree >= 0) {
+            return line(bestFree);
+        }
+
+        int n = batch.size;
+        int[] order = order(this::balancePrescore);
+        AtomicLong incumbent = new AtomicLong(Long.MAX_VALUE);
+        BuildStatistics statistics = BuildStatistics.current();
+        countPrescores(statistics, order.length, 1);
+
+        runner.forEach(order.length, n, k -> {
+            int i = order[k];
+            Line2D line = line(i);
+            int[] counts = new int[3];
+            int positive = 0;
+            int negative = 0;
+
+            for (int from = 0; from < n; from += CHUNK_SIZE) {
+                int to = Math.min(n, from + CHUNK_SIZE);
+                kernel.countSides(line.getA(), line.getB(), line.getC(), batch.centerX, batch.centerY, from, to, EPSILON, counts);
+                positive += counts[0];
+                negative += counts[1];
+
+                // The remaining objects can at best reduce the imbalance by one each.
+                int lowerBound = Math.max(0, Math.abs(positive - negative) - (n - to));
+                if (key(0, lowerBound, i) > incumbent.get()) {
+                    countEvaluations(statistics, to);
+                    return;
+                }
+            }
+            countEvaluations(statistics, n);
+            incumbent.accumulateAndGet(key(0, Math.abs(positive - negative), i), Math::min);
+        });
+
+        return line((int) (incumbent.get() & FIELD_MASK));
+    }
+
+    /**
+     * Selects the candidate as the Teller heuristic does: candidates with sigma = f / |S| >= tau
+     * are preferred with the maximal f, otherwise the minimal f is chosen; ties go to the largest
+     * collinear count, then to the first candidate.
+     *
+     * @param tau the threshold of the Teller heuristic.
+     * @param runner the runner of the candidate scoring.
+     * @return the selected line.
+     */
+    Line2D selectTeller(double tau, CandidateRunner runner) {
+        int n = batch.size;
+        int threshold = tellerThreshold(tau, n);
+        int[] order = order(i -> tellerPrescore(i, threshold));
+        AtomicLong incumbent = new AtomicLong(Long.MAX_VALUE);
+        BuildStatistics statistics = BuildStatistics.current();
+        countPrescores(statistics, order.length, 2);
+
+        runner.forEach(order.length, n, k -> {
+            int i = order[k];
+            Line2D line = line(i);
+            int cuts = 0;
+
+            for (int from = 0; from < n; from += CHUNK_SIZE) {
+                int to = Math.min(n, from + CHUNK_SIZE);
+                cuts += kernel.countCuts(line.getA(), line.getB(), line.getC(), batch.x1, batch.y1, batch.x2, batch.y2, from, to, EPSILON);
+
+                // f ends between cuts and cuts + remaining: the best reachable key is the largest f
+                // if it can reach the threshold, the current f otherwise.
+                int maxCuts = cuts + (n - to);
+                long bestReachable = maxCuts >= threshold ? tellerKey(maxCuts, n, threshold, i) : tellerKey(cuts, n, threshold, i);
+                if (bestReachable > incumbent.get()) {
+                    countEvaluations(statistics, 2L * to);
+                    return;
+                }
+            }
+            countEvaluations(statistics, 2L * n);
+            incumbent.accumulateAndGet(tellerKey(cuts, n, threshold, i), Math::min);
+        });
+
+        return line((int) (incumbent.get() & FIELD_MASK));
+    }
+
+    /**
+     * Returns the smallest f such that (double) f / total >= tau, or total + 1 if there is none.
+     * Since f / total only grows with f, sigma >= tau exactly when f reaches this threshold.
+     */
+    static int tellerThreshold(double tau, int total) {
+        int low = 0;
+        int high = total + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if ((double) middle / total >= tau) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private long tellerKey(int cuts, int total, int threshold, int i) {
+        // Group A (sigma >= tau) before group B; larger f first in A, smaller f first in B.
+        return cuts >= threshold ? key(0, total - cuts, i) : key(1, cuts, i);
+    }
+
+    private long key(int group, int score, int i) {
+        long count = FIELD_MASK - Math.min(count(i), (int) FIELD_MASK);
+        return ((long) group << (3 * FIELD_BITS)) | ((long) score << (2 * FIELD_BITS)) | (count << FIELD_BITS) | i;
+    }
+
+    /**
+     * Orders the candidates by increasing prescore, in candidate order for equal prescores.
+     * Nodes too small for sampling to pay off keep the candidate order.
+     */
+    private int[] order(IntToLongFunction prescore) {
+        int[] order = new int[accepted.length];
+        if (batch.size < 4 * PRESCORE_SAMPLES) {
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+
+        long[] keys = new long[accepted.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (prescore.applyAsLong(i) << FIELD_BITS) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (int) (keys[i] & FIELD_MASK);
+        }
+        return order;
+    }
+
+    private long balancePrescore(int i) {
+        Line2D line = line(i);
+        int stride = batch.size / PRESCORE_SAMPLES;
+        int balance = 0;
+        for (int s = 0; s < PRESCORE_SAMPLES; s++) {
+            int o = s * stride;
+            double eval = line.evaluate(batch.centerX[o], batch.centerY[o]);
+            balance += eval > EPSILON ? 1 : eval < -EPSILON ? -1 : 0;
+        }
+        return Math.abs(balance);
+    }
+
+    private long tellerPrescore(int i, int threshold) {
+        Line2D line = line(i);
+        int stride = batch.size / PRESCORE_SAMPLES;
+        int cuts = 0;
+        for (int s = 0; s < PRESCORE_SAMPLES; s++) {
+            int o = s * stride;
+            if (line.evaluate(batch.x1[o], batch.y1[o]) * line.evaluate(batch.x2[o], batch.y2[o]) < -EPSILON) {
+                cuts++;
+            }
+        }
+
+        // Estimated f over the whole node, ranked like the Teller keys.
+        int estimate = (int) Math.min(batch.size, (long) cuts * batch.size / PRESCORE_SAMPLES);
+        return estimate >= threshold ? batch.size - estimate : batch.size + 1 + estimate;
+    }
+
+    /**
+     * Counts the evaluations of the prescores, done when the candidates are ordered.
+     */
+    private void countPrescores(BuildStatistics statistics, int candidates, int evaluationsPerSample) {
+        if (statistics != null && batch.size >= 4 * PRESCORE_SAMPLES) {
+            statistics.addLineEvaluations((long) candidates * PRESCORE_SAMPLES * evaluationsPerSample);
+        }
+    }
+
+    private static void countEvaluations(BuildStatistics statistics, long count) {
+        if (statistics != null) {
+            statistics.addLineEvaluations(count);
+        }
+    }
+
+    private Line2D line(int i) {
+        return lines.getLine(accepted[i]);
+    }
+
+    private int count(int i) {
+        return lines.getCount(accepted[i]);
+    }
+}
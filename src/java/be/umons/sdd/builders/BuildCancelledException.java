@@ -0,0 +1,47 @@
+package be.umons.sdd.builders;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown by a build stopped through its {@link BuildContext}, with the statistics of the
+ * work done before it stopped. The partial tree is discarded, except for the anytime refinement
+ * (see {@link BSPTreeBuilder#refineTree(be.umons.sdd.models.BSPNode, long, BuildContext)}),
+ * which leaves a valid tree.
+ */
+public class BuildCancelledException extends CancellationException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean deadlineExceeded;
+    private final long splitCount;
+    private final long elapsedNanos;
+
+    BuildCancelledException(boolean deadlineExceeded, long splitCount, long elapsedNanos) {
+        super((deadlineExceeded ? "Build deadline exceeded" : "Build cancelled") + " after " + splitCount
+            + " node splits and " + elapsedNanos / 1_000_000 + " ms.");
+        this.deadlineExceeded = deadlineExceeded;
+        this.splitCount = splitCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns true if the build stopped because of the deadline of its context, false if it was cancelled.
+     *
+     * @return true if the deadline was exceeded
+     */
+    public boolean isDeadlineExceeded() { return deadlineExceeded; }
+
+    /**
+     * Returns the number of nodes split before the build stopped.
+     *
+     * @return the number of splits
+     */
+    public long getSplitCount() { return splitCount; }
+
+    /**
+     * Returns the time elapsed between the creation of the context and the stop of the build.
+     *
+     * @return the elapsed time, in nanoseconds
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+}
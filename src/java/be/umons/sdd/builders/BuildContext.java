@@ -0,0 +1,199 @@
+package be.umons.sdd.builders;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The context of a tree build: its cooperative cancellation, with an optional deadline, and what
+ * the build reports to (its progress and statistics).
+ *
+ * <p> Builders check the context before splitting each node (see {@link #checkpoint()}): once the
+ * context is cancelled or its deadline is passed, the build stops at the next node by throwing a
+ * {@link BuildCancelledException}, which holds the number of nodes split so far. The node being
+ * split when the context is cancelled is finished first, so a build stops within one split.
+ *
+ * <p> A context is meant for one build (possibly running on several threads): it counts every
+ * node split under it, and its time is counted from its creation. A context can also carry a
+ * {@link BuildProgressTracker} and {@link BuildStatistics}, to which the builders record the nodes
+ * they create.
+ */
+public final class BuildContext {
+
+    /**
+     * Context of the builds that cannot be cancelled. Cancelling it has no effect.
+     */
+    public static final BuildContext NONE = new BuildContext(BSPTreeBuilder.NO_DEADLINE, false, null, null);
+
+    private final long deadline;
+    private final boolean cancellable;
+    private final BuildProgressTracker progress;
+    private final BuildStatistics statistics;
+    private final long createdAt;
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder sampledSplits = new LongAdder();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a context without deadline, stopped only by {@link #cancel()}.
+     */
+    public BuildContext() {
+        this(BSPTreeBuilder.NO_DEADLINE);
+    }
+
+    /**
+     * Creates a context with a deadline.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link BSPTreeBuilder#NO_DEADLINE}.
+     */
+    public BuildContext(long deadline) {
+        this(deadline, true, null, null);
+    }
+
+    /**
+     * Creates a context with a deadline, tracking the progress of the build.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @param progress the tracker of the progress, or null.
+     */
+    public BuildContext(long deadline, BuildProgressTracker progress) {
+        this(deadline, true, progress, null);
+    }
+
+    /**
+     * Creates a context with a deadline, tracking the progress of the build and instrumenting it.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @param progress the tracker of the progress, or null.
+     * @param statistics the statistics of the build, or null.
+     */
+    public BuildContext(long deadline, BuildProgressTracker progress, BuildStatistics statistics) {
+        this(deadline, true, progress, statistics);
+    }
+
+    private BuildContext(long deadline, boolean cancellable, BuildProgressTracker progress, BuildStatistics statistics) {
+        this.deadline = deadline;
+        this.cancellable = cancellable;
+        this.progress = progress;
+        this.statistics = statistics;
+        this.createdAt = System.nanoTime();
+    }
+
+    /**
+     * Creates a context whose deadline is a given time from now.
+     *
+     * @param timeoutNanos the time the build may take, in nanoseconds.
+     * @return the new context
+     */
+    public static BuildContext withTimeout(long timeoutNanos) {
+        if (timeoutNanos < 0) {
+            throw new IllegalArgumentException("The timeout cannot be negative.");
+        }
+        return new BuildContext(System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * Requests the builds using this context to stop. Can be called from any thread.
+     */
+    public void cancel() {
+        if (cancellable) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Returns true if the context was cancelled or its deadline is passed.
+     *
+     * @return true if the builds using this context must stop
+     */
+    public boolean isCancelled() {
+        return cancelled || isDeadlineExceeded();
+    }
+
+    private boolean isDeadlineExceeded() {
+        return deadline != BSPTreeBuilder.NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Called by the builders before splitting a node: counts the split, or throws if the build must stop.
+     *
+     * @throws BuildCancelledException if the context was cancelled or its deadline is passed.
+     */
+    public void checkpoint() {
+        if (this == NONE) {
+            return;
+        }
+        if (cancelled) {
+            throw new BuildCancelledException(false, splits.sum(), System.nanoTime() - createdAt);
+        }
+        if (isDeadlineExceeded()) {
+            throw new BuildCancelledException(true, splits.sum(), System.nanoTime() - createdAt);
+        }
+        splits.increment();
+    }
+
+    /**
+     * Called by the builders after splitting a node, to record it to the progress tracker if any.
+     *
+     * @param depth the depth of the node (0 for the root of the build).
+     * @param size the number of objects of its region.
+     * @param coplanar the number of objects stored in the node.
+     * @param negative the number of objects of its negative side.
+     * @param positive the number of objects of its positive side.
+     */
+    void recordSplit(int depth, int size, int coplanar, int negative, int positive) {
+        if (progress != null) {
+            progress.recordSplit(depth, size, coplanar, negative, positive);
+        }
+    }
+
+    /**
+     * Called by the builders after creating a leaf of at most one object, to record it to the
+     * progress tracker and the statistics if any.
+     *
+     * @param depth the depth of the leaf (0 for the root of the build).
+     * @param size the number of objects of the leaf.
+     */
+    void recordLeaf(int depth, int size) {
+        if (progress != null) {
+            progress.recordLeaf(depth, size);
+        }
+        if (statistics != null) {
+            statistics.recordLeaf(size);
+        }
+    }
+
+    /**
+     * Called by the builders when an anytime build out of time splits a region on a line selected
+     * from a sample of its objects, see {@link BSPTreeBuilder#buildTree(java.util.List, be.umons.sdd.models.Line2D, long)}.
+     */
+    void recordSampledSplit() {
+        if (this != NONE) {
+            sampledSplits.increment();
+        }
+    }
+
+    /**
+     * Called by the builders before building a region they start from, to record it to the statistics if any.
+     *
+     * @param size the number of objects of the region.
+     */
+    void recordInput(int size) {
+        if (statistics != null) {
+            statistics.recordInput(size);
+        }
+    }
+
+    public long getDeadline() { return deadline; }
+    public BuildProgressTracker getProgress() { return progress; }
+    public BuildStatistics getStatistics() { return statistics; }
+    public long getSplitCount() { return splits.sum(); }
+
+    /**
+     * Returns the number of regions split on a line selected from a sample under this context: if
+     * there are any, the tree differs from the tree built without deadline.
+     *
+     * @return the number of sampled splits
+     */
+    public long getSampledSplitCount() {
+        return sampledSplits.sum();
+    }
+}
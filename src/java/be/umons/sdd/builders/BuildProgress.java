@@ -0,0 +1,83 @@
+package be.umons.sdd.builders;
+
+/**
+ * Snapshot of the progress of a tree build, see {@link BuildProgressTracker}.
+ *
+ * <p> A segment is finalised once it is stored in its final node: as a coplanar object of a
+ * split node, or in a leaf of at most one object. The segments to finalise are the input
+ * segments and the fragments created by the splits so far, so the total grows during the build.
+ */
+public final class BuildProgress {
+
+    /**
+     * Value of the estimated remaining time when there is no estimate yet.
+     */
+    public static final long UNKNOWN = -1;
+
+    private final long nodesBuilt;
+    private final long segmentsFinalised;
+    private final long segmentsTotal;
+    private final long fragmentsCreated;
+    private final int currentDepth;
+    private final int maxDepth;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    BuildProgress(long nodesBuilt, long segmentsFinalised, long segmentsTotal, long fragmentsCreated,
+            int currentDepth, int maxDepth, long elapsedNanos, boolean finished) {
+        this.nodesBuilt = nodesBuilt;
+        this.segmentsFinalised = segmentsFinalised;
+        this.segmentsTotal = segmentsTotal;
+        this.fragmentsCreated = fragmentsCreated;
+        this.currentDepth = currentDepth;
+        this.maxDepth = maxDepth;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    public long getNodesBuilt() { return nodesBuilt; }
+    public long getSegmentsFinalised() { return segmentsFinalised; }
+    public long getSegmentsTotal() { return segmentsTotal; }
+    public long getFragmentsCreated() { return fragmentsCreated; }
+    public int getCurrentDepth() { return currentDepth; }
+    public int getMaxDepth() { return maxDepth; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public boolean isFinished() { return finished; }
+
+    /**
+     * Returns the ratio of the segments finalised to the segments known so far.
+     *
+     * @return the ratio, in [0, 1] (1 if the build is finished).
+     */
+    public double getFraction() {
+        if (finished) {
+            return 1;
+        }
+        return segmentsTotal == 0 ? 0 : Math.min(1, (double) segmentsFinalised / segmentsTotal);
+    }
+
+    /**
+     * Estimates the remaining time of the build, assuming the remaining segments are finalised
+     * at the average rate so far. Splits are quadratic in the size of their region, so the
+     * estimate is pessimistic at the start of a build, when the regions are the largest.
+     *
+     * @return the estimated remaining time, in nanoseconds, or {@link #UNKNOWN} if no segment is finalised yet.
+     */
+    public long getEstimatedRemainingNanos() {
+        if (finished) {
+            return 0;
+        }
+        if (segmentsFinalised == 0) {
+            return UNKNOWN;
+        }
+        long remaining = Math.max(0, segmentsTotal - segmentsFinalised);
+        return (long) ((double) elapsedNanos * remaining / segmentsFinalised);
+    }
+
+    @Override
+    public String toString() {
+        return "BuildProgress[" + segmentsFinalised + "/" + segmentsTotal + " segments, " + nodesBuilt + " nodes, "
+            + fragmentsCreated + " fragments, depth=" + currentDepth + "/" + maxDepth + ", "
+            + elapsedNanos / 1_000_000 + " ms" + (finished ? ", finished" : "") + "]";
+    }
+}
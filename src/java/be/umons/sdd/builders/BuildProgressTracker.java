@@ -0,0 +1,143 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.BuildProgressObserver;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the progress of a tree build and reports it to an observer, at most once per interval.
+ *
+ * <p> A tracker is attached to the {@link BuildContext} of a build, and the builders record
+ * each node they create through the context. Recording only updates striped counters (the parallel
+ * build does not contend on them); the clock is only read when a node is split, which already
+ * costs a scoring of the region, and a report is only built when the interval has elapsed. The
+ * thread that claims the report sends it, so the observer is called from the threads of the build.
+ *
+ * <p> A lazy build records its nodes as they are expanded, from the threads traversing the tree,
+ * possibly long after the build returned. Once {@link #complete()} has sent the final report, the
+ * tracker keeps counting these nodes in its {@link #snapshot()} but no longer reports to the
+ * observer. The sweep of the Teller builder, which builds several trees at once, is not tracked.
+ */
+public final class BuildProgressTracker {
+
+    /**
+     * Default minimum time between two reports, in nanoseconds.
+     */
+    public static final long DEFAULT_INTERVAL_NANOS = 100_000_000L;
+
+    private final BuildProgressObserver observer;
+    private final long inputSegments;
+    private final long intervalNanos;
+    private final long startedAt;
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder finalised = new LongAdder();
+    private final LongAdder fragments = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final AtomicLong nextReport;
+    private volatile int currentDepth;
+    private volatile boolean completed;
+
+    /**
+     * Creates a tracker reporting at most every {@link #DEFAULT_INTERVAL_NANOS}.
+     *
+     * @param inputSegments the number of segments the build starts from.
+     * @param observer the observer of the reports.
+     */
+    public BuildProgressTracker(long inputSegments, BuildProgressObserver observer) {
+        this(inputSegments, observer, DEFAULT_INTERVAL_NANOS);
+    }
+
+    /**
+     * Creates a tracker.
+     *
+     * @param inputSegments the number of segments the build starts from.
+     * @param observer the observer of the reports.
+     * @param intervalNanos the minimum time between two reports, in nanoseconds.
+     */
+    public BuildProgressTracker(long inputSegments, BuildProgressObserver observer, long intervalNanos) {
+        if (observer == null) {
+            throw new IllegalArgumentException("The progress observer cannot be null.");
+        }
+        if (inputSegments < 0 || intervalNanos < 0) {
+            throw new IllegalArgumentException("The segment count and the report interval cannot be negative.");
+        }
+        this.observer = observer;
+        this.inputSegments = inputSegments;
+        this.intervalNanos = intervalNanos;
+        this.startedAt = System.nanoTime();
+        this.nextReport = new AtomicLong(startedAt + intervalNanos);
+    }
+
+    /**
+     * Records a split node, and reports the progress if the interval has elapsed.
+     *
+     * @param depth the depth of the node (0 for the root).
+     * @param size the number of objects of its region.
+     * @param coplanar the number of objects stored in the node.
+     * @param negative the number of objects of its negative side.
+     * @param positive the number of objects of its positive side.
+     */
+    void recordSplit(int depth, int size, int coplanar, int negative, int positive) {
+        nodes.increment();
+        finalised.add(coplanar);
+        fragments.add(coplanar + negative + positive - size);
+        maxDepth.accumulate(depth);
+        currentDepth = depth;
+
+        long now = System.nanoTime();
+        long next = nextReport.get();
+        if (!completed && now - next >= 0 && nextReport.compareAndSet(next, now + intervalNanos)) {
+            report();
+        }
+    }
+
+    /**
+     * Sends a report unless the final one was sent. Checked under the lock of {@link #complete()},
+     * so no report follows the final one; the lock is only taken once per interval.
+     */
+    private synchronized void report() {
+        if (!completed) {
+            observer.onBuildProgress(snapshot(false));
+        }
+    }
+
+    /**
+     * Records a leaf of at most one object.
+     *
+     * @param depth the depth of the leaf (0 for the root).
+     * @param size the number of objects of the leaf.
+     */
+    void recordLeaf(int depth, int size) {
+        nodes.increment();
+        finalised.add(size);
+        maxDepth.accumulate(depth);
+    }
+
+    /**
+     * Sends the final report of the build, then stops reporting. Called by the owner of the build
+     * once it is finished; later calls do nothing.
+     */
+    public synchronized void complete() {
+        if (!completed) {
+            completed = true;
+            observer.onBuildProgress(snapshot(true));
+        }
+    }
+
+    /**
+     * Returns the progress of the build so far, without reporting it.
+     *
+     * @return the progress
+     */
+    public BuildProgress snapshot() {
+        return snapshot(false);
+    }
+
+    private BuildProgress snapshot(boolean finished) {
+        long created = fragments.sum();
+        return new BuildProgress(nodes.sum(), finalised.sum(), inputSegments + created, created,
+            currentDepth, (int) maxDepth.get(), System.nanoTime() - startedAt, finished);
+    }
+}
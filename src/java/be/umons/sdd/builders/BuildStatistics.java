@@ -0,0 +1,209 @@
+package be.umons.sdd.builders;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of one tree build: what the builder did, counted as it builds.
+ *
+ * <p> Statistics are switched on per build, by giving the build a {@link BuildContext} that
+ * carries them (see {@link BuildContext#BuildContext(long, BuildProgressTracker, BuildStatistics)}).
+ * Builds without statistics do not count anything. The counters are striped, so the parallel
+ * builds can record into the same statistics.
+ *
+ * <p> The statistics hold:
+ * - the number of candidates scored (branch-and-bound scoring counts the pruned ones too);
+ * - the number of line evaluations to score the candidates and to partition the regions, that is
+ *   the calls to {@link be.umons.sdd.models.Line2D#evaluate(double, double)} and the evaluations
+ *   batched in the line kernels (the checks of the candidates against the parent's line are not counted);
+ * - the number of segments split by the partitions, and the fragments they created;
+ * - the number of nodes split, of free splits taken (a coplanar object of the node lies on the parent's
+ *   line, so the split cuts nothing) and of coplanar hits (objects stored in the split nodes);
+ * - the time spent splitting the nodes of each level of the tree (choosing the line and partitioning);
+ * - the largest region split, and the peak number of objects in the regions waiting to be built.
+ *
+ * <p> The scoring code of the builders finds the statistics of the node they score through the
+ * thread splitting it (see {@link #current()}), so subclasses scoring candidates outside of
+ * {@link BSPTreeBuilder#forEachCandidate(int, int, java.util.function.IntConsumer)} are not counted.
+ */
+public final class BuildStatistics {
+
+    // Statistics of the node being split by each thread, only set while it splits an instrumented node.
+    private static final ThreadLocal<BuildStatistics> CURRENT = new ThreadLocal<>();
+
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder lineEvaluations = new LongAdder();
+    private final LongAdder segmentSplits = new LongAdder();
+    private final LongAdder fragments = new LongAdder();
+    private final LongAdder nodeSplits = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder freeSplits = new LongAdder();
+    private final LongAdder coplanarHits = new LongAdder();
+    private final LongAccumulator peakRegionSize = new LongAccumulator(Math::max, 0);
+    private final AtomicLong pendingObjects = new AtomicLong();
+    private final LongAccumulator peakPendingObjects = new LongAccumulator(Math::max, 0);
+    private long[] levelNanos = new long[16];
+    private long[] levelSplits = new long[16];
+
+    /**
+     * Creates empty statistics, to give to a build through its context.
+     */
+    public BuildStatistics() {
+    }
+
+    /**
+     * Returns the statistics of the node being split by the current thread.
+     *
+     * @return the statistics, or null if the node is not instrumented.
+     */
+    static BuildStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes some statistics the ones of the current thread, while it splits a node.
+     * Nothing is done for a node that is not instrumented, so uninstrumented builds never set the thread's statistics.
+     *
+     * @param statistics the statistics of the node, or null.
+     * @return the statistics of the enclosing split, to give back to {@link #exit(BuildStatistics, BuildStatistics)}.
+     */
+    static BuildStatistics enter(BuildStatistics statistics) {
+        if (statistics == null) {
+            return null;
+        }
+        BuildStatistics outer = CURRENT.get();
+        CURRENT.set(statistics);
+        return outer;
+    }
+
+    /**
+     * Restores the statistics of the enclosing split once a node is split.
+     *
+     * @param statistics the statistics given to {@link #enter(BuildStatistics)}.
+     * @param outer the value returned by {@link #enter(BuildStatistics)}.
+     */
+    static void exit(BuildStatistics statistics, BuildStatistics outer) {
+        if (statistics != null) {
+            CURRENT.set(outer);
+        }
+    }
+
+    void addCandidates(long count) {
+        candidates.add(count);
+    }
+
+    void addLineEvaluations(long count) {
+        lineEvaluations.add(count);
+    }
+
+    void addSegmentSplits(long calls, long created) {
+        segmentSplits.add(calls);
+        fragments.add(created);
+    }
+
+    /**
+     * Records the objects of the regions a build starts from.
+     */
+    void recordInput(int size) {
+        peakPendingObjects.accumulate(pendingObjects.addAndGet(size));
+    }
+
+    /**
+     * Records a split node: the region is replaced by its two sides.
+     */
+    void recordSplit(int depth, long nanos, int size, int coplanar, int negative, int positive, boolean freeSplit) {
+        nodeSplits.increment();
+        coplanarHits.add(coplanar);
+        if (freeSplit) {
+            freeSplits.increment();
+        }
+        peakRegionSize.accumulate(size);
+        peakPendingObjects.accumulate(pendingObjects.addAndGet(negative + positive - size));
+        addLevelTime(depth, nanos);
+    }
+
+    /**
+     * Records a leaf of at most one object: its region is built.
+     */
+    void recordLeaf(int size) {
+        leaves.increment();
+        pendingObjects.addAndGet(-size);
+    }
+
+    private synchronized void addLevelTime(int depth, long nanos) {
+        if (depth >= levelNanos.length) {
+            int length = Math.max(depth + 1, levelNanos.length * 2);
+            levelNanos = Arrays.copyOf(levelNanos, length);
+            levelSplits = Arrays.copyOf(levelSplits, length);
+        }
+        levelNanos[depth] += nanos;
+        levelSplits[depth]++;
+    }
+
+    public long getCandidates() { return candidates.sum(); }
+    public long getLineEvaluations() { return lineEvaluations.sum(); }
+    public long getSegmentSplits() { return segmentSplits.sum(); }
+    public long getFragmentsCreated() { return fragments.sum(); }
+    public long getNodeSplits() { return nodeSplits.sum(); }
+    public long getLeaves() { return leaves.sum(); }
+    public long getFreeSplits() { return freeSplits.sum(); }
+    public long getCoplanarHits() { return coplanarHits.sum(); }
+    public long getPeakRegionSize() { return peakRegionSize.get(); }
+    public long getPeakPendingObjects() { return peakPendingObjects.get(); }
+
+    /**
+     * Returns the number of levels of the tree on which nodes were split.
+     *
+     * @return the number of levels
+     */
+    public synchronized int getLevelCount() {
+        int count = levelSplits.length;
+        while (count > 0 && levelSplits[count - 1] == 0) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the time spent splitting the nodes of each level, the root being level 0.
+     *
+     * @return the times, in nanoseconds, indexed by level
+     */
+    public synchronized long[] getLevelNanos() {
+        return Arrays.copyOf(levelNanos, getLevelCount());
+    }
+
+    /**
+     * Returns the number of nodes split on each level, the root being level 0.
+     *
+     * @return the number of splits, indexed by level
+     */
+    public synchronized long[] getLevelSplits() {
+        return Arrays.copyOf(levelSplits, getLevelCount());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BuildStatistics[")
+            .append("candidates=").append(getCandidates())
+            .append(", lineEvaluations=").append(getLineEvaluations())
+            .append(", segmentSplits=").append(getSegmentSplits())
+            .append(", fragmentsCreated=").append(getFragmentsCreated())
+            .append(", nodeSplits=").append(getNodeSplits())
+            .append(", leaves=").append(getLeaves())
+            .append(", freeSplits=").append(getFreeSplits())
+            .append(", coplanarHits=").append(getCoplanarHits())
+            .append(", peakRegionSize=").append(getPeakRegionSize())
+            .append(", peakPendingObjects=").append(getPeakPendingObjects())
+            .append(", levelMillis=[");
+
+        long[] nanos = getLevelNanos();
+        for (int level = 0; level < nanos.length; level++) {
+            sb.append(level > 0 ? ", " : "").append(String.format(Locale.ROOT, "%.2f", nanos[level] / 1e6));
+        }
+        return sb.append("]]").toString();
+    }
+}
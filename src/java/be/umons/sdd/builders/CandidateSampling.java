@@ -0,0 +1,177 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.SegmentStore;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Configuration of the approximate candidate scoring used by the builders on large nodes.
+ *
+ * <p> Exact scoring evaluates every candidate line against every object of the node, which is
+ * quadratic in the size of the node. Above a size threshold, this configuration makes the builders
+ * score only a bounded random sample of candidate lines against a bounded random sample of objects.
+ * Nodes at or below the threshold keep the exact scoring.
+ *
+ * <p> The random generator of a node is derived from the seed and from the content of the node,
+ * so a given seed always produces the same tree, whatever the order in which nodes are built.
+ */
+public class CandidateSampling {
+
+    private final int threshold;
+    private final int candidateSamples;
+    private final int centerSamples;
+    private final long seed;
+
+    /**
+     * Creates a sampling configuration.
+     *
+     * @param threshold the node size above which sampling is used
+     * @param candidateSamples the maximal number of candidate lines scored per node
+     * @param centerSamples the maximal number of objects each candidate is scored against
+     * @param seed the seed of the random sampling
+     */
+    public CandidateSampling(int threshold, int candidateSamples, int centerSamples, long seed) {
+        if (threshold < 0 || candidateSamples < 1 || centerSamples < 1) {
+            throw new IllegalArgumentException("Invalid sampling configuration: threshold must be >= 0 and sample sizes >= 1.");
+        }
+
+        this.threshold = threshold;
+        this.candidateSamples = candidateSamples;
+        this.centerSamples = centerSamples;
+        this.seed = seed;
+    }
+
+    public int getThreshold() { return threshold; }
+    public int getCandidateSamples() { return candidateSamples; }
+    public int getCenterSamples() { return centerSamples; }
+    public long getSeed() { return seed; }
+
+    /**
+     * Returns true if a node of the given size must be scored on samples.
+     *
+     * @param size the number of objects in the node
+     * @return true if sampling applies
+     */
+    public boolean appliesTo(int size) {
+        return size > threshold;
+    }
+
+    /**
+     * Creates the random generator of a node. It only depends on the seed and the node content.
+     *
+     * @param objects the objects of the node
+     * @return the random generator
+     */
+    SplittableRandom randomFor(List<StraightSegment2D> objects) {
+        long hash = seed;
+        hash = 31 * hash + objects.size();
+        hash = 31 * hash + objects.get(0).getStart().hashCode();
+        hash = 31 * hash + objects.get(objects.size() - 1).getEnd().hashCode();
+        return new SplittableRandom(hash);
+    }
+
+    /**
+     * Creates the random generator of a node built on a segment store, equal to the generator
+     * of the same node built on a list of segments.
+     *
+     * @param store the store holding the objects
+     * @param indices the array of segment indices
+     * @param from the first position of the node in the array (inclusive)
+     * @param to the last position of the node in the array (exclusive)
+     * @return the random generator
+     */
+    SplittableRandom randomFor(SegmentStore store, int[] indices, int from, int to) {
+        int first = indices[from];
+        int last = indices[to - 1];
+
+        long hash = seed;
+        hash = 31 * hash + (to - from);
+        hash = 31 * hash + new Point2D(store.getX1(first), store.getY1(first)).hashCode();
+        hash = 31 * hash + new Point2D(store.getX2(last), store.getY2(last)).hashCode();
+        return new SplittableRandom(hash);
+    }
+
+    /**
+     * Returns a random sample of the objects, of at most {@code count} elements, in their original order.
+     *
+     * @param objects the objects to sample from
+     * @param count the maximal sample size
+     * @param random the random generator
+     * @return the sampled objects
+     */
+    static List<StraightSegment2D> sample(List<StraightSegment2D> objects, int count, SplittableRandom random) {
+        if (count >= objects.size()) {
+            return objects;
+        }
+
+        int[] indices = sampleIndices(objects.size(), count, random);
+        List<StraightSegment2D> sample = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            sample.add(objects.get(index));
+        }
+        return sample;
+    }
+
+    /**
+     * Returns a random sample of the segment indices in {@code indices[from..to)}, of at most
+     * {@code count} elements, in their original order. The sample matches {@link #sample(List, int, SplittableRandom)}.
+     *
+     * @param indices the array of segment indices
+     * @param from the first position in the array (inclusive)
+     * @param to the last position in the array (exclusive)
+     * @param count the maximal sample size
+     * @param random the random generator
+     * @return the sampled segment indices
+     */
+    static int[] sample(int[] indices, int from, int to, int count, SplittableRandom random) {
+        if (count >= to - from) {
+            return Arrays.copyOfRange(indices, from, to);
+        }
+
+        int[] positions = sampleIndices(to - from, count, random);
+        int[] sample = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            sample[i] = indices[from + positions[i]];
+        }
+        return sample;
+    }
+
+    /**
+     * Draws {@code k} distinct indices in [0, n) using Floyd's algorithm, sorted increasingly
+     * so that ties between candidates are still broken by their original order.
+     *
+     * @param n the size of the range
+     * @param k the number of indices (k <= n)
+     * @param random the random generator
+     * @return the sorted indices
+     */
+    static int[] sampleIndices(int n, int k, SplittableRandom random) {
+        Set<Integer> chosen = new HashSet<>(k * 2);
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            if (!chosen.add(t)) {
+                chosen.add(j);
+            }
+        }
+
+        int[] indices = new int[k];
+        int i = 0;
+        for (int index : chosen) {
+            indices[i++] = index;
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    @Override
+    public String toString() {
+        return "CandidateSampling[threshold=" + threshold + ", candidates=" + candidateSamples
+            + ", centers=" + centerSamples + ", seed=" + seed + "]";
+    }
+}
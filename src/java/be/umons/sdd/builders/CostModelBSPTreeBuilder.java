@@ -0,0 +1,184 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.SegmentStore;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A BSP tree builder choosing the splitting lines that minimize the estimated cost of the
+ * painter's algorithm on the tree, given by a {@link PainterCostModel}.
+ *
+ * <p> Each candidate support line is scored with the number of objects lying on it and the
+ * number of objects and fragments it leaves on each side, the split objects counting on both.
+ * Ties go to the candidate with the most collinear objects, then to the first one.
+ * Sampling and line interning apply as for the other builders.
+ */
+public class CostModelBSPTreeBuilder extends BSPTreeBuilder {
+
+    private final PainterCostModel costModel;
+
+    /**
+     * Constructs a CostModelBSPTreeBuilder with the cost model of {@link PaintersViewBuilder}.
+     */
+    public CostModelBSPTreeBuilder() {
+        this(new PainterCostModel());
+    }
+
+    /**
+     * Constructs a CostModelBSPTreeBuilder with a given cost model.
+     *
+     * @param costModel the cost model.
+     */
+    public CostModelBSPTreeBuilder(PainterCostModel costModel) {
+        if (costModel == null) {
+            throw new IllegalArgumentException("The cost model cannot be null.");
+        }
+        this.costModel = costModel;
+    }
+
+    /**
+     * Returns the cost model used to score the candidates.
+     *
+     * @return the cost model
+     */
+    public PainterCostModel getCostModel() {
+        return costModel;
+    }
+
+    @Override
+    public String getLabel() {
+        return "Cost Model";
+    }
+
+    @Override
+    protected String getParameters() {
+        return costModel.toString();
+    }
+
+    /**
+     * Chooses the candidate support line of minimal estimated cost.
+     *
+     * @param objects the list of scene objects.
+     * @param parentLine the parent's splitting line (null for root).
+     * @return the splitting line.
+     */
+    @Override
+    protected Line2D selectSplittingLine(List<StraightSegment2D> objects, Line2D parentLine) {
+        List<StraightSegment2D> candidateObjects = objects;
+        List<StraightSegment2D> scoredObjects = objects;
+        if (sampling != null && sampling.appliesTo(objects.size())) {
+            SplittableRandom random = sampling.randomFor(objects);
+            candidateObjects = CandidateSampling.sample(objects, sampling.getCandidateSamples(), random);
+            scoredObjects = CandidateSampling.sample(objects, sampling.getCenterSamples(), random);
+        }
+
+        SupportLines lines = new SupportLines(lineInterning, candidateObjects.size());
+        for (StraightSegment2D obj : candidateObjects) {
+            lines.add(obj.getStart().x, obj.getStart().y, obj.getEnd().x, obj.getEnd().y);
+        }
+
+        List<Candidate> candidates = evaluateCosts(lines, acceptedLines(lines, parentLine, false), SegmentBatch.of(scoredObjects), objects.size());
+
+        if (candidates.isEmpty()) {
+            return objects.get(0).getSupportLine();
+        }
+        return selectBestCandidate(candidates).supportLine;
+    }
+
+    /**
+     * Chooses the candidate support line of minimal estimated cost, scanning the segment store.
+     *
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line (null for root).
+     * @return the splitting line.
+     */
+    @Override
+    protected Line2D selectSplittingLine(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        int[] candidateIndices = indices;
+        int candidateFrom = from;
+        int candidateTo = to;
+        SegmentBatch batch;
+        if (sampling != null && sampling.appliesTo(to - from)) {
+            SplittableRandom random = sampling.randomFor(store, indices, from, to);
+            candidateIndices = CandidateSampling.sample(indices, from, to, sampling.getCandidateSamples(), random);
+            candidateFrom = 0;
+            candidateTo = candidateIndices.length;
+            int[] scoredIndices = CandidateSampling.sample(indices, from, to, sampling.getCenterSamples(), random);
+            batch = SegmentBatch.of(store, scoredIndices, 0, scoredIndices.length);
+        } else {
+            batch = SegmentBatch.of(store, indices, from, to);
+        }
+
+        SupportLines lines = new SupportLines(lineInterning, candidateTo - candidateFrom);
+        for (int c = candidateFrom; c < candidateTo; c++) {
+            int index = candidateIndices[c];
+            lines.add(store.getX1(index), store.getY1(index), store.getX2(index), store.getY2(index));
+        }
+
+        List<Candidate> candidates = evaluateCosts(lines, acceptedLines(lines, parentLine, false), batch, to - from);
+
+        if (candidates.isEmpty()) {
+            return store.getSupportLine(indices[from]);
+        }
+        return selectBestCandidate(candidates).supportLine;
+    }
+
+    /**
+     * Scores the accepted candidates with the cost model. The objects are classified as by
+     * {@link #partitionObjects(List, Line2D)}; when they are a sample, the counts are scaled
+     * to the size of the region.
+     *
+     * @param lines the support lines of the candidates.
+     * @param accepted the ids of the accepted lines.
+     * @param batch the scored objects.
+     * @param regionSize the number of objects of the region.
+     * @return the candidates, with their cost as balance.
+     */
+    private List<Candidate> evaluateCosts(SupportLines lines, int[] accepted, SegmentBatch batch, int regionSize) {
+        Candidate[] candidates = new Candidate[accepted.length];
+        double scale = batch.size == 0 ? 1.0 : (double) regionSize / batch.size;
+        BuildStatistics statistics = BuildStatistics.current();
+
+        forEachCandidate(candidates.length, batch.size, i -> {
+            Line2D candidateLine = lines.getLine(accepted[i]);
+
+            int coplanar = 0;
+            int positive = 0;
+            int negative = 0;
+            for (int o = 0; o < batch.size; o++) {
+                double eval = candidateLine.evaluate(batch.centerX[o], batch.centerY[o]);
+                if (Math.abs(eval) < EPSILON) {
+                    coplanar++;
+                    continue;
+                }
+
+                double e1 = candidateLine.evaluate(batch.x1[o], batch.y1[o]);
+                double e2 = candidateLine.evaluate(batch.x2[o], batch.y2[o]);
+                if (e1 * e2 < -EPSILON) {
+                    // Split objects leave a fragment on each side.
+                    positive++;
+                    negative++;
+                } else if (eval > 0) {
+                    positive++;
+                } else {
+                    negative++;
+                }
+            }
+
+            if (statistics != null) {
+                // The center of every object, and the endpoints of the objects that are not coplanar.
+                statistics.addLineEvaluations(batch.size + 2L * (batch.size - coplanar));
+            }
+
+            double cost = costModel.splitCost(candidateLine, coplanar * scale, positive * scale, negative * scale);
+            candidates[i] = new Candidate(candidateLine, cost, lines.getCount(accepted[i]));
+        });
+        return Arrays.asList(candidates);
+    }
+}
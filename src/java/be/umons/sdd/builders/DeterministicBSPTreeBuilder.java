@@ -1,9 +1,8 @@
 package be.umons.sdd.builders;
 
-import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.SegmentStore;
 import be.umons.sdd.models.StraightSegment2D;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -11,42 +10,60 @@ import java.util.List;
  */
 public class DeterministicBSPTreeBuilder extends BSPTreeBuilder {
 
+    @Override
+    public String getLabel() {
+        return "Deterministic";
+    }
+
     /**
-     * Builds a deterministic BSP tree from a set of scene objects.
+     * Chooses the candidate support line with the best balance.
      * 
      * @param objects the list of scene objects.
      * @param parentLine the parent's splitting line (null for root).
-     * @return the BSP tree node representing the region.
+     * @return the splitting line.
      */
     @Override
-    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine) {
-
-        // Base case: if 0 or 1 object, create a leaf.
-        if (objects == null || objects.isEmpty() || objects.size() <= 1) {
-            return new BSPNode(new ArrayList<>(objects));
+    protected Line2D selectSplittingLine(List<StraightSegment2D> objects, Line2D parentLine) {
+        if (branchAndBound) {
+            BoundedScoring scoring = prepareBoundedScoring(objects, parentLine, false);
+            if (scoring.isApplicable()) {
+                return scoring.selectBalanced(this::forEachCandidate);
+            }
         }
         
         // Evaluate candidate splitting lines.
         List<Candidate> candidateList = evaluateCandidates(objects, parentLine);
         
-        Line2D bestLine;
         if (candidateList.isEmpty()) {
-            bestLine = objects.get(0).getSupportLine();
-        } else {
-            bestLine = selectBestCandidate(candidateList).supportLine;
+            return objects.get(0).getSupportLine();
         }
-        
-        // Create current node.
-        BSPNode node = new BSPNode(bestLine);
-        
-        // Partition objects.
-        PartitionResult partition = partitionObjects(objects, bestLine);
-        node.getCoplanarObjects().addAll(partition.coplanarList);
-        
-        // Recursively build subtrees.
-        node.setLeft(buildTree(partition.negativeList, bestLine));
-        node.setRight(buildTree(partition.positiveList, bestLine));
-        
-        return node;
+        return selectBestCandidate(candidateList).supportLine;
+    }
+
+    /**
+     * Chooses the candidate support line with the best balance, scanning the segment store.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line (null for root).
+     * @return the splitting line.
+     */
+    @Override
+    protected Line2D selectSplittingLine(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        if (branchAndBound) {
+            BoundedScoring scoring = prepareBoundedScoring(store, indices, from, to, parentLine, false);
+            if (scoring.isApplicable()) {
+                return scoring.selectBalanced(this::forEachCandidate);
+            }
+        }
+
+        List<Candidate> candidateList = evaluateCandidates(store, indices, from, to, parentLine);
+
+        if (candidateList.isEmpty()) {
+            return store.getSupportLine(indices[from]);
+        }
+        return selectBestCandidate(candidateList).supportLine;
     }
 }
@@ -0,0 +1,798 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A BSP tree that can be updated by inserting and deleting segments, instead of being rebuilt.
+ *
+ * <p> An inserted segment is pushed down the existing partitions, split where it crosses them,
+ * like the builders partition the objects. Its fragments end on the partition they lie on, or in
+ * an empty leaf; a leaf already holding an object is replaced by the tree the builder makes of
+ * its two objects. A deleted segment is pushed down the same way to find and remove its fragments,
+ * then the internal nodes left without objects and with an empty side are removed.
+ *
+ * <p> Updates only visit the paths of the fragments, but they can degrade the tree. The quality is
+ * monitored as for scapegoat trees, with a balance factor alpha in [0.5, 1), relative to the shape
+ * the builder produces: some builders (e.g. Teller's) make deep trees on purpose, and rebuilding
+ * them gives the same shape. The shape of the last full build is its height over log_{1/alpha} of
+ * its number of fragments (at least 1), and a subtree of n fragments is allowed that shape times
+ * log_{1/alpha}(n):
+ * - when an insertion goes deeper than the height limit of the tree (at first, the height of the
+ *   last full build, and at least log_{1/alpha} of the number of fragments), the lowest ancestor
+ *   exceeding its allowed height is rebuilt by the builder, from its fragments. A subtree whose
+ *   rebuild did not reduce its height is not rebuilt again until it grows by a factor 1/alpha,
+ *   and the height limit of the tree is raised to the depth reached when no rebuild reduced it;
+ * - when deletions leave less than alpha times the largest number of fragments since the last full
+ *   build, the whole tree is rebuilt from the segments.
+ *
+ * <p> The tree can also be built within a time budget, see {@link BSPTreeBuilder#buildTree(List, Line2D, long)}:
+ * its coarse leaves are then split step by step by {@link #refine(long)}, and segments inserted in a
+ * coarse leaf are simply added to it.
+ *
+ * <p> Updates are synchronized, so the tree can be refined by a background thread while it is edited.
+ * The nodes can be read (painted) by other threads during an update: the lists of objects are never
+ * modified once linked, a node whose objects change is replaced by a copy holding a new list, and links
+ * are replaced by complete subtrees, all published through the volatile links of the nodes.
+ * The fragments of a deleted segment are found by their origin, see {@link StraightSegment2D#getOrigin()}.
+ *
+ * <p> Lazy builders are rejected: the monitor measures the whole tree, and the updates visit its
+ * nodes, so a lazy tree would be expanded entirely, as an eager build, and behind the caller's back.
+ */
+public class DynamicBSPTree {
+
+    /**
+     * Default balance factor of the quality monitor.
+     */
+    public static final double DEFAULT_BALANCE = 0.75;
+
+    private static final double EPSILON = 1e-6;
+
+    private final BSPTreeBuilder builder;
+    private final double balance;
+    private final List<StraightSegment2D> segments;
+
+    private volatile BSPNode root; // read without the lock, see getRoot()
+    private int fragmentCount;
+    private int maxFragmentCount;
+    private int heightLimit;
+    private int coarseLeaves;
+    // Height of the last full build over log_{1/alpha} of its fragments, see the class comment.
+    private double shape;
+    // Subtrees whose last rebuild did not reduce their height, with their height after the rebuild.
+    private final Map<BSPNode, Integer> stuckHeights = new IdentityHashMap<>();
+    private int partialRebuilds;
+    private int fullRebuilds;
+
+    /**
+     * Builds a dynamic tree of the given segments, with the default balance factor.
+     *
+     * @param builder the builder used for the initial build and the rebuilds.
+     * @param segments the initial segments.
+     */
+    public DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments) {
+        this(builder, segments, DEFAULT_BALANCE);
+    }
+
+    /**
+     * Builds a dynamic tree of the given segments.
+     *
+     * @param builder the builder used for the initial build and the rebuilds.
+     * @param segments the initial segments.
+     * @param balance the balance factor of the quality monitor, in [0.5, 1).
+     */
+    public DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments, double balance) {
+        this(builder, segments, balance, BSPTreeBuilder.NO_DEADLINE);
+    }
+
+    /**
+     * Builds a dynamic tree of the given segments within a time budget. The tree can be
+     * incomplete, with coarse leaves left to {@link #refine(long)}.
+     *
+     * @param builder the builder used for the initial build and the rebuilds.
+     * @param segments the initial segments.
+     * @param balance the balance factor of the quality monitor, in [0.5, 1).
+     * @param deadline the deadline of the initial build, as a {@link System#nanoTime()} value,
+     *                 or {@link BSPTreeBuilder#NO_DEADLINE}.
+     */
+    public DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments, double balance, long deadline) {
+        this(builder, segments, balance, deadline, BuildContext.NONE);
+    }
+
+    /**
+     * Builds a dynamic tree of the given segments within a time budget, under a cancellation
+     * context (e.g. to track the progress of the build, which goes on with {@link #refine(long, BuildContext)}).
+     *
+     * @param builder the builder used for the initial build and the rebuilds.
+     * @param segments the initial segments.
+     * @param balance the balance factor of the quality monitor, in [0.5, 1).
+     * @param deadline the deadline of the initial build, as a {@link System#nanoTime()} value,
+     *                 or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @param context the build context of the initial build.
+     * @throws BuildCancelledException if the initial build was stopped by the context.
+     */
+    public DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments, double balance, long deadline, BuildContext context) {
+        this(builder, segments, balance, null, deadline, context);
+    }
+
+    /**
+     * Creates a dynamic tree from a tree already built for the given segments, e.g. by a
+     * {@link BSPTreeCache}. The tree is modified in place by the updates.
+     *
+     * @param builder the builder used for the rebuilds.
+     * @param segments the segments of the tree.
+     * @param balance the balance factor of the quality monitor, in [0.5, 1).
+     * @param root the root of the tree built by {@code builder} for {@code segments}.
+     */
+    public DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments, double balance, BSPNode root) {
+        this(builder, segments, balance, requireRoot(root), BSPTreeBuilder.NO_DEADLINE, BuildContext.NONE);
+    }
+
+    private DynamicBSPTree(BSPTreeBuilder builder, List<StraightSegment2D> segments, double balance, BSPNode root,
+            long deadline, BuildContext context) {
+        if (builder == null) {
+            throw new IllegalArgumentException("The builder cannot be null.");
+        }
+        if (builder.isLazyBuild()) {
+            throw new IllegalArgumentException("A dynamic tree cannot be built by a lazy builder.");
+        }
+        if (balance < 0.5 || balance >= 1) {
+            throw new IllegalArgumentException("The balance factor must be in [0.5, 1): " + balance);
+        }
+
+        this.builder = builder;
+        this.balance = balance;
+        this.segments = new ArrayList<>(segments);
+        if (root == null) {
+            rebuild(deadline, context);
+        } else {
+            adopt(root);
+        }
+        this.fullRebuilds = 0;
+    }
+
+    /**
+     * Returns the root of the tree. It does not wait for an update or a refinement in progress,
+     * so the tree can be painted meanwhile (see the class comment).
+     *
+     * @return the root of the tree
+     */
+    public BSPNode getRoot() { return root; }
+
+    public synchronized int getFragmentCount() { return fragmentCount; }
+    public synchronized int getPartialRebuilds() { return partialRebuilds; }
+    public synchronized int getFullRebuilds() { return fullRebuilds; }
+
+    /**
+     * Returns the segments of the tree, as inserted.
+     *
+     * @return an unmodifiable view of the segments
+     */
+    public synchronized List<StraightSegment2D> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Returns true if the tree has no coarse leaf left to refine.
+     *
+     * @return true if the tree is complete
+     */
+    public synchronized boolean isComplete() {
+        return coarseLeaves == 0;
+    }
+
+    /**
+     * Rebuilds the whole tree from the segments.
+     */
+    public synchronized void rebuild() {
+        rebuild(BSPTreeBuilder.NO_DEADLINE, BuildContext.NONE);
+    }
+
+    private void rebuild(long deadline, BuildContext context) {
+        adopt(builder.buildTree(new ArrayList<>(segments), null, deadline, context));
+        fullRebuilds++;
+    }
+
+    private void adopt(BSPNode root) {
+        this.root = root;
+        measureTree();
+        maxFragmentCount = fragmentCount;
+        resetMonitor();
+    }
+
+    /**
+     * Counts the fragments and the coarse leaves of the whole tree, after a build or a refinement.
+     * The updates keep both counts up to date.
+     */
+    private void measureTree() {
+        fragmentCount = 0;
+        coarseLeaves = 0;
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            fragmentCount += node.getCoplanarCount();
+            if (node.isCoarse()) {
+                coarseLeaves++;
+            }
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
+        }
+    }
+
+    /**
+     * Measures the shape of the tree, after a full build or once a refinement completes it.
+     */
+    private void resetMonitor() {
+        int height = root.height();
+        int balancedHeight = logBalance(fragmentCount);
+        heightLimit = Math.max(height, balancedHeight);
+        shape = Math.max(1.0, (double) height / Math.max(balancedHeight, 1));
+        stuckHeights.clear();
+    }
+
+    /**
+     * Splits the coarse leaves of the tree until the deadline, see {@link BSPTreeBuilder#refineTree(BSPNode, long)}.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @return true if the tree is complete
+     */
+    public synchronized boolean refine(long deadline) {
+        return refine(deadline, BuildContext.NONE);
+    }
+
+    /**
+     * Splits the coarse leaves of the tree until the deadline, stopping if the context is cancelled.
+     * A stopped refinement leaves a valid tree, that can be refined again later.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value, or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @param context the build context of the refinement.
+     * @return true if the tree is complete
+     * @throws BuildCancelledException if the refinement was stopped by the context.
+     */
+    public synchronized boolean refine(long deadline, BuildContext context) {
+        if (isComplete()) {
+            return true;
+        }
+
+        try {
+            root = builder.refineTree(root, deadline, context);
+        } finally {
+            measureTree();
+            maxFragmentCount = Math.max(maxFragmentCount, fragmentCount);
+            heightLimit = Math.max(heightLimit, logBalance(fragmentCount));
+        }
+
+        boolean complete = isComplete();
+        if (complete) {
+            resetMonitor();
+        }
+        return complete;
+    }
+
+    /**
+     * Inserts a segment, splitting it down the existing partitions.
+     *
+     * @param segment the segment to insert.
+     */
+    public synchronized void insert(StraightSegment2D segment) {
+        if (segment == null) {
+            throw new IllegalArgumentException("The segment cannot be null.");
+        }
+        segments.add(segment);
+
+        PathEntry deepest = null;
+        int deepestDepth = -1;
+        Deque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(segment, new PathEntry(root, null, false, 0)));
+
+        while (!pending.isEmpty()) {
+            Pending p = pending.pop();
+            BSPNode node = p.entry.node;
+
+            if (node.isLeaf()) {
+                List<StraightSegment2D> objects = node.getCoplanarObjects();
+                int depth = p.entry.depth;
+                if (objects.isEmpty() || node.isCoarse()) {
+                    // Empty leaf, or coarse leaf waiting to be refined.
+                    List<StraightSegment2D> leafObjects = new ArrayList<>(objects);
+                    leafObjects.add(p.fragment);
+                    BSPNode leaf = new BSPNode(leafObjects);
+                    replace(p.entry, leaf);
+                    fragmentCount++;
+                    p = new Pending(p.fragment, new PathEntry(leaf, p.entry.parent, p.entry.left, p.entry.depth));
+                } else {
+                    List<StraightSegment2D> leafObjects = new ArrayList<>(objects);
+                    leafObjects.add(p.fragment);
+                    BSPNode subtree = builder.buildTree(leafObjects, parentLine(p.entry));
+                    replace(p.entry, subtree);
+                    fragmentCount += subtree.fragmentCount() - objects.size();
+                    depth += subtree.height();
+                    p = new Pending(p.fragment, new PathEntry(subtree, p.entry.parent, p.entry.left, p.entry.depth));
+                }
+
+                if (depth > deepestDepth) {
+                    deepest = p.entry;
+                    deepestDepth = depth;
+                }
+                continue;
+            }
+
+            Line2D line = node.getPartition();
+            StraightSegment2D fragment = p.fragment;
+            Point2D start = fragment.getStart();
+            Point2D end = fragment.getEnd();
+            double eval = line.evaluate((start.x + end.x) / 2.0, (start.y + end.y) / 2.0);
+
+            if (Math.abs(eval) < EPSILON) {
+                List<StraightSegment2D> coplanar = new ArrayList<>(node.getCoplanarObjects());
+                coplanar.add(fragment);
+                replaceObjects(p.entry, coplanar);
+                fragmentCount++;
+                continue;
+            }
+
+            if (line.evaluate(start) * line.evaluate(end) < -EPSILON) {
+                StraightSegment2D[] fragments = fragment.split(line);
+                if (fragments[0] != null) pending.push(new Pending(fragments[0], child(p.entry, false)));
+                if (fragments[1] != null) pending.push(new Pending(fragments[1], child(p.entry, true)));
+            } else {
+                pending.push(new Pending(fragment, child(p.entry, eval < 0)));
+            }
+        }
+
+        maxFragmentCount = Math.max(maxFragmentCount, fragmentCount);
+        if (deepest != null && deepestDepth > heightLimit && !rebalance(deepest, deepestDepth)) {
+            // The builder's shape is that deep here: stop checking until the tree grows deeper.
+            heightLimit = deepestDepth;
+        }
+    }
+
+    /**
+     * Deletes a segment and its fragments, then removes the internal nodes left useless.
+     * The segment is matched by identity, or else by its endpoints and color.
+     *
+     * @param segment the segment to delete.
+     * @return true if the segment was in the tree.
+     */
+    public synchronized boolean delete(StraightSegment2D segment) {
+        return delete(segment, BSPTreeBuilder.NO_DEADLINE);
+    }
+
+    /**
+     * Deletes a segment and its fragments, see {@link #delete(StraightSegment2D)}. When the deletion
+     * triggers a full rebuild, it is an anytime build within the deadline: the tree can be left with
+     * coarse leaves, to split with {@link #refine(long)}.
+     *
+     * @param segment the segment to delete.
+     * @param deadline the deadline of a full rebuild, as a {@link System#nanoTime()} value,
+     *                 or {@link BSPTreeBuilder#NO_DEADLINE}.
+     * @return true if the segment was in the tree.
+     */
+    public synchronized boolean delete(StraightSegment2D segment, long deadline) {
+        if (segment == null) {
+            throw new IllegalArgumentException("The segment cannot be null.");
+        }
+
+        StraightSegment2D removed = removeSegment(segment);
+        if (removed == null) {
+            return false;
+        }
+
+        Set<BSPNode> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(segment, new PathEntry(root, null, false, 0)));
+
+        while (!pending.isEmpty()) {
+            Pending p = pending.pop();
+            BSPNode node = p.entry.node;
+            StraightSegment2D fragment = p.fragment;
+
+            if (node.isLeaf()) {
+                removeFragment(p.entry, removed, touched);
+                continue;
+            }
+
+            Line2D line = node.getPartition();
+            Point2D start = fragment.getStart();
+            Point2D end = fragment.getEnd();
+            double eval = line.evaluate((start.x + end.x) / 2.0, (start.y + end.y) / 2.0);
+
+            if (Math.abs(eval) < EPSILON) {
+                removeFragment(p.entry, removed, touched);
+                continue;
+            }
+
+            if (line.evaluate(start) * line.evaluate(end) < -EPSILON) {
+                StraightSegment2D[] fragments = fragment.split(line);
+                if (fragments[0] != null) pending.push(new Pending(fragments[0], child(p.entry, false)));
+                if (fragments[1] != null) pending.push(new Pending(fragments[1], child(p.entry, true)));
+            } else {
+                pending.push(new Pending(fragment, child(p.entry, eval < 0)));
+            }
+        }
+
+        assert !hasFragmentOf(removed) : "A fragment of the deleted segment was left in the tree: " + removed;
+        if (fragmentCount < balance * maxFragmentCount) {
+            rebuild(deadline, BuildContext.NONE);
+        } else {
+            collapse(touched);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the scapegoat of a deep insertion, the lowest ancestor exceeding its allowed height
+     * (see the class comment), and rebuilds its subtree.
+     *
+     * <p> The sizes are counted during the climb, each node at most once: the sibling subtrees are
+     * only counted until the ancestor reaches the size from which it is allowed the height of the
+     * insertion, and their counts are resumed higher up, where a larger size is allowed.
+     *
+     * @return true if a rebuild reduced the height of the scapegoat.
+     */
+    private boolean rebalance(PathEntry leaf, int leafDepth) {
+        SubtreeCount leafCount = new SubtreeCount(leaf.node);
+        leafCount.countUpTo(Integer.MAX_VALUE);
+        int size = leafCount.count;
+        List<SubtreeCount> partialCounts = new ArrayList<>();
+        PathEntry entry = leaf;
+        while (entry.parent != null) {
+            BSPNode parent = entry.parent.node;
+            partialCounts.add(new SubtreeCount(entry.left ? parent.getRight() : parent.getLeft()));
+            entry = entry.parent;
+            size++;
+
+            int height = leafDepth - entry.depth;
+            int limit = minimalSize(height);
+            for (Iterator<SubtreeCount> it = partialCounts.iterator(); it.hasNext() && size < limit;) {
+                SubtreeCount count = it.next();
+                int counted = count.count;
+                boolean complete = count.countUpTo(counted + limit - size);
+                size += count.count - counted;
+                if (complete) {
+                    it.remove();
+                }
+            }
+            if (size >= limit) {
+                continue;
+            }
+
+            Integer stuck = stuckHeights.get(entry.node);
+            if (height > allowedHeight(size) && (stuck == null || height > stuck / balance)) {
+                List<StraightSegment2D> fragments = collectFragments(entry.node);
+                BSPNode subtree = builder.buildTree(fragments, parentLine(entry));
+                replace(entry, subtree);
+                fragmentCount += subtree.fragmentCount() - fragments.size();
+                maxFragmentCount = Math.max(maxFragmentCount, fragmentCount);
+                partialRebuilds++;
+
+                int rebuiltHeight = subtree.height();
+                if (rebuiltHeight < height) {
+                    return true;
+                }
+                stuckHeights.put(subtree, rebuiltHeight);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a size from which a subtree is allowed a given height (see {@link #allowedHeight(int)}):
+     * only a smaller subtree of that height can exceed its allowed height.
+     */
+    private int minimalSize(int height) {
+        double estimate = Math.pow(1 / balance, Math.floor((height - 1) / shape) + 1);
+        if (estimate >= Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        int size = Math.max(1, (int) estimate - 1);
+        while (size < Integer.MAX_VALUE && allowedHeight(size) < height) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the height allowed to a subtree of the given size: the shape of the last full build
+     * times log_{1/alpha} of the size.
+     */
+    private int allowedHeight(int size) {
+        return (int) Math.ceil(shape * logBalance(size));
+    }
+
+    /**
+     * Removes, bottom-up, the internal nodes of the touched paths that hold no object and have an empty leaf as child:
+     * they are replaced by their other child.
+     */
+    private void collapse(Set<BSPNode> touched) {
+        // Entries of the touched nodes in pre-order, so that children are processed before their parent in reverse.
+        List<PathEntry> entries = new ArrayList<>();
+        Deque<PathEntry> stack = new ArrayDeque<>();
+        stack.push(new PathEntry(root, null, false, 0));
+        while (!stack.isEmpty()) {
+            PathEntry entry = stack.pop();
+            entries.add(entry);
+            if (!entry.node.isLeaf()) {
+                if (touched.contains(entry.node.getRight())) stack.push(child(entry, false));
+                if (touched.contains(entry.node.getLeft())) stack.push(child(entry, true));
+            }
+        }
+
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            PathEntry entry = entries.get(i);
+            BSPNode node = entry.node;
+            if (node.isLeaf() || node.getCoplanarCount() > 0) {
+                continue;
+            }
+            if (isEmptyLeaf(node.getLeft())) {
+                replace(entry, node.getRight());
+            } else if (isEmptyLeaf(node.getRight())) {
+                replace(entry, node.getLeft());
+            }
+        }
+    }
+
+    /**
+     * Removes a segment from the segments of the tree.
+     *
+     * @return the segment removed, or null if it is not in the tree.
+     */
+    private StraightSegment2D removeSegment(StraightSegment2D segment) {
+        for (Iterator<StraightSegment2D> it = segments.iterator(); it.hasNext();) {
+            StraightSegment2D other = it.next();
+            if (other == segment) {
+                it.remove();
+                return other;
+            }
+        }
+        for (Iterator<StraightSegment2D> it = segments.iterator(); it.hasNext();) {
+            StraightSegment2D other = it.next();
+            if (sameSegment(other, segment)) {
+                it.remove();
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes from the objects of a node the fragments of a segment: the objects whose origin (see
+     * {@link StraightSegment2D#getOrigin()}) is the segment. A node can hold several of them, e.g. after a
+     * partial rebuild from fragments cut by lines that are no longer in the tree. The origin is matched by
+     * identity, or else by its endpoints and color, for trees built from another copy of the segments (e.g. cached).
+     * The node is replaced by a copy without the fragments, whose path is marked as touched.
+     */
+    private void removeFragment(PathEntry entry, StraightSegment2D segment, Set<BSPNode> touched) {
+        List<StraightSegment2D> objects = entry.node.getCoplanarObjects();
+        boolean byIdentity = false;
+        for (StraightSegment2D object : objects) {
+            if (object.getOrigin() == segment) {
+                byIdentity = true;
+                break;
+            }
+        }
+
+        List<StraightSegment2D> remaining = new ArrayList<>(objects.size());
+        for (StraightSegment2D object : objects) {
+            StraightSegment2D origin = object.getOrigin();
+            if (!(byIdentity ? origin == segment : sameSegment(origin, segment))) {
+                remaining.add(object);
+            }
+        }
+        if (remaining.size() == objects.size()) {
+            return;
+        }
+
+        BSPNode copy = replaceObjects(entry, remaining);
+        fragmentCount -= objects.size() - remaining.size();
+        if (entry.node.isCoarse() && remaining.size() <= 1) {
+            coarseLeaves--;
+        }
+        markPath(new PathEntry(copy, entry.parent, entry.left, entry.depth), touched);
+    }
+
+    /**
+     * Returns true if a fragment of a deleted segment is left in the tree, walking the whole tree:
+     * only checked with assertions enabled. Fragments matched by endpoints and color are only reported
+     * if no other segment of the tree has the same endpoints and color.
+     */
+    private boolean hasFragmentOf(StraightSegment2D segment) {
+        boolean duplicated = false;
+        for (StraightSegment2D other : segments) {
+            if (sameSegment(other, segment)) {
+                duplicated = true;
+                break;
+            }
+        }
+
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            for (StraightSegment2D object : node.getCoplanarObjects()) {
+                StraightSegment2D origin = object.getOrigin();
+                if (origin == segment || (!duplicated && sameSegment(origin, segment))) {
+                    return true;
+                }
+            }
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of a node holding other objects, with the same partition and children.
+     * The copy is not shared yet, so its list can be filled before it is linked.
+     */
+    private static BSPNode withObjects(BSPNode node, List<StraightSegment2D> objects) {
+        if (node.isLeaf()) {
+            return new BSPNode(objects);
+        }
+        BSPNode copy = new BSPNode(node.getPartition());
+        copy.getCoplanarObjects().addAll(objects);
+        copy.setLeft(node.getLeft());
+        copy.setRight(node.getRight());
+        return copy;
+    }
+
+    private static boolean sameSegment(StraightSegment2D first, StraightSegment2D second) {
+        return first.getStart().equals(second.getStart()) && first.getEnd().equals(second.getEnd()) && first.getColor().equals(second.getColor());
+    }
+
+    /**
+     * Collects the fragments of a subtree about to be rebuilt, forgetting its coarse leaves and the
+     * heights recorded for its nodes.
+     */
+    private List<StraightSegment2D> collectFragments(BSPNode subtree) {
+        List<StraightSegment2D> fragments = new ArrayList<>();
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(subtree);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            fragments.addAll(node.getCoplanarObjects());
+            if (node.isCoarse()) {
+                coarseLeaves--;
+            }
+            stuckHeights.remove(node);
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
+        }
+        return fragments;
+    }
+
+    private static void markPath(PathEntry entry, Set<BSPNode> touched) {
+        for (PathEntry e = entry; e != null && touched.add(e.node); e = e.parent) {
+            // Stops at the first node already marked, its ancestors are marked too.
+        }
+    }
+
+    private static boolean isEmptyLeaf(BSPNode node) {
+        return node.isLeaf() && node.getCoplanarCount() == 0;
+    }
+
+    private static BSPNode requireRoot(BSPNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("The root cannot be null.");
+        }
+        if (!root.isExpanded()) {
+            throw new IllegalArgumentException("A dynamic tree cannot be created from a lazy tree.");
+        }
+        return root;
+    }
+
+    private int logBalance(int size) {
+        return (int) Math.floor(Math.log(Math.max(size, 1)) / Math.log(1 / balance));
+    }
+
+    private static Line2D parentLine(PathEntry entry) {
+        return entry.parent == null ? null : entry.parent.node.getPartition();
+    }
+
+    private static PathEntry child(PathEntry entry, boolean left) {
+        return new PathEntry(left ? entry.node.getLeft() : entry.node.getRight(), entry, left, entry.depth + 1);
+    }
+
+    /**
+     * Replaces a node by a copy holding other objects (see {@link #withObjects(BSPNode, List)}),
+     * which keeps the height recorded for the node if its last rebuild did not reduce it.
+     */
+    private BSPNode replaceObjects(PathEntry entry, List<StraightSegment2D> objects) {
+        Integer stuck = stuckHeights.get(entry.node);
+        BSPNode copy = withObjects(entry.node, objects);
+        replace(entry, copy);
+        if (stuck != null) {
+            stuckHeights.put(copy, stuck);
+        }
+        return copy;
+    }
+
+    private void replace(PathEntry entry, BSPNode node) {
+        stuckHeights.remove(entry.node);
+        if (entry.parent == null) {
+            root = node;
+        } else if (entry.left) {
+            entry.parent.node.setLeft(node);
+        } else {
+            entry.parent.node.setRight(node);
+        }
+    }
+
+    /**
+     * A node reached from the root, with the entry of its parent and the side it hangs on.
+     */
+    private static final class PathEntry {
+        private final BSPNode node;
+        private final PathEntry parent;
+        private final boolean left;
+        private final int depth;
+
+        PathEntry(BSPNode node, PathEntry parent, boolean left, int depth) {
+            this.node = node;
+            this.parent = parent;
+            this.left = left;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The count of the nodes of a subtree, which can be resumed.
+     */
+    private static final class SubtreeCount {
+        private final Deque<BSPNode> stack = new ArrayDeque<>();
+        private int count;
+
+        SubtreeCount(BSPNode subtree) {
+            stack.push(subtree);
+        }
+
+        /**
+         * Counts the nodes of the subtree until the count reaches the limit.
+         *
+         * @return true if all the nodes of the subtree are counted.
+         */
+        boolean countUpTo(int limit) {
+            while (!stack.isEmpty() && count < limit) {
+                BSPNode node = stack.pop();
+                count++;
+                if (!node.isLeaf()) {
+                    stack.push(node.getRight());
+                    stack.push(node.getLeft());
+                }
+            }
+            return stack.isEmpty();
+        }
+    }
+
+    /**
+     * A fragment waiting to be pushed down from a node.
+     */
+    private static final class Pending {
+        private final StraightSegment2D fragment;
+        private final PathEntry entry;
+
+        Pending(StraightSegment2D fragment, PathEntry entry) {
+            this.fragment = fragment;
+            this.entry = entry;
+        }
+    }
+}
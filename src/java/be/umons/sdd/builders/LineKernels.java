@@ -0,0 +1,73 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.LineKernel;
+
+/**
+ * Access to the available line kernels.
+ *
+ * <p> The SIMD kernel uses the incubating Vector API (jdk.incubator.vector). Its source is kept in
+ * the separate src/java-vector root so that the application still compiles without the module;
+ * it is loaded by reflection and is only available when that root is compiled and the JVM is
+ * started with {@code --add-modules jdk.incubator.vector} (as the benchmarks do).
+ */
+public final class LineKernels {
+
+    private static final String VECTOR_KERNEL_CLASS = "be.umons.sdd.builders.VectorLineKernel";
+    private static final LineKernel SCALAR = new ScalarLineKernel();
+
+    private LineKernels() {
+    }
+
+    /**
+     * Returns the scalar kernel.
+     *
+     * @return the scalar kernel.
+     */
+    public static LineKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Returns the SIMD kernel.
+     *
+     * @return the SIMD kernel.
+     * @throws IllegalStateException if the Vector API or the kernel class is not available.
+     */
+    public static LineKernel vector() {
+        try {
+            return (LineKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("The vector kernel is not available, compile src/java-vector and run with --add-modules jdk.incubator.vector.", e);
+        }
+    }
+
+    /**
+     * Returns the SIMD kernel if it is available, the scalar kernel otherwise.
+     *
+     * @return the fastest available kernel.
+     */
+    public static LineKernel best() {
+        try {
+            return vector();
+        } catch (IllegalStateException e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Returns a kernel from its name: "scalar", "vector" or "best".
+     *
+     * @param name the name of the kernel.
+     * @return the kernel.
+     * @throws IllegalArgumentException if the name is unknown.
+     * @throws IllegalStateException if the vector kernel is requested but not available.
+     */
+    public static LineKernel byName(String name) {
+        return switch (name) {
+            case "scalar" -> scalar();
+            case "vector" -> vector();
+            case "best" -> best();
+            default -> throw new IllegalArgumentException("Unknown line kernel: " + name);
+        };
+    }
+}
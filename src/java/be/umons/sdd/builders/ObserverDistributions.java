@@ -0,0 +1,143 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.ObserverDistribution;
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.Scene2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Common observer distributions.
+ *
+ * <p> The distributions describe their parameters in their string form, e.g. "uniform[-10.0, -10.0, 10.0, 10.0]",
+ * so that two distributions with the same parameters give the same configuration to {@link CostModelBSPTreeBuilder}.
+ */
+public final class ObserverDistributions {
+
+    private ObserverDistributions() {
+    }
+
+    /**
+     * Returns the uniform distribution over the rectangle [minX, maxX] x [minY, maxY].
+     * The mass of a half-plane is the area of the rectangle clipped by it, relative to the area of the rectangle.
+     *
+     * @param minX the minimal x-coordinate.
+     * @param minY the minimal y-coordinate.
+     * @param maxX the maximal x-coordinate.
+     * @param maxY the maximal y-coordinate.
+     * @return the distribution.
+     */
+    public static ObserverDistribution uniform(double minX, double minY, double maxX, double maxY) {
+        if (!(minX < maxX && minY < maxY)) {
+            throw new IllegalArgumentException("The rectangle of the observers must have a positive area.");
+        }
+
+        return new Uniform(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns the uniform distribution over the extent of a scene, [-extentX, extentX] x [-extentY, extentY].
+     *
+     * @param scene the scene.
+     * @return the distribution.
+     */
+    public static ObserverDistribution uniform(Scene2D scene) {
+        return uniform(-scene.getExtentX(), -scene.getExtentY(), scene.getExtentX(), scene.getExtentY());
+    }
+
+    /**
+     * Returns the distribution giving the same probability to each of the given positions.
+     *
+     * @param positions the observer positions.
+     * @return the distribution.
+     */
+    public static ObserverDistribution of(List<Point2D> positions) {
+        if (positions.isEmpty()) {
+            throw new IllegalArgumentException("At least one observer position is required.");
+        }
+
+        return new Positions(positions.toArray(new Point2D[0]));
+    }
+
+    private static final class Uniform implements ObserverDistribution {
+
+        private final double[] xs;
+        private final double[] ys;
+        private final double area;
+
+        Uniform(double minX, double minY, double maxX, double maxY) {
+            this.xs = new double[] { minX, maxX, maxX, minX };
+            this.ys = new double[] { minY, minY, maxY, maxY };
+            this.area = (maxX - minX) * (maxY - minY);
+        }
+
+        @Override
+        public double positiveMass(Line2D line) {
+            return clippedArea(xs, ys, line) / area;
+        }
+
+        @Override
+        public String toString() {
+            return "uniform[" + xs[0] + ", " + ys[0] + ", " + xs[2] + ", " + ys[2] + "]";
+        }
+    }
+
+    private static final class Positions implements ObserverDistribution {
+
+        private final Point2D[] points;
+
+        Positions(Point2D[] points) {
+            this.points = points;
+        }
+
+        @Override
+        public double positiveMass(Line2D line) {
+            int positive = 0;
+            for (Point2D point : points) {
+                if (line.evaluate(point) > 0) {
+                    positive++;
+                }
+            }
+            return (double) positive / points.length;
+        }
+
+        @Override
+        public String toString() {
+            return "positions" + Arrays.toString(points);
+        }
+    }
+
+    /**
+     * Area of the part of a convex polygon in the positive half-plane of a line (Sutherland-Hodgman clipping).
+     */
+    private static double clippedArea(double[] xs, double[] ys, Line2D line) {
+        int n = xs.length;
+        double[] cx = new double[n + 1];
+        double[] cy = new double[n + 1];
+        int count = 0;
+
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double ei = line.evaluate(xs[i], ys[i]);
+            double ej = line.evaluate(xs[j], ys[j]);
+
+            if (ei >= 0) {
+                cx[count] = xs[i];
+                cy[count++] = ys[i];
+            }
+            if ((ei >= 0) != (ej >= 0)) {
+                double t = ei / (ei - ej);
+                cx[count] = xs[i] + t * (xs[j] - xs[i]);
+                cy[count++] = ys[i] + t * (ys[j] - ys[i]);
+            }
+        }
+
+        double twiceArea = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            twiceArea += cx[i] * cy[j] - cx[j] * cy[i];
+        }
+        return Math.abs(twiceArea) / 2.0;
+    }
+}
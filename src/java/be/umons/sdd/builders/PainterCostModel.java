@@ -0,0 +1,105 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.ObserverDistribution;
+import be.umons.sdd.models.Line2D;
+
+/**
+ * Estimated cost of the painter's algorithm on a subtree, used to score the splitting lines
+ * in the spirit of the surface area heuristic.
+ *
+ * <p> The painter visits each node and projects each fragment stored in the tree. The cost of
+ * splitting a region by a line is estimated as:
+ * - the traversal of the node and the projection of its coplanar fragments;
+ * - plus, for each side, the estimated cost of a subtree holding the objects of that side,
+ *   the fragments created by the split included, weighted by the probability the side is visited.
+ *
+ * <p> A subtree of n objects is estimated to cost {@code (2 * traversal + projection) * n * log2(n + 1)}:
+ * about two visited nodes and one fragment per object, inflated by the splits of the levels below.
+ * This rewards both balanced lines and lines cutting few objects.
+ *
+ * <p> {@link PaintersViewBuilder} visits both sides of every node whatever the observer, so by
+ * default both sides weigh 1, which is the cost of the painter of this project.
+ *
+ * <p> An observer distribution is a heuristic knob and does not estimate that painter: a side then
+ * weighs twice the probability that the observer lies on it, as for a painter only descending on
+ * the observer's side (e.g. one culling what lies behind the viewpoint). A side without observers
+ * costs nothing, so the distribution favours lines leaving few observers on a crowded side; the
+ * trees it gives should be measured before being preferred to the default ones.
+ */
+public class PainterCostModel {
+
+    private final double traversalCost;
+    private final double projectionCost;
+    private final ObserverDistribution observers;
+
+    /**
+     * Creates the cost model of {@link PaintersViewBuilder}, visiting both sides of every node.
+     * A projection (two atan2 and an allocation) is assumed to cost twice a node visit.
+     */
+    public PainterCostModel() {
+        this(1.0, 2.0, null);
+    }
+
+    /**
+     * Creates a cost model.
+     *
+     * @param traversalCost the cost of visiting a node.
+     * @param projectionCost the cost of projecting a fragment.
+     * @param observers the distribution of the observers weighting the sides (a heuristic, see above),
+     *                  or null if both sides of every node are visited as by {@link PaintersViewBuilder}.
+     */
+    public PainterCostModel(double traversalCost, double projectionCost, ObserverDistribution observers) {
+        if (traversalCost < 0 || projectionCost < 0 || traversalCost + projectionCost == 0) {
+            throw new IllegalArgumentException("The costs must be non-negative and not both zero.");
+        }
+
+        this.traversalCost = traversalCost;
+        this.projectionCost = projectionCost;
+        this.observers = observers;
+    }
+
+    public double getTraversalCost() { return traversalCost; }
+    public double getProjectionCost() { return projectionCost; }
+    public ObserverDistribution getObservers() { return observers; }
+
+    /**
+     * Returns the estimated cost of splitting a region by a line.
+     *
+     * @param line the splitting line.
+     * @param coplanar the number of objects lying on the line.
+     * @param positive the number of objects and fragments on the positive side.
+     * @param negative the number of objects and fragments on the negative side.
+     * @return the estimated cost.
+     */
+    public double splitCost(Line2D line, double coplanar, double positive, double negative) {
+        double positiveWeight = 1.0;
+        double negativeWeight = 1.0;
+        if (observers != null) {
+            double mass = observers.positiveMass(line);
+            positiveWeight = 2.0 * mass;
+            negativeWeight = 2.0 * (1.0 - mass);
+        }
+
+        return traversalCost + projectionCost * coplanar
+            + positiveWeight * subtreeCost(positive) + negativeWeight * subtreeCost(negative);
+    }
+
+    /**
+     * Returns the estimated cost of a subtree holding n objects.
+     *
+     * @param n the number of objects.
+     * @return the estimated cost.
+     */
+    public double subtreeCost(double n) {
+        if (n <= 0) {
+            return traversalCost;
+        }
+        return (2 * traversalCost + projectionCost) * n * (Math.log(n + 1) / Math.log(2));
+    }
+
+    @Override
+    public String toString() {
+        return "PainterCostModel[traversal=" + traversalCost + ", projection=" + projectionCost
+            + ", observers=" + (observers == null ? "all" : observers) + "]";
+    }
+}
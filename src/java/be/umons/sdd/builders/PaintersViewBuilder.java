@@ -1,14 +1,27 @@
 package be.umons.sdd.builders;
 
+import be.umons.sdd.interfaces.BSPTreeStore;
 import be.umons.sdd.models.AngularSegment;
 import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Line2D;
 import be.umons.sdd.models.Point2D;
 import be.umons.sdd.models.StraightSegment2D;
 import be.umons.sdd.models.View360;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
 
 public class PaintersViewBuilder {
+
+    // Cross products under this value count as zero when comparing the depth of segments.
+    private static final double DEPTH_EPSILON = 1e-9;
+    // Largest coarse leaf ordered by occlusion, larger ones are ordered by distance.
+    private static final int OCCLUSION_ORDER_LIMIT = 256;
+
     /**
      * Builds a View360 from the given BSP tree root by applying the painter's algorithm.
      * The painter's algorithm traverses the tree in a depth-first order, but instead of
@@ -23,8 +36,25 @@ public class PaintersViewBuilder {
      * @return          A View360 object containing the visible segments in back-to-front order.
      */
     public static View360 paintersAlgorithm(BSPNode root, Point2D viewPoint) {
+        return paintersAlgorithm(root, viewPoint, null);
+    }
+
+    /**
+     * Builds a View360 from the given BSP tree root by applying the painter's algorithm, see
+     * {@link #paintersAlgorithm(BSPNode, Point2D)}, keeping the order of the coarse leaves in
+     * {@code orders} so that a tree painted again from the same viewpoint does not sort them again.
+     *
+     * @param root      The root of the BSP tree to traverse.
+     * @param viewPoint The point of view to compute the view from.
+     * @param orders    The orders of the coarse leaves kept from the last painting, or null.
+     * @return          A View360 object containing the visible segments in back-to-front order.
+     */
+    public static View360 paintersAlgorithm(BSPNode root, Point2D viewPoint, CoarseLeafOrders orders) {
         View360 view360 = new View360();
-        paintersAlgorithmHelper(root, viewPoint, view360);
+        if (orders != null) {
+            orders.startPainting(viewPoint);
+        }
+        paintersAlgorithmHelper(root, viewPoint, view360, orders);
         return view360;
     }
 
@@ -37,8 +67,9 @@ public class PaintersViewBuilder {
      * @param node      The current node in the BSP tree.
      * @param viewPoint The viewpoint from which the scene is rendered.
      * @param view360   The view to which the angular segments are added.
+     * @param orders    The orders of the coarse leaves, or null.
      */
-    private static void paintersAlgorithmHelper(BSPNode node, Point2D viewPoint, View360 view360) {
+    private static void paintersAlgorithmHelper(BSPNode node, Point2D viewPoint, View360 view360, CoarseLeafOrders orders) {
         // Should Throw an error ? 
         // There can be null nodes if a node has no child for a side ?
         if (node == null) {
@@ -48,6 +79,9 @@ public class PaintersViewBuilder {
         // Node is leaf = > Scan-convert the object fragments in S(ν)
         if (node.isLeaf()) {
             List<StraightSegment2D> segments = node.getCoplanarObjects();
+            if (segments.size() > 1) {
+                segments = orders != null ? orders.get(node, segments, viewPoint) : backToFront(segments, viewPoint);
+            }
             for (StraightSegment2D seg : segments) {
                 AngularSegment as = computeAngularSegment(seg, viewPoint);
                 if (as != null) {
@@ -64,7 +98,7 @@ public class PaintersViewBuilder {
         // Viewpoint in positive half-space: 
         if (viewPointPosition > 0) {
             // Process left (negative) subtree first
-            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360);
+            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360, orders);
             
             // Process coplanar objects stored at this node
             for (StraightSegment2D seg : node.getCoplanarObjects()) {
@@ -75,12 +109,12 @@ public class PaintersViewBuilder {
             }
             
             // Then process right (positive) subtree
-            paintersAlgorithmHelper(node.getRight(), viewPoint, view360);
+            paintersAlgorithmHelper(node.getRight(), viewPoint, view360, orders);
 
         // Viewpoint in negative half-space: 
         } else if (viewPointPosition < 0) {
             // Process right subtree first
-            paintersAlgorithmHelper(node.getRight(), viewPoint, view360);
+            paintersAlgorithmHelper(node.getRight(), viewPoint, view360, orders);
             
             // Process the node's coplanar objects
             for (StraightSegment2D seg : node.getCoplanarObjects()) {
@@ -91,15 +125,340 @@ public class PaintersViewBuilder {
             }
             
             // Finally, process left subtree
-            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360);
+            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360, orders);
 
         // Viewpoint exactly on the partition line:
         } else {
             // do not render the coplanar objects (not visible) 
             // Mayby as a point ???
-            paintersAlgorithmHelper(node.getRight(), viewPoint, view360);
-            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360);
+            paintersAlgorithmHelper(node.getRight(), viewPoint, view360, orders);
+            paintersAlgorithmHelper(node.getLeft(), viewPoint, view360, orders);
+        }
+    }
+
+    /**
+     * Builds a View360 from a stored BSP tree (e.g. a {@link be.umons.sdd.models.FlatBSPTree}) by applying the painter's algorithm.
+     * The segments are visited in the same order as {@link #paintersAlgorithm(BSPNode, Point2D)}
+     * on the tree that was stored, see {@link #paintersOrder(BSPTreeStore, Point2D, IntConsumer)}.
+     *
+     * @param tree      The stored BSP tree to traverse.
+     * @param viewPoint The point of view to compute the view from.
+     * @return          A View360 object containing the visible segments in back-to-front order.
+     */
+    public static View360 paintersAlgorithm(BSPTreeStore tree, Point2D viewPoint) {
+        View360 view360 = new View360();
+        paintersOrder(tree, viewPoint, fragment -> {
+            AngularSegment as = computeAngularSegment(tree.getX1(fragment), tree.getY1(fragment),
+                tree.getX2(fragment), tree.getY2(fragment), viewPoint, tree.getSegment(fragment));
+            if (as != null) {
+                view360.addAngularSegment(as);
+            }
+        });
+        return view360;
+    }
+
+    /**
+     * Visits the fragments of a stored BSP tree in back-to-front order from the viewpoint, without creating
+     * any object per node or per fragment. The order is the one of the painter's algorithm on linked nodes:
+     * the far side of a node, its coplanar objects and then its near side, the coplanar objects being skipped
+     * when the viewpoint lies on the partition line, and the objects of coarse leaves ordered as by
+     * {@link #backToFront(double[], double[], double[], double[], Point2D)}.
+     * The tree is walked with an explicit stack, so deep trees do not overflow the thread stack.
+     *
+     * @param tree      The stored BSP tree to traverse.
+     * @param viewPoint The observer's position.
+     * @param visitor   Called with the index of each fragment, in back-to-front order.
+     */
+    public static void paintersOrder(BSPTreeStore tree, Point2D viewPoint, IntConsumer visitor) {
+        // A node index to visit, or the complement (~node) of a node whose objects are to be visited.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            if (top + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+
+            int entry = stack[--top];
+            if (entry < 0) {
+                int node = ~entry;
+                for (int fragment = tree.getFragmentsFrom(node); fragment < tree.getFragmentsTo(node); fragment++) {
+                    visitor.accept(fragment);
+                }
+                continue;
+            }
+
+            int node = entry;
+            if (tree.isLeaf(node)) {
+                int from = tree.getFragmentsFrom(node);
+                int to = tree.getFragmentsTo(node);
+                if (to - from > 1) {
+                    for (int fragment : backToFront(tree, from, to, viewPoint)) {
+                        visitor.accept(fragment);
+                    }
+                } else if (to > from) {
+                    visitor.accept(from);
+                }
+                continue;
+            }
+
+            // Pushed in reverse order of visit.
+            double side = tree.evaluate(node, viewPoint.x, viewPoint.y);
+            int near = side > 0 ? tree.getRight(node) : tree.getLeft(node);
+            int far = side > 0 ? tree.getLeft(node) : tree.getRight(node);
+            if (near != BSPTreeStore.NO_CHILD) {
+                stack[top++] = near;
+            }
+            if (side != 0) {
+                stack[top++] = ~node;
+            }
+            if (far != BSPTreeStore.NO_CHILD) {
+                stack[top++] = far;
+            }
+        }
+    }
+
+    /**
+     * Orders the objects of a coarse leaf (left unsplit by an anytime build) back to front, see
+     * {@link #backToFront(double[], double[], double[], double[], Point2D)}.
+     *
+     * @param segments  The objects of the leaf.
+     * @param viewPoint The observer's position.
+     * @return          A new list with the objects in back-to-front order.
+     */
+    private static List<StraightSegment2D> backToFront(List<StraightSegment2D> segments, Point2D viewPoint) {
+        int count = segments.size();
+        double[] x1 = new double[count];
+        double[] y1 = new double[count];
+        double[] x2 = new double[count];
+        double[] y2 = new double[count];
+        for (int i = 0; i < count; i++) {
+            StraightSegment2D segment = segments.get(i);
+            x1[i] = segment.getStart().x;
+            y1[i] = segment.getStart().y;
+            x2[i] = segment.getEnd().x;
+            y2[i] = segment.getEnd().y;
+        }
+
+        List<StraightSegment2D> sorted = new ArrayList<>(count);
+        for (int i : backToFront(x1, y1, x2, y2, viewPoint)) {
+            sorted.add(segments.get(i));
+        }
+        return sorted;
+    }
+
+    /**
+     * Orders the fragments of a coarse leaf of a stored tree, as {@link #backToFront(List, Point2D)}.
+     *
+     * @param tree      The stored tree.
+     * @param from      The first fragment of the leaf (inclusive).
+     * @param to        The last fragment of the leaf (exclusive).
+     * @param viewPoint The observer's position.
+     * @return          The indices of the fragments in back-to-front order.
+     */
+    private static int[] backToFront(BSPTreeStore tree, int from, int to, Point2D viewPoint) {
+        int count = to - from;
+        double[] x1 = new double[count];
+        double[] y1 = new double[count];
+        double[] x2 = new double[count];
+        double[] y2 = new double[count];
+        for (int i = 0; i < count; i++) {
+            x1[i] = tree.getX1(from + i);
+            y1[i] = tree.getY1(from + i);
+            x2[i] = tree.getX2(from + i);
+            y2[i] = tree.getY2(from + i);
+        }
+
+        int[] order = backToFront(x1, y1, x2, y2, viewPoint);
+        for (int i = 0; i < count; i++) {
+            order[i] += from;
+        }
+        return order;
+    }
+
+    /**
+     * Orders segments back to front from the viewpoint by their occlusion, for the coarse leaves.
+     *
+     * <p> Two segments are compared only if their angular intervals overlap (found by a sweep on the
+     * start angles). The nearest one is found with their support lines: a segment lying entirely on the
+     * far side of the line of the other (from the viewpoint) is behind it, and one lying entirely on the
+     * near side is in front of it. The order is a topological sort of these "behind" relations, taking
+     * the farthest ready segment first (by the distance of its closest point). Segments that cross, and
+     * cycles of segments overlapping each other, have no exact order: the farthest remaining segment is then
+     * drawn first, so the order is only approximate for them until the leaf is refined.
+     *
+     * <p> Above {@value #OCCLUSION_ORDER_LIMIT} segments (e.g. a coarse leaf grown by insertions), the
+     * overlapping pairs can be quadratic in number: the segments are then only ordered by the distance
+     * of their closest point, farthest first.
+     *
+     * @param x1        The x-coordinates of the start points.
+     * @param y1        The y-coordinates of the start points.
+     * @param x2        The x-coordinates of the end points.
+     * @param y2        The y-coordinates of the end points.
+     * @param viewPoint The observer's position.
+     * @return          The positions of the segments in back-to-front order.
+     */
+    private static int[] backToFront(double[] x1, double[] y1, double[] x2, double[] y2, Point2D viewPoint) {
+        int count = x1.length;
+        double[] starts = new double[count];
+        double[] ends = new double[count];
+        double[] distances = new double[count];
+        if (count > OCCLUSION_ORDER_LIMIT) {
+            Integer[] byDistance = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                distances[i] = squaredDistance(x1[i], y1[i], x2[i], y2[i], viewPoint);
+                byDistance[i] = i;
+            }
+            Arrays.sort(byDistance, (i, j) -> Double.compare(distances[j], distances[i]));
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = byDistance[i];
+            }
+            return order;
+        }
+
+        Integer[] byStart = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            AngularSegment interval = computeAngularSegment(x1[i], y1[i], x2[i], y2[i], viewPoint, null);
+            starts[i] = interval.getStartAngle();
+            ends[i] = interval.getEndAngle();
+            distances[i] = squaredDistance(x1[i], y1[i], x2[i], y2[i], viewPoint);
+            byStart[i] = i;
+        }
+        Arrays.sort(byStart, (i, j) -> Double.compare(starts[i], starts[j]));
+
+        // "Behind" relations of the overlapping pairs, as edges from the segment behind to the one in front.
+        int[] behind = new int[16];
+        int[] front = new int[16];
+        int edges = 0;
+        for (int k = 0; k < count; k++) {
+            int i = byStart[k];
+            // The following starts, around the circle, until the end of the interval of i.
+            for (int step = 1; step < count; step++) {
+                int j = byStart[(k + step) % count];
+                double start = k + step < count ? starts[j] : starts[j] + 2 * Math.PI;
+                if (start >= ends[i]) {
+                    break;
+                }
+
+                int occlusion = compareDepth(x1, y1, x2, y2, i, j, viewPoint);
+                if (occlusion == 0) {
+                    continue;
+                }
+                if (edges == behind.length) {
+                    behind = Arrays.copyOf(behind, edges * 2);
+                    front = Arrays.copyOf(front, edges * 2);
+                }
+                behind[edges] = occlusion > 0 ? j : i;
+                front[edges] = occlusion > 0 ? i : j;
+                edges++;
+            }
+        }
+
+        // Edges grouped by the segment behind.
+        int[] firstEdge = new int[count + 1];
+        int[] inDegree = new int[count];
+        for (int e = 0; e < edges; e++) {
+            firstEdge[behind[e] + 1]++;
+            inDegree[front[e]]++;
+        }
+        for (int i = 0; i < count; i++) {
+            firstEdge[i + 1] += firstEdge[i];
+        }
+        int[] targets = new int[edges];
+        int[] next = Arrays.copyOf(firstEdge, count);
+        for (int e = 0; e < edges; e++) {
+            targets[next[behind[e]]++] = front[e];
+        }
+
+        // Farthest first, among the ready segments, or among all the remaining ones on a cycle.
+        Integer[] byDistance = Arrays.copyOf(byStart, count);
+        Arrays.sort(byDistance, (i, j) -> Double.compare(distances[j], distances[i]));
+        PriorityQueue<Integer> ready = new PriorityQueue<>((i, j) -> Double.compare(distances[j], distances[i]));
+        for (int i = 0; i < count; i++) {
+            if (inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        boolean[] drawn = new boolean[count];
+        int[] order = new int[count];
+        int size = 0;
+        int farthest = 0;
+        while (size < count) {
+            if (ready.isEmpty()) {
+                while (drawn[byDistance[farthest]]) {
+                    farthest++;
+                }
+                ready.add(byDistance[farthest]);
+            }
+
+            int i = ready.poll();
+            if (drawn[i]) {
+                continue;
+            }
+            drawn[i] = true;
+            order[size++] = i;
+            for (int e = firstEdge[i]; e < firstEdge[i + 1]; e++) {
+                int j = targets[e];
+                if (--inDegree[j] == 0 && !drawn[j]) {
+                    ready.add(j);
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Compares the depth of two segments whose angular intervals overlap.
+     *
+     * @return 1 if segment i is in front of segment j, -1 if it is behind, 0 if it cannot be decided.
+     */
+    private static int compareDepth(double[] x1, double[] y1, double[] x2, double[] y2, int i, int j, Point2D viewPoint) {
+        int byLineOfI = sideOfLine(x1, y1, x2, y2, i, j, viewPoint);
+        if (byLineOfI != 0) {
+            return byLineOfI;
+        }
+        return -sideOfLine(x1, y1, x2, y2, j, i, viewPoint);
+    }
+
+    /**
+     * Locates segment j with respect to the support line of segment i.
+     *
+     * @return 1 if j lies on the far side of the line (i is in front), -1 if it lies on the side
+     *         of the viewpoint (i is behind), 0 if it crosses the line or the viewpoint is on it.
+     */
+    private static int sideOfLine(double[] x1, double[] y1, double[] x2, double[] y2, int i, int j, Point2D viewPoint) {
+        double dx = x2[i] - x1[i];
+        double dy = y2[i] - y1[i];
+        int viewer = sign(dx * (viewPoint.y - y1[i]) - dy * (viewPoint.x - x1[i]));
+        int start = sign(dx * (y1[j] - y1[i]) - dy * (x1[j] - x1[i]));
+        int end = sign(dx * (y2[j] - y1[i]) - dy * (x2[j] - x1[i]));
+        if (viewer == 0 || (start == 0 && end == 0)) {
+            return 0;
+        }
+        if (start * viewer <= 0 && end * viewer <= 0) {
+            return 1;
+        }
+        if (start * viewer >= 0 && end * viewer >= 0) {
+            return -1;
         }
+        return 0;
+    }
+
+    private static int sign(double cross) {
+        return cross > DEPTH_EPSILON ? 1 : cross < -DEPTH_EPSILON ? -1 : 0;
+    }
+
+    private static double squaredDistance(double x1, double y1, double x2, double y2, Point2D point) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double t = ((point.x - x1) * dx + (point.y - y1) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        double ex = x1 + t * dx - point.x;
+        double ey = y1 + t * dy - point.y;
+        return ex * ex + ey * ey;
     }
 
     /**
@@ -136,10 +495,25 @@ public class PaintersViewBuilder {
     private static AngularSegment computeAngularSegment(StraightSegment2D segmentToProject, Point2D viewPoint) {
         Point2D segmentStart = segmentToProject.getStart();
         Point2D segmentEnd = segmentToProject.getEnd();
-        
+        return computeAngularSegment(segmentStart.x, segmentStart.y, segmentEnd.x, segmentEnd.y, viewPoint, segmentToProject);
+    }
+
+    /**
+     * Computes the angular projection of a segment given by its coordinates, see
+     * {@link #computeAngularSegment(StraightSegment2D, Point2D)}.
+     *
+     * @param x1                The x-coordinate of the start point.
+     * @param y1                The y-coordinate of the start point.
+     * @param x2                The x-coordinate of the end point.
+     * @param y2                The y-coordinate of the end point.
+     * @param viewPoint         The observer's position.
+     * @param segmentToProject  The segment referenced by the projection.
+     * @return                  An AngularSegment representing the segment's projection.
+     */
+    private static AngularSegment computeAngularSegment(double x1, double y1, double x2, double y2, Point2D viewPoint, StraightSegment2D segmentToProject) {
         // Compute angles (in radians)
-        double angle1 = Math.atan2(segmentStart.y - viewPoint.y, segmentStart.x - viewPoint.x);
-        double angle2 = Math.atan2(segmentEnd.y - viewPoint.y, segmentEnd.x - viewPoint.x);
+        double angle1 = Math.atan2(y1 - viewPoint.y, x1 - viewPoint.x);
+        double angle2 = Math.atan2(y2 - viewPoint.y, x2 - viewPoint.x);
         
         // Normalize angles to [0, 2π)
         angle1 = (angle1 < 0) ? angle1 + 2 * Math.PI : angle1;
@@ -170,5 +544,47 @@ public class PaintersViewBuilder {
         
         return new AngularSegment(startAngle, endAngle, segmentToProject);
     }
-    
+
+    /**
+     * The objects of the coarse leaves of a tree in back-to-front order, kept for the viewpoint of
+     * the last painting, so a leaf is only sorted once while the observer stays in place, e.g. when
+     * a tree is repainted after each step of its refinement: only the leaves created by the step
+     * are sorted. The objects of a leaf never change once it is linked in a tree (leaves are replaced,
+     * see {@link DynamicBSPTree}), so an order stays valid as long as its leaf is painted.
+     *
+     * <p> Only the leaves of the last painting are kept, so the orders of the leaves of a replaced
+     * tree are dropped at the next painting. Meant for one painter: the orders are not thread-safe.
+     */
+    public static final class CoarseLeafOrders {
+        private Point2D viewPoint;
+        private Map<BSPNode, List<StraightSegment2D>> previous = new IdentityHashMap<>();
+        private Map<BSPNode, List<StraightSegment2D>> current = new IdentityHashMap<>();
+
+        /**
+         * Starts a painting: the orders of the last painting are kept if the viewpoint did not move.
+         */
+        private void startPainting(Point2D viewPoint) {
+            if (viewPoint.equals(this.viewPoint)) {
+                previous = current;
+            } else {
+                previous = new IdentityHashMap<>();
+                // Point2D is mutable, the viewpoint is copied.
+                this.viewPoint = new Point2D(viewPoint.x, viewPoint.y);
+            }
+            current = new IdentityHashMap<>();
+        }
+
+        /**
+         * Returns the objects of a coarse leaf in back-to-front order, sorting them unless they were
+         * sorted by the last painting.
+         */
+        private List<StraightSegment2D> get(BSPNode leaf, List<StraightSegment2D> segments, Point2D viewPoint) {
+            List<StraightSegment2D> sorted = previous.get(leaf);
+            if (sorted == null) {
+                sorted = backToFront(segments, viewPoint);
+            }
+            current.put(leaf, sorted);
+            return sorted;
+        }
+    }
 }
@@ -1,29 +1,75 @@
 package be.umons.sdd.builders;
 
-import be.umons.sdd.models.BSPNode;
-import be.umons.sdd.models.Line2D;
-import be.umons.sdd.models.StraightSegment2D;
-import java.util.Collections;
-import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * A BSP tree builder that uses a random permutation of objects before constructing a deterministic BSP tree.
+ *
+ * <p> The objects are shuffled by {@link #buildOrder(int)}, so every build (from a list, within a time
+ * budget or from a segment store) partitions them in a random order. The permutation is drawn from the
+ * seed of the builder: a builder always builds the same tree from the same scene, and the seed is part
+ * of its configuration (see {@link BSPTreeBuilder#getConfiguration()}). A new builder draws a new seed
+ * unless one is given.
  */
-public class RandomBSPTreeBuilder extends BSPTreeBuilder {
+public class RandomBSPTreeBuilder extends DeterministicBSPTreeBuilder {
+
+    private final long seed;
+
+    /**
+     * Constructs a RandomBSPTreeBuilder with a random seed.
+     */
+    public RandomBSPTreeBuilder() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructs a RandomBSPTreeBuilder with a given seed.
+     *
+     * @param seed the seed of the random permutations.
+     */
+    public RandomBSPTreeBuilder(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the seed of the random permutations.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String getLabel() {
+        return "Random";
+    }
+
+    @Override
+    protected String getParameters() {
+        return "seed=" + seed;
+    }
 
     /**
-     * Builds a BSP tree by first randomly shuffling the objects,
-     * then delegating to the deterministic builder.
-     * 
-     * @param objects the list of scene objects.
-     * @param parentLine the parent's splitting line (null for root).
-     * @return the BSP tree node representing the region.
+     * Returns a random permutation of the objects (Fisher-Yates), the deterministic builder
+     * then partitions them in that order. The permutation only depends on the seed and the number of objects.
+     *
+     * @param count the number of objects of the build.
+     * @return the positions of the objects in build order.
      */
     @Override
-    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine) {
-        // Create a copy to avoid modifying the original list.
-        List<StraightSegment2D> shuffled = new java.util.ArrayList<>(objects);
-        Collections.shuffle(shuffled);
-        return new DeterministicBSPTreeBuilder().buildTree(shuffled, parentLine);
+    protected int[] buildOrder(int count) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swapped = order[i];
+            order[i] = order[j];
+            order[j] = swapped;
+        }
+        return order;
     }
 }
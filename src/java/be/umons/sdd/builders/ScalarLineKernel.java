@@ -0,0 +1,45 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.interfaces.LineKernel;
+
+/**
+ * Plain Java implementation of the line kernel, one point at a time.
+ */
+public class ScalarLineKernel implements LineKernel {
+
+    @Override
+    public void countSides(double a, double b, double c, double[] xs, double[] ys, int from, int to, double epsilon, int[] counts) {
+        int positive = 0;
+        int negative = 0;
+        for (int i = from; i < to; i++) {
+            double eval = a * xs[i] + b * ys[i] + c;
+            if (eval > epsilon) {
+                positive++;
+            } else if (eval < -epsilon) {
+                negative++;
+            }
+        }
+
+        counts[0] = positive;
+        counts[1] = negative;
+        counts[2] = to - from - positive - negative;
+    }
+
+    @Override
+    public int countCuts(double a, double b, double c, double[] x1, double[] y1, double[] x2, double[] y2, int from, int to, double epsilon) {
+        int cuts = 0;
+        for (int i = from; i < to; i++) {
+            double evalStart = a * x1[i] + b * y1[i] + c;
+            double evalEnd = a * x2[i] + b * y2[i] + c;
+            if (evalStart * evalEnd < -epsilon) {
+                cuts++;
+            }
+        }
+        return cuts;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
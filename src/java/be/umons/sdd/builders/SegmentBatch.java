@@ -0,0 +1,73 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.SegmentStore;
+import be.umons.sdd.models.StraightSegment2D;
+import java.util.List;
+
+/**
+ * Coordinates of the objects of a node gathered in contiguous primitive arrays, for the line kernels.
+ * Centers are computed as in {@link StraightSegment2D#getCenter()}.
+ */
+public final class SegmentBatch {
+    public final int size;
+    public final double[] x1;
+    public final double[] y1;
+    public final double[] x2;
+    public final double[] y2;
+    public final double[] centerX;
+    public final double[] centerY;
+
+    private SegmentBatch(int size) {
+        this.size = size;
+        this.x1 = new double[size];
+        this.y1 = new double[size];
+        this.x2 = new double[size];
+        this.y2 = new double[size];
+        this.centerX = new double[size];
+        this.centerY = new double[size];
+    }
+
+    /**
+     * Gathers the coordinates of a list of segments.
+     *
+     * @param segments the segments.
+     * @return the batch, in the order of the list.
+     */
+    public static SegmentBatch of(List<StraightSegment2D> segments) {
+        SegmentBatch batch = new SegmentBatch(segments.size());
+        for (int i = 0; i < batch.size; i++) {
+            Point2D start = segments.get(i).getStart();
+            Point2D end = segments.get(i).getEnd();
+            batch.set(i, start.x, start.y, end.x, end.y);
+        }
+        return batch;
+    }
+
+    /**
+     * Gathers the coordinates of the segments of a store whose indices are in {@code indices[from..to)}.
+     *
+     * @param store the store holding the segments.
+     * @param indices the array of segment indices.
+     * @param from the first position in the array (inclusive).
+     * @param to the last position in the array (exclusive).
+     * @return the batch, in the order of the indices.
+     */
+    public static SegmentBatch of(SegmentStore store, int[] indices, int from, int to) {
+        SegmentBatch batch = new SegmentBatch(to - from);
+        for (int i = 0; i < batch.size; i++) {
+            int index = indices[from + i];
+            batch.set(i, store.getX1(index), store.getY1(index), store.getX2(index), store.getY2(index));
+        }
+        return batch;
+    }
+
+    private void set(int i, double startX, double startY, double endX, double endY) {
+        x1[i] = startX;
+        y1[i] = startY;
+        x2[i] = endX;
+        y2[i] = endY;
+        centerX[i] = (startX + endX) / 2.0;
+        centerY[i] = (startY + endY) / 2.0;
+    }
+}
@@ -0,0 +1,177 @@
+package be.umons.sdd.builders;
+
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct support lines of the candidate segments of a node.
+ *
+ * <p> Without interning, every segment added gets its own line, in the order of the segments.
+ * With interning, segments lying on the same line (within the tolerance of the partition) share
+ * one entry, so the line is built and scored only once per node. Each entry keeps the line of its
+ * first segment and counts its collinear segments.
+ *
+ * <p> Lines are matched on their coefficients normalized as in {@link Line2D}, with a canonical
+ * sign (a > 0, or a = 0 and b > 0), quantized on a grid of step {@link #TOLERANCE}. Lines close
+ * to a cell border are found by probing the neighbouring cells, and a line found in a cell is only
+ * matched if both endpoints of the added segment lie on it within {@link BSPTreeBuilder#EPSILON},
+ * the tolerance of the partition, so every segment of an entry is coplanar with its line. Two
+ * segments of the same line that are not matched only cost an extra candidate.
+ */
+public class SupportLines {
+
+    /**
+     * Grid step on the normalized coefficients used to look up the lines to merge.
+     */
+    public static final double TOLERANCE = 1e-6;
+
+    private final boolean interning;
+    private final List<Line2D> lines;
+    private int[] counts;
+    private boolean[] freeSplits;
+    private final Map<LineKey, Integer> ids;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param interning true to merge the segments lying on the same line.
+     * @param expected the expected number of segments.
+     */
+    public SupportLines(boolean interning, int expected) {
+        this.interning = interning;
+        int capacity = Math.max(interning ? 16 : expected, 1);
+        this.lines = new ArrayList<>(capacity);
+        this.counts = new int[capacity];
+        this.freeSplits = new boolean[capacity];
+        this.ids = interning ? new HashMap<>() : null;
+    }
+
+    /**
+     * Adds the support line of the segment from (x1, y1) to (x2, y2).
+     *
+     * @param x1 the x-coordinate of the start point.
+     * @param y1 the y-coordinate of the start point.
+     * @param x2 the x-coordinate of the end point.
+     * @param y2 the y-coordinate of the end point.
+     * @return the id of the line, from 0 in the order lines were first added.
+     */
+    public int add(double x1, double y1, double x2, double y2) {
+        if (!interning) {
+            return addLine(x1, y1, x2, y2);
+        }
+
+        // Normalized coefficients, as computed by Line2D, with a canonical sign.
+        double a = y2 - y1;
+        double b = x1 - x2;
+        double c = -(a * x1 + b * y1);
+        double norm = Math.sqrt(a * a + b * b);
+        a /= norm;
+        b /= norm;
+        c /= norm;
+        if (a < -TOLERANCE || (Math.abs(a) <= TOLERANCE && b < 0)) {
+            a = -a;
+            b = -b;
+            c = -c;
+        }
+
+        long qa = Math.round(a / TOLERANCE);
+        long qb = Math.round(b / TOLERANCE);
+        long qc = Math.round(c / TOLERANCE);
+
+        Integer id = find(qa, qb, qc, x1, y1, x2, y2);
+        if (id == null) {
+            id = addLine(x1, y1, x2, y2);
+            ids.put(new LineKey(qa, qb, qc), id);
+        } else {
+            counts[id]++;
+        }
+        return id;
+    }
+
+    /**
+     * Finds a line holding the segment from (x1, y1) to (x2, y2), in the cell (qa, qb, qc) or in
+     * the neighbouring cells.
+     */
+    private Integer find(long qa, long qb, long qc, double x1, double y1, double x2, double y2) {
+        Integer id = ids.get(new LineKey(qa, qb, qc));
+        if (id != null && matches(id, x1, y1, x2, y2)) {
+            return id;
+        }
+
+        for (long da = -1; da <= 1; da++) {
+            for (long db = -1; db <= 1; db++) {
+                for (long dc = -1; dc <= 1; dc++) {
+                    id = ids.get(new LineKey(qa + da, qb + db, qc + dc));
+                    if (id != null && matches(id, x1, y1, x2, y2)) {
+                        return id;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(int id, double x1, double y1, double x2, double y2) {
+        Line2D line = lines.get(id);
+        return Math.abs(line.evaluate(x1, y1)) < BSPTreeBuilder.EPSILON
+            && Math.abs(line.evaluate(x2, y2)) < BSPTreeBuilder.EPSILON;
+    }
+
+    private int addLine(double x1, double y1, double x2, double y2) {
+        int id = lines.size();
+        if (id == counts.length) {
+            counts = Arrays.copyOf(counts, id + (id >> 1) + 1);
+            freeSplits = Arrays.copyOf(freeSplits, counts.length);
+        }
+
+        lines.add(new Line2D(new Point2D(x1, y1), new Point2D(x2, y2)));
+        counts[id] = 1;
+        return id;
+    }
+
+    /**
+     * Marks a line as a free split (one of its segments lies on the parent's line).
+     *
+     * @param id the id of the line.
+     */
+    public void setFreeSplit(int id) {
+        freeSplits[id] = true;
+    }
+
+    public boolean isFreeSplit(int id) { return freeSplits[id]; }
+    public Line2D getLine(int id) { return lines.get(id); }
+    public int getCount(int id) { return counts[id]; }
+    public int size() { return lines.size(); }
+
+    /**
+     * Quantized coefficients of a line.
+     */
+    private static final class LineKey {
+        private final long a;
+        private final long b;
+        private final long c;
+
+        LineKey(long a, long b, long c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(a) * 961 + Long.hashCode(b) * 31 + Long.hashCode(c);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LineKey)) return false;
+            LineKey other = (LineKey) o;
+            return a == other.a && b == other.b && c == other.c;
+        }
+    }
+}
@@ -2,9 +2,15 @@ package be.umons.sdd.builders;
 
 import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.SegmentStore;
 import be.umons.sdd.models.StraightSegment2D;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * Builds a BSP tree using the Teller heuristic.
@@ -32,76 +38,253 @@ public class TellerBSPTreeBuilder extends BSPTreeBuilder {
         return tau;
     }
 
+    @Override
+    public String getLabel() {
+        return "Teller (Tau = " + new DecimalFormat("#.#########").format(tau) + ")";
+    }
+
+    @Override
+    protected String getParameters() {
+        return "tau=" + tau;
+    }
+
+    /**
+     * Builds the trees this builder would build for several values of tau, in one sweep.
+     * 
+     * <p> The trees for the different taus are built together: in each region, the candidates are
+     * evaluated once (f and sigma do not depend on tau), then each tau selects its line from them.
+     * Taus selecting the same line share the partition of the region and keep being built together;
+     * the sweep only branches where their choices diverge. Subtrees that end up identical are shared
+     * between the returned trees, so the trees must not be modified (e.g. by a {@link DynamicBSPTree}).
+     * 
+     * <p> Each tree is the one {@link #buildTree(List, Line2D)} builds with its tau and the options of this
+     * builder (sampling and interning apply; the other options give the same trees and are not used).
+     * The tau of this builder is ignored.
+     * 
+     * @param objects the list of scene objects (StraightSegment2D) to partition.
+     * @param taus the values of tau, clamped to [0, 1] like the constructor does.
+     * @return the roots of the trees, in the order of the taus.
+     */
+    public List<BSPNode> buildTrees(List<StraightSegment2D> objects, double... taus) {
+        return buildTrees(objects, BuildContext.NONE, taus);
+    }
+
     /**
-     * Builds the BSP tree using Teller's heuristic.
+     * Builds the trees of several taus in one sweep, stopping if the context is cancelled,
+     * see {@link #buildTrees(List, double...)}. The context is checked before each region is split.
+     * 
+     * @param objects the list of scene objects (StraightSegment2D) to partition.
+     * @param context the build context of the sweep.
+     * @param taus the values of tau, clamped to [0, 1] like the constructor does.
+     * @return the roots of the trees, in the order of the taus.
+     * @throws BuildCancelledException if the sweep was stopped by the context.
+     */
+    public List<BSPNode> buildTrees(List<StraightSegment2D> objects, BuildContext context, double... taus) {
+        if (taus == null || taus.length == 0) {
+            throw new IllegalArgumentException("At least one tau value is required.");
+        }
+
+        double[] clamped = new double[taus.length];
+        int[] all = new int[taus.length];
+        for (int t = 0; t < taus.length; t++) {
+            clamped[t] = taus[t] < 0 ? 0 : taus[t] > 1 ? 1 : taus[t];
+            all[t] = t;
+        }
+
+        BSPNode[] roots = new BSPNode[taus.length];
+        BuildStatistics statistics = context.getStatistics();
+        if (statistics != null) {
+            statistics.recordInput(objects.size());
+        }
+        sweep(objects, null, clamped, all, roots, 0, context);
+        return Arrays.asList(roots);
+    }
+
+    /**
+     * Builds the subtrees of a region for a group of taus, stored in {@code out} at the index of each tau.
+     * The statistics of the sweep, if any, count a region split by several lines once per line.
+     */
+    private void sweep(List<StraightSegment2D> objects, Line2D parentLine, double[] taus, int[] group, BSPNode[] out,
+            int depth, BuildContext context) {
+        BuildStatistics statistics = context.getStatistics();
+
+        // Base case: if 0 or 1 object, create a leaf.
+        if (objects.size() <= 1) {
+            BSPNode leaf = new BSPNode(new ArrayList<>(objects));
+            for (int t : group) {
+                out[t] = leaf;
+            }
+            if (statistics != null) {
+                statistics.recordLeaf(objects.size());
+            }
+            return;
+        }
+
+        // Group the taus by the line they select, in the order of the taus.
+        context.checkpoint();
+        long start = statistics != null ? System.nanoTime() : 0;
+        BuildStatistics outer = BuildStatistics.enter(statistics);
+        List<TellerCandidate> candidates;
+        try {
+            candidates = evaluateCandidatesTeller(objects, parentLine);
+        } finally {
+            BuildStatistics.exit(statistics, outer);
+        }
+        long scoringNanos = statistics != null ? System.nanoTime() - start : 0;
+        Map<TellerCandidate, List<Integer>> choices = new LinkedHashMap<>();
+        for (int t : group) {
+            TellerCandidate chosen = candidates.isEmpty() ? null : selectTellerCandidate(candidates, taus[t]);
+            choices.computeIfAbsent(chosen, c -> new ArrayList<>()).add(t);
+        }
+
+        boolean first = true;
+        for (Map.Entry<TellerCandidate, List<Integer>> choice : choices.entrySet()) {
+            Line2D bestLine = choice.getKey() == null ? objects.get(0).getSupportLine() : choice.getKey().supportLine;
+            int[] subgroup = choice.getValue().stream().mapToInt(Integer::intValue).toArray();
+
+            start = statistics != null ? System.nanoTime() : 0;
+            outer = BuildStatistics.enter(statistics);
+            PartitionResult partition;
+            try {
+                partition = partitionObjects(objects, bestLine);
+            } finally {
+                BuildStatistics.exit(statistics, outer);
+            }
+            if (statistics != null) {
+                if (!first) {
+                    statistics.recordInput(objects.size());
+                }
+                // The scoring is shared by the lines of the region, it is counted with the first one.
+                long nanos = System.nanoTime() - start + (first ? scoringNanos : 0);
+                statistics.recordSplit(depth, nanos, objects.size(), partition.coplanarList.size(),
+                    partition.negativeList.size(), partition.positiveList.size(), isFreeSplit(partition.coplanarList, parentLine));
+            }
+            first = false;
+
+            BSPNode[] lefts = new BSPNode[taus.length];
+            BSPNode[] rights = new BSPNode[taus.length];
+            sweep(partition.negativeList, bestLine, taus, subgroup, lefts, depth + 1, context);
+            sweep(partition.positiveList, bestLine, taus, subgroup, rights, depth + 1, context);
+
+            // One node per distinct pair of subtrees.
+            List<BSPNode> nodes = new ArrayList<>();
+            for (int t : subgroup) {
+                BSPNode node = null;
+                for (BSPNode existing : nodes) {
+                    if (existing.getLeft() == lefts[t] && existing.getRight() == rights[t]) {
+                        node = existing;
+                        break;
+                    }
+                }
+                if (node == null) {
+                    node = new BSPNode(bestLine);
+                    node.getCoplanarObjects().addAll(partition.coplanarList);
+                    node.setLeft(lefts[t]);
+                    node.setRight(rights[t]);
+                    nodes.add(node);
+                }
+                out[t] = node;
+            }
+        }
+    }
+
+    /**
+     * Chooses the splitting line using Teller's heuristic.
      * 
      * @param objects the list of scene objects (StraightSegment2D)
      * @param parentLine the parent's splitting line (null for root)
-     * @return the BSP tree node representing the region.
+     * @return the splitting line.
      */
     @Override
-    public BSPNode buildTree(List<StraightSegment2D> objects, Line2D parentLine) {
-
-        // Base case: if 0 or 1 object, create a leaf.
-        if (objects == null || objects.isEmpty() || objects.size() <= 1) {
-            return new BSPNode(new ArrayList<>(objects));
+    protected Line2D selectSplittingLine(List<StraightSegment2D> objects, Line2D parentLine) {
+        if (branchAndBound) {
+            BoundedScoring scoring = prepareBoundedScoring(objects, parentLine, true);
+            if (scoring.isApplicable()) {
+                return scoring.selectTeller(tau, this::forEachCandidate);
+            }
         }
         
         // Evaluate Teller candidates.
         List<TellerCandidate> candidates = evaluateCandidatesTeller(objects, parentLine);
-        Line2D bestLine;
 
         if (candidates.isEmpty()) {
-            bestLine = objects.get(0).getSupportLine();
-        } 
-        else {
-            // Partition candidates into two groups:
-            // Group A: candidates with sigma >= tau.
-            List<TellerCandidate> groupA = new ArrayList<>();
-            List<TellerCandidate> groupB = new ArrayList<>();
-
-            for (TellerCandidate cand : candidates) {
-                if (cand.sigma >= tau) {
-                    groupA.add(cand);
-                } else {
-                    groupB.add(cand);
-                }
+            return objects.get(0).getSupportLine();
+        }
+        return selectTellerCandidate(candidates, tau).supportLine;
+    }
+
+    /**
+     * Chooses the splitting line using Teller's heuristic, scanning the segment store.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line (null for root)
+     * @return the splitting line.
+     */
+    @Override
+    protected Line2D selectSplittingLine(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        if (branchAndBound) {
+            BoundedScoring scoring = prepareBoundedScoring(store, indices, from, to, parentLine, true);
+            if (scoring.isApplicable()) {
+                return scoring.selectTeller(tau, this::forEachCandidate);
             }
+        }
 
-            // Select best candidate based on group.
-            if (!groupA.isEmpty()) {
-                // Select candidate with maximum sigma.
-                TellerCandidate best = groupA.get(0);
-                for (TellerCandidate cand : groupA) {
-                    if (cand.sigma > best.sigma) {
-                        best = cand;
-                    }
-                }
-                bestLine = best.supportLine;
+        List<TellerCandidate> candidates = evaluateCandidatesTeller(store, indices, from, to, parentLine);
+
+        if (candidates.isEmpty()) {
+            return store.getSupportLine(indices[from]);
+        }
+        return selectTellerCandidate(candidates, tau).supportLine;
+    }
+
+    /**
+     * Selects the best of a non-empty list of candidates.
+     * Candidates with sigma >= tau are preferred, with the maximal sigma; otherwise the
+     * candidate cutting the fewest objects is chosen. Ties go to the candidate with the most
+     * collinear objects, then to the first one. The collinear objects are only a tie-break: they
+     * are never cut by their line, so f and sigma already count them.
+     * 
+     * @param candidates the evaluated candidates.
+     * @param tau the threshold for sigma.
+     * @return the selected candidate.
+     */
+    private static TellerCandidate selectTellerCandidate(List<TellerCandidate> candidates, double tau) {
+        // Partition candidates into two groups:
+        // Group A: candidates with sigma >= tau.
+        List<TellerCandidate> groupA = new ArrayList<>();
+        List<TellerCandidate> groupB = new ArrayList<>();
+
+        for (TellerCandidate cand : candidates) {
+            if (cand.sigma >= tau) {
+                groupA.add(cand);
             } else {
-                // Select candidate with minimum f_d.
-                TellerCandidate best = groupB.get(0);
-                for (TellerCandidate cand : groupB) {
-                    if (cand.f < best.f) {
-                        best = cand;
-                    }
+                groupB.add(cand);
+            }
+        }
+
+        // Select best candidate based on group.
+        if (!groupA.isEmpty()) {
+            // Select candidate with maximum sigma.
+            TellerCandidate best = groupA.get(0);
+            for (TellerCandidate cand : groupA) {
+                if (cand.sigma > best.sigma || (cand.sigma == best.sigma && cand.collinearCount > best.collinearCount)) {
+                    best = cand;
                 }
-                bestLine = best.supportLine;
             }
+            return best;
+        } else {
+            // Select candidate with minimum f_d.
+            TellerCandidate best = groupB.get(0);
+            for (TellerCandidate cand : groupB) {
+                if (cand.f < best.f || (cand.f == best.f && cand.collinearCount > best.collinearCount)) {
+                    best = cand;
+                }
+            }
+            return best;
         }
-        
-        // Create current node with chosen splitting line.
-        BSPNode node = new BSPNode(bestLine);
-        
-        // Partition the objects.
-        PartitionResult partition = partitionObjects(objects, bestLine);
-        node.getCoplanarObjects().addAll(partition.coplanarList);
-        
-        // Recursively build subtrees, passing bestLine as parent's line for continuity.
-        node.setLeft(buildTree(partition.negativeList, bestLine));
-        node.setRight(buildTree(partition.positiveList, bestLine));
-        
-        return node;
     }
 
     /**
@@ -109,42 +292,136 @@ public class TellerBSPTreeBuilder extends BSPTreeBuilder {
      * For each object in the current region, its support line is considered.
      * f (the number of objects cut by that line) and sigma (the ratio f/|S|) are computed.
      * The candidate is only accepted if it touches the parent's splitting line (if defined).
+     * If sampling is enabled and the node is large enough, only a sample of the candidates is
+     * considered, and f and sigma are estimated on a sample of the objects.
+     * If line interning is enabled, there is one candidate per distinct support line.
      * 
      * @param objects the list of objects.
      * @param parentLine the parent's splitting line, or null.
      * @return a list of TellerCandidate objects.
      */
     private List<TellerCandidate> evaluateCandidatesTeller(List<StraightSegment2D> objects, Line2D parentLine) {
-        List<TellerCandidate> candidates = new ArrayList<>();
-        int total = objects.size();
+        List<StraightSegment2D> candidateObjects = objects;
+        List<StraightSegment2D> scoredObjects = objects;
+        if (sampling != null && sampling.appliesTo(objects.size())) {
+            SplittableRandom random = sampling.randomFor(objects);
+            candidateObjects = CandidateSampling.sample(objects, sampling.getCandidateSamples(), random);
+            scoredObjects = CandidateSampling.sample(objects, sampling.getCenterSamples(), random);
+        }
 
-        for (StraightSegment2D obj : objects) {
-            Line2D candidateLine = obj.getSupportLine();
+        // Support lines of the candidates, merged if interning is enabled.
+        SupportLines lines = new SupportLines(lineInterning, candidateObjects.size());
+        for (StraightSegment2D obj : candidateObjects) {
+            lines.add(obj.getStart().x, obj.getStart().y, obj.getEnd().x, obj.getEnd().y);
+        }
 
-            // Skip if candidateLine does not intersect parentLine (Parallel or coincident).
-            if (parentLine != null && !candidateLine.intersect(parentLine)) {
-                continue;
-            }
+        // Skip the lines that do not intersect parentLine (Parallel or coincident).
+        int[] accepted = acceptedLines(lines, parentLine, true);
+        TellerCandidate[] candidates = new TellerCandidate[accepted.length];
+        List<StraightSegment2D> others = scoredObjects;
+        int total = others.size();
+
+        SegmentBatch batch = lineKernel != null && accepted.length > 0 ? SegmentBatch.of(others) : null;
+
+        forEachCandidate(candidates.length, total, i -> {
+            Line2D candidateLine = lines.getLine(accepted[i]);
             
             // Count f: number of objects cut by candidateLine.
             int f = 0;
-            for (StraightSegment2D other : objects) {
-                // Determine if other is cut by candidateLine by checking endpoints.
-                double evalLeft = candidateLine.evaluate(other.getLeftEndpoint());
-                double evalRight = candidateLine.evaluate(other.getRightEndpoint());
-
-                // If the endpoints are on different sides of the line, the segment is cut. (left and right have different signs)
-                if (evalLeft * evalRight < -EPSILON) {
-                    f++;
+            if (batch != null) {
+                f = lineKernel.countCuts(candidateLine.getA(), candidateLine.getB(), candidateLine.getC(),
+                                         batch.x1, batch.y1, batch.x2, batch.y2, 0, batch.size, EPSILON);
+            } else {
+                for (StraightSegment2D other : others) {
+                    // Determine if other is cut by candidateLine by checking endpoints.
+                    double evalLeft = candidateLine.evaluate(other.getLeftEndpoint());
+                    double evalRight = candidateLine.evaluate(other.getRightEndpoint());
+
+                    // If the endpoints are on different sides of the line, the segment is cut. (left and right have different signs)
+                    if (evalLeft * evalRight < -EPSILON) {
+                        f++;
+                    }
                 }
             }
 
             // Compute sigma: ratio f / |S|.
             double sigma = (double) f / total;
 
-            candidates.add(new TellerCandidate(candidateLine, f, sigma));
+            candidates[i] = new TellerCandidate(candidateLine, f, sigma, lines.getCount(accepted[i]));
+        });
+        // Both endpoints of every scored object.
+        countLineEvaluations(2L * candidates.length * total);
+        return Arrays.asList(candidates);
+    }
+
+    /**
+     * Evaluates Teller candidates of a region of a segment store.
+     * Candidates, f, sigma and sampling are the same as {@link #evaluateCandidatesTeller(List, Line2D)}.
+     * 
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position of the region in the array (inclusive).
+     * @param to the last position of the region in the array (exclusive).
+     * @param parentLine the parent's splitting line, or null.
+     * @return a list of TellerCandidate objects.
+     */
+    private List<TellerCandidate> evaluateCandidatesTeller(SegmentStore store, int[] indices, int from, int to, Line2D parentLine) {
+        int[] candidateIndices = indices;
+        int candidateFrom = from;
+        int candidateTo = to;
+        int[] scoredIndices = indices;
+        int scoredFrom = from;
+        int scoredTo = to;
+        if (sampling != null && sampling.appliesTo(to - from)) {
+            SplittableRandom random = sampling.randomFor(store, indices, from, to);
+            candidateIndices = CandidateSampling.sample(indices, from, to, sampling.getCandidateSamples(), random);
+            candidateFrom = 0;
+            candidateTo = candidateIndices.length;
+            scoredIndices = CandidateSampling.sample(indices, from, to, sampling.getCenterSamples(), random);
+            scoredFrom = 0;
+            scoredTo = scoredIndices.length;
         }
-        return candidates;
+
+        // Support lines of the candidates, merged if interning is enabled.
+        SupportLines lines = new SupportLines(lineInterning, candidateTo - candidateFrom);
+        for (int c = candidateFrom; c < candidateTo; c++) {
+            int index = candidateIndices[c];
+            lines.add(store.getX1(index), store.getY1(index), store.getX2(index), store.getY2(index));
+        }
+
+        int[] accepted = acceptedLines(lines, parentLine, true);
+        TellerCandidate[] candidates = new TellerCandidate[accepted.length];
+        int[] others = scoredIndices;
+        int othersFrom = scoredFrom;
+        int othersTo = scoredTo;
+        int total = othersTo - othersFrom;
+
+        SegmentBatch batch = lineKernel != null && accepted.length > 0 ? SegmentBatch.of(store, others, othersFrom, othersTo) : null;
+
+        forEachCandidate(candidates.length, total, i -> {
+            Line2D candidateLine = lines.getLine(accepted[i]);
+
+            // Count f: number of objects whose endpoints are on different sides of candidateLine.
+            int f = 0;
+            if (batch != null) {
+                f = lineKernel.countCuts(candidateLine.getA(), candidateLine.getB(), candidateLine.getC(),
+                                         batch.x1, batch.y1, batch.x2, batch.y2, 0, batch.size, EPSILON);
+            } else {
+                for (int o = othersFrom; o < othersTo; o++) {
+                    int other = others[o];
+                    double evalStart = candidateLine.evaluate(store.getX1(other), store.getY1(other));
+                    double evalEnd = candidateLine.evaluate(store.getX2(other), store.getY2(other));
+
+                    if (evalStart * evalEnd < -EPSILON) {
+                        f++;
+                    }
+                }
+            }
+
+            candidates[i] = new TellerCandidate(candidateLine, f, (double) f / total, lines.getCount(accepted[i]));
+        });
+        countLineEvaluations(2L * candidates.length * total);
+        return Arrays.asList(candidates);
     }
 
     /**
@@ -154,11 +431,13 @@ public class TellerBSPTreeBuilder extends BSPTreeBuilder {
         public final Line2D supportLine;
         public final int f;         // Number of objects cut by this support line.
         public final double sigma;  // Ratio f / |S|
+        public final int collinearCount; // Number of objects of the node lying on this support line, only breaks ties.
         
-        public TellerCandidate(Line2D supportLine, int f, double sigma) {
+        public TellerCandidate(Line2D supportLine, int f, double sigma, int collinearCount) {
             this.supportLine = supportLine;
             this.f = f;
             this.sigma = sigma;
+            this.collinearCount = collinearCount;
         }
     }
 }
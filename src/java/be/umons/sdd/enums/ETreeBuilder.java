@@ -1,6 +1,8 @@
 package be.umons.sdd.enums;
 
+import be.umons.sdd.builders.AutopartitionBSPTreeBuilder;
 import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.CostModelBSPTreeBuilder;
 import be.umons.sdd.builders.DeterministicBSPTreeBuilder;
 import be.umons.sdd.builders.RandomBSPTreeBuilder;
 import be.umons.sdd.builders.TellerBSPTreeBuilder;
@@ -12,7 +14,9 @@ public enum ETreeBuilder {
     SELECT_BUILDER("Select a Builder", null),
     DETERMINISTIC("Deterministic", new DeterministicBSPTreeBuilder()),
     RANDOM("Random", new RandomBSPTreeBuilder()),
-    TELLER("Teller", new TellerBSPTreeBuilder(0.5));
+    TELLER("Teller", new TellerBSPTreeBuilder(0.5)),
+    AUTOPARTITION("Autopartition", new AutopartitionBSPTreeBuilder()),
+    COST_MODEL("Cost Model", new CostModelBSPTreeBuilder());
 
 
     private final String displayName;
@@ -0,0 +1,79 @@
+package be.umons.sdd.interfaces;
+
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.StraightSegment2D;
+import java.awt.Color;
+
+/**
+ * Read access to a BSP tree stored as indexed nodes and fragments, without {@link be.umons.sdd.models.BSPNode} objects.
+ *
+ * <p> Node 0 is the root. An internal node has a partition line and up to two children, a leaf has none;
+ * the objects of a node (its coplanar objects, or the objects of a leaf) are the fragments with indices in
+ * [{@link #getFragmentsFrom(int)}, {@link #getFragmentsTo(int)}). Implementations are immutable, so they
+ * can be read by several threads. See {@link be.umons.sdd.models.FlatBSPTree} for the layout on the heap.
+ */
+public interface BSPTreeStore {
+
+    /**
+     * Index of a missing child.
+     */
+    int NO_CHILD = -1;
+
+    int getNodeCount();
+    int getFragmentCount();
+
+    boolean isLeaf(int node);
+    int getLeft(int node);
+    int getRight(int node);
+    int getFragmentsFrom(int node);
+    int getFragmentsTo(int node);
+
+    // Coefficients of the partition line a*x + b*y + c = 0 of an internal node, NaN for a leaf.
+    double getA(int node);
+    double getB(int node);
+    double getC(int node);
+
+    /**
+     * Evaluates the partition line of an internal node at the point (x, y), as {@link be.umons.sdd.models.Line2D#evaluate(double, double)}.
+     * @param node the index of the node
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return a signed distance value
+     */
+    double evaluate(int node, double x, double y);
+
+    double getX1(int fragment);
+    double getY1(int fragment);
+    double getX2(int fragment);
+    double getY2(int fragment);
+    Color getColor(int fragment);
+
+    /**
+     * Creates the StraightSegment2D of a fragment.
+     * @param fragment the index of the fragment
+     * @return a new segment with the same coordinates and color
+     */
+    default StraightSegment2D getSegment(int fragment) {
+        return new StraightSegment2D(new Point2D(getX1(fragment), getY1(fragment)), new Point2D(getX2(fragment), getY2(fragment)), getColor(fragment));
+    }
+
+    /**
+     * Finds the node whose region contains a point, descending from the root to the side of each partition
+     * line the point lies on (the positive side if it lies on the line). The descent stops at a leaf, or at
+     * an internal node without a child on that side.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the index of the node
+     */
+    default int locate(double x, double y) {
+        int node = 0;
+        while (!isLeaf(node)) {
+            int child = evaluate(node, x, y) >= 0 ? getRight(node) : getLeft(node);
+            if (child == NO_CHILD) {
+                break;
+            }
+            node = child;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,35 @@
+package be.umons.sdd.interfaces;
+
+import be.umons.sdd.models.Line2D;
+import be.umons.sdd.models.SegmentStore;
+
+/**
+ * Receives the nodes of a BSP tree built on a {@link SegmentStore}, see
+ * {@link be.umons.sdd.builders.BSPTreeBuilder#buildTree(SegmentStore, Line2D, be.umons.sdd.builders.BuildContext, BSPTreeWriter)}.
+ * The writer decides how the tree is stored: linked {@link be.umons.sdd.models.BSPNode} objects, or records
+ * written straight to their storage without creating any node object.
+ *
+ * <p> Nodes are added in depth-first order, a node before its children and its negative subtree before its
+ * positive one, which is the layout of {@link be.umons.sdd.models.FlatBSPTree}. A child is linked to its
+ * parent right after it is added.
+ *
+ * @param <N> the type of the nodes of the written tree.
+ */
+public interface BSPTreeWriter<N> {
+
+    /**
+     * Adds a node whose objects are the segments of a store with indices in {@code indices[from..to)}.
+     * The builder does not modify the array range afterwards, so the node can reference it instead of copying it.
+     *
+     * @param partition the splitting line, or null for a leaf.
+     * @param store the store holding the objects.
+     * @param indices the array of segment indices.
+     * @param from the first position in the array (inclusive).
+     * @param to the last position in the array (exclusive).
+     * @return the added node.
+     */
+    N addNode(Line2D partition, SegmentStore store, int[] indices, int from, int to);
+
+    void setLeft(N node, N child);
+    void setRight(N node, N child);
+}
@@ -0,0 +1,18 @@
+package be.umons.sdd.interfaces;
+
+import be.umons.sdd.builders.BuildProgress;
+
+/**
+ * Receives the progress of a tree build, sent by a {@link be.umons.sdd.builders.BuildProgressTracker}.
+ * Reports are sent from the threads of the build, at most once per report interval, and once more
+ * when the build is finished.
+ */
+public interface BuildProgressObserver {
+
+    /**
+     * Called with the progress of the build.
+     *
+     * @param progress the progress, or null if the current tree was not built (e.g. it was cached).
+     */
+    void onBuildProgress(BuildProgress progress);
+}
@@ -0,0 +1,32 @@
+package be.umons.sdd.interfaces;
+
+/**
+ * Evaluates one line a*x + b*y + c = 0 against a batch of points or segments stored in primitive arrays.
+ * Implementations must give exactly the same counts as evaluating the points one by one with
+ * {@link be.umons.sdd.models.Line2D#evaluate(double, double)}, and must be thread-safe.
+ */
+public interface LineKernel {
+
+    /**
+     * Counts the points (xs[i], ys[i]) for i in [from, to) on each side of the line.
+     * A point is positive if its value is above epsilon, negative if it is below -epsilon and coplanar otherwise.
+     *
+     * @param counts receives the number of positive, negative and coplanar points, in this order.
+     */
+    void countSides(double a, double b, double c, double[] xs, double[] ys, int from, int to, double epsilon, int[] counts);
+
+    /**
+     * Counts the segments from (x1[i], y1[i]) to (x2[i], y2[i]) for i in [from, to) cut by the line,
+     * that is the segments for which the product of the values of the endpoints is below -epsilon.
+     *
+     * @return the number of cut segments.
+     */
+    int countCuts(double a, double b, double c, double[] x1, double[] y1, double[] x2, double[] y2, int from, int to, double epsilon);
+
+    /**
+     * Returns the name of this kernel, e.g. "scalar".
+     *
+     * @return the name of the kernel.
+     */
+    String getName();
+}
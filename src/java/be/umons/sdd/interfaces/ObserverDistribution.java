@@ -0,0 +1,23 @@
+package be.umons.sdd.interfaces;
+
+import be.umons.sdd.models.Line2D;
+
+/**
+ * Probability distribution of the observer positions the painter's algorithm is run from.
+ * Implementations must be thread-safe.
+ *
+ * <p> The string form of a distribution is part of the configuration of the builders using it
+ * (see {@link be.umons.sdd.builders.BSPTreeBuilder#getConfiguration()}), which keys the cached trees:
+ * it must describe the distribution, so that equal distributions give equal strings.
+ */
+public interface ObserverDistribution {
+
+    /**
+     * Returns the probability that the observer lies in the positive half-plane of a line,
+     * where {@link Line2D#evaluate(double, double)} is positive.
+     *
+     * @param line the line.
+     * @return the probability, in [0, 1].
+     */
+    double positiveMass(Line2D line);
+}
@@ -0,0 +1,31 @@
+package be.umons.sdd.interfaces;
+
+/**
+ * BSP tree whose nodes and fragments are stored outside of the Java heap, see {@link be.umons.sdd.models.OffHeapBSPTrees}.
+ *
+ * <p> The memory is held until the tree is closed: reading a closed tree throws an IllegalStateException.
+ * A tree should not be closed while other threads read it: depending on the timing, the reads or the close
+ * fail with an IllegalStateException, but freed memory is never read.
+ */
+public interface OffHeapBSPTree extends BSPTreeStore, AutoCloseable {
+
+    /**
+     * Returns the number of bytes allocated outside of the heap for the tree.
+     *
+     * @return the allocated size, in bytes.
+     */
+    long getByteSize();
+
+    /**
+     * Returns true until the tree is closed.
+     *
+     * @return true if the tree can be read.
+     */
+    boolean isOpen();
+
+    /**
+     * Frees the memory of the tree. Closing a closed tree does nothing.
+     */
+    @Override
+    void close();
+}
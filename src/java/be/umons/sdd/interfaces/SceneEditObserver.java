@@ -0,0 +1,12 @@
+package be.umons.sdd.interfaces;
+
+import be.umons.sdd.models.StraightSegment2D;
+
+/**
+ * Receives the segments added to or removed from the current scene by the user,
+ * see {@link be.umons.sdd.panels.SceneVisualizerPanel}.
+ */
+public interface SceneEditObserver {
+    void onSegmentAdded(StraightSegment2D segment);
+    void onSegmentRemoved(StraightSegment2D segment);
+}
@@ -1,18 +1,37 @@
 package be.umons.sdd.models;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Represents a node in a BSP tree.
  * An internal node contains a partition line and pointers to left (negative side)
  * and right (positive side) subtrees. A leaf stores a list of objects.
+ *
+ * <p> A node can be lazy (see {@link #lazy(Supplier)}): its region is only partitioned when the node
+ * is first accessed. The expansion is synchronized, as the creation of the objects of a node built on a
+ * {@link SegmentStore}, so lazy and store-backed trees can be read by concurrent threads.
  */
 public class BSPNode {
-    private final Line2D partition;
-    private BSPNode left;   // Corresponds to the negative half-plane (d⁻)
-    private BSPNode right;  // Corresponds to the positive half-plane (d⁺)
-    private final List<StraightSegment2D> coplanarObjects; // Objects lying entirely on the partition
+    private Line2D partition;
+    // Children are volatile so that subtrees linked by a refinement are seen complete by other threads.
+    private volatile BSPNode left;   // Corresponds to the negative half-plane (d⁻)
+    private volatile BSPNode right;  // Corresponds to the positive half-plane (d⁺)
+    // Objects lying entirely on the partition. Volatile so that the objects of a store-backed node,
+    // created on first access, are seen complete by other threads.
+    private volatile List<StraightSegment2D> coplanarObjects;
+
+    // Objects of a node built on a SegmentStore, materialized on first access.
+    private SegmentStore store;
+    private int[] storeIndices;
+    private int storeFrom;
+    private int storeTo;
+
+    // Expansion of a lazy node, null once the node is expanded (or if it is not lazy).
+    private volatile Supplier<BSPNode> expansion;
     
     /**
      * Constructs an internal node with the given partition line.
@@ -32,47 +51,158 @@ public class BSPNode {
         this.coplanarObjects = objects;
     }
     
+    /**
+     * Constructs a node whose objects are the segments of a store with indices in
+     * {@code indices[from..to)}. The segments are only created when the objects are first
+     * requested, so the array range must not be modified afterwards.
+     * @param partition the splitting line, or null for a leaf
+     * @param store the store holding the objects
+     * @param indices the array of segment indices
+     * @param from the first position in the array (inclusive)
+     * @param to the last position in the array (exclusive)
+     */
+    public BSPNode(Line2D partition, SegmentStore store, int[] indices, int from, int to) {
+        this.partition = partition;
+        this.store = store;
+        this.storeIndices = indices;
+        this.storeFrom = from;
+        this.storeTo = to;
+    }
+    
+    /**
+     * Constructs a lazy node: the node is replaced by the node returned by {@code expansion}
+     * (with its partition, objects and children) the first time any of them is accessed.
+     * The expansion is called at most once, even by concurrent readers.
+     * @param expansion the function partitioning the region of the node
+     * @return the lazy node
+     */
+    public static BSPNode lazy(Supplier<BSPNode> expansion) {
+        BSPNode node = new BSPNode((Line2D) null);
+        node.coplanarObjects = null;
+        node.expansion = expansion;
+        return node;
+    }
+
+    /**
+     * Returns true if this node is not lazy or has been expanded.
+     * Unlike the other accessors, this does not expand the node.
+     * @return true if the partition, objects and children of this node are known
+     */
+    public boolean isExpanded() {
+        return expansion == null;
+    }
+
+    private void ensureExpanded() {
+        if (expansion != null) {
+            expand();
+        }
+    }
+
+    private synchronized void expand() {
+        Supplier<BSPNode> pending = expansion;
+        if (pending == null) {
+            return;
+        }
+
+        BSPNode expanded = pending.get();
+        partition = expanded.getPartition();
+        coplanarObjects = expanded.getCoplanarObjects();
+        left = expanded.left;
+        right = expanded.right;
+        // Written last: readers seeing a null expansion see the fields above.
+        expansion = null;
+    }
+
     public Line2D getPartition() {
+        ensureExpanded();
         return partition;
     }
     
     public BSPNode getLeft() {
+        ensureExpanded();
         return left;
     }
     
     public BSPNode getRight() {
+        ensureExpanded();
         return right;
     }
     
     public void setLeft(BSPNode left) {
+        ensureExpanded();
         this.left = left;
     }
     
     public void setRight(BSPNode right) {
+        ensureExpanded();
         this.right = right;
     }
     
     public List<StraightSegment2D> getCoplanarObjects() {
+        ensureExpanded();
+        List<StraightSegment2D> objects = coplanarObjects;
+        return objects != null ? objects : createStoreObjects();
+    }
+
+    private synchronized List<StraightSegment2D> createStoreObjects() {
+        if (coplanarObjects == null) {
+            List<StraightSegment2D> objects = store.getSegments(storeIndices, storeFrom, storeTo);
+            store = null;
+            storeIndices = null;
+            // Written last: readers seeing the list do not need the store anymore.
+            coplanarObjects = objects;
+        }
         return coplanarObjects;
     }
+
+    /**
+     * Returns the number of objects of this node, without creating them if they are stored in a SegmentStore.
+     * @return the number of objects lying on the partition (or in the leaf)
+     */
+    public int getCoplanarCount() {
+        ensureExpanded();
+        List<StraightSegment2D> objects = coplanarObjects;
+        return objects != null ? objects.size() : storeTo - storeFrom;
+    }
     
     public boolean isLeaf() {
+        ensureExpanded();
         return partition == null;
     }
 
+    /**
+     * Returns true if this node is a coarse leaf: a leaf holding several objects, left unsplit
+     * by an anytime build (see {@link be.umons.sdd.builders.BSPTreeBuilder#buildTree(List, Line2D, long)}).
+     * A lazy node that has not been expanded is not coarse, and is not expanded by this call.
+     * @return true if this leaf still has to be refined
+     */
+    public boolean isCoarse() {
+        return isExpanded() && isLeaf() && getCoplanarCount() > 1;
+    }
+
     
     /**
      * Returns the number of nodes in the subtree rooted at this node.
      * For a leaf node, the size is 1.
      * For an internal node, the size is 1 plus the sum of the sizes of its left and right subtrees.
+     * The tree is walked with an explicit stack, so deep trees do not overflow the thread stack.
+     * Lazy nodes are expanded: measuring a lazy tree builds all of it, as an eager build would.
      * @return the number of nodes in the subtree
      */
     public int size() {
-        if (isLeaf()) {
-            return 1;
-        } else {
-            return 1 + left.size() + right.size();
+        int size = 0;
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(this);
+
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            size++;
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
         }
+        return size;
     }
 
     /**
@@ -80,22 +210,56 @@ public class BSPNode {
      * For a leaf node, the height is 0.
      * For an internal node, the height is 1 plus the maximum of the heights
      * of its left and right subtrees.
+     * The tree is walked level by level, so deep trees do not overflow the thread stack.
+     * Lazy nodes are expanded, as by {@link #size()}.
      * @return the height of the subtree
      */
     public int height() {
-        if (isLeaf()) {
-            return 0;
-        } else {
-            return 1 + Math.max(left.height(), right.height());
+        int height = -1;
+        Deque<BSPNode> level = new ArrayDeque<>();
+        level.add(this);
+
+        while (!level.isEmpty()) {
+            height++;
+            for (int i = level.size(); i > 0; i--) {
+                BSPNode node = level.poll();
+                if (!node.isLeaf()) {
+                    level.add(node.getLeft());
+                    level.add(node.getRight());
+                }
+            }
+        }
+        return height;
+    }
+    
+    /**
+     * Returns the number of fragments stored in the subtree rooted at this node.
+     * This is the number of segments of the scene once split by the partition lines.
+     * Lazy nodes are expanded, as by {@link #size()}.
+     * @return the number of fragments in the subtree
+     */
+    public int fragmentCount() {
+        int count = 0;
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(this);
+
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            count += node.getCoplanarCount();
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
         }
+        return count;
     }
     
     @Override
     public String toString() {
         if (isLeaf()) {
-            return "Leaf: " + coplanarObjects.toString();
+            return "Leaf: " + getCoplanarObjects().toString();
         } else {
-            return "Node(partition=" + partition + ")";
+            return "Node(partition=" + getPartition() + ")";
         }
     }
 }
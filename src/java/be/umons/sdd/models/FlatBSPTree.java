@@ -0,0 +1,157 @@
+package be.umons.sdd.models;
+
+import be.umons.sdd.interfaces.BSPTreeStore;
+import java.awt.Color;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, immutable BSP tree, stored in a few primitive arrays instead of linked {@link BSPNode} objects.
+ *
+ * <p> Nodes are identified by their index, the root being node 0, and are laid out in depth-first
+ * order with the negative child right after its parent:
+ * - the partition line of node i is (a, b, c) = planes[3i..3i+3), NaN for a leaf;
+ * - its negative and positive children are children[2i] and children[2i+1], {@link #NO_CHILD} if missing;
+ * - its objects (coplanar objects, or the objects of a leaf) are the fragments in [offsets[i], offsets[i+1]).
+ * Fragment j goes from (x1, y1) to (x2, y2) = coordinates[4j..4j+4), and its color is given by an id
+ * in the palette of the tree. The fragments of a subtree are contiguous.
+ *
+ * <p> A node takes 36 bytes and a fragment 36 bytes, against a node object, a line, a list and three
+ * objects per fragment for a BSPNode tree, and a traversal reads consecutive array elements instead of
+ * following references. Converting a tree expands its lazy nodes and creates the objects of its
+ * store-backed nodes (see {@link #of(BSPNode)}).
+ */
+public final class FlatBSPTree implements BSPTreeStore {
+
+    private final double[] planes;
+    private final int[] children;
+    private final int[] offsets;
+    private final double[] coordinates;
+    private final int[] colorIds;
+    private final Color[] palette;
+
+    private FlatBSPTree(double[] planes, int[] children, int[] offsets, double[] coordinates, int[] colorIds, Color[] palette) {
+        this.planes = planes;
+        this.children = children;
+        this.offsets = offsets;
+        this.coordinates = coordinates;
+        this.colorIds = colorIds;
+        this.palette = palette;
+    }
+
+    /**
+     * Flattens a BSP tree. The tree is walked with an explicit stack, so deep trees do not overflow the thread stack.
+     * @param root the root of the tree
+     * @return the flattened tree, with the same lines and objects in the same order
+     */
+    public static FlatBSPTree of(BSPNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("The root of the tree cannot be null.");
+        }
+
+        int nodeCount = root.size();
+        int fragmentCount = root.fragmentCount();
+        double[] planes = new double[3 * nodeCount];
+        int[] children = new int[2 * nodeCount];
+        int[] offsets = new int[nodeCount + 1];
+        double[] coordinates = new double[4 * fragmentCount];
+        int[] colorIds = new int[fragmentCount];
+        List<Color> palette = new ArrayList<>();
+        Map<Color, Integer> paletteIds = new HashMap<>();
+
+        // Each pending node comes with the slot of its index in the children array (-1 for the root).
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        int[] slots = new int[nodeCount];
+        stack.push(root);
+        slots[0] = -1;
+        int node = 0;
+        int fragment = 0;
+
+        while (!stack.isEmpty()) {
+            BSPNode current = stack.pop();
+            int slot = slots[stack.size()];
+            if (slot >= 0) {
+                children[slot] = node;
+            }
+
+            offsets[node] = fragment;
+            for (StraightSegment2D segment : current.getCoplanarObjects()) {
+                coordinates[4 * fragment] = segment.getStart().x;
+                coordinates[4 * fragment + 1] = segment.getStart().y;
+                coordinates[4 * fragment + 2] = segment.getEnd().x;
+                coordinates[4 * fragment + 3] = segment.getEnd().y;
+                colorIds[fragment] = paletteIds.computeIfAbsent(segment.getColor(), color -> {
+                    palette.add(color);
+                    return palette.size() - 1;
+                });
+                fragment++;
+            }
+
+            children[2 * node] = NO_CHILD;
+            children[2 * node + 1] = NO_CHILD;
+            if (current.isLeaf()) {
+                planes[3 * node] = Double.NaN;
+                planes[3 * node + 1] = Double.NaN;
+                planes[3 * node + 2] = Double.NaN;
+            } else {
+                Line2D partition = current.getPartition();
+                planes[3 * node] = partition.getA();
+                planes[3 * node + 1] = partition.getB();
+                planes[3 * node + 2] = partition.getC();
+
+                // Pushed last, the negative child is the next node.
+                if (current.getRight() != null) {
+                    slots[stack.size()] = 2 * node + 1;
+                    stack.push(current.getRight());
+                }
+                if (current.getLeft() != null) {
+                    slots[stack.size()] = 2 * node;
+                    stack.push(current.getLeft());
+                }
+            }
+            node++;
+        }
+        offsets[node] = fragment;
+
+        return new FlatBSPTree(planes, children, offsets, coordinates, colorIds, palette.toArray(new Color[0]));
+    }
+
+    @Override
+    public int getNodeCount() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public int getFragmentCount() {
+        return colorIds.length;
+    }
+
+    @Override public boolean isLeaf(int node) { return Double.isNaN(planes[3 * node]); }
+    @Override public int getLeft(int node) { return children[2 * node]; }
+    @Override public int getRight(int node) { return children[2 * node + 1]; }
+    @Override public int getFragmentsFrom(int node) { return offsets[node]; }
+    @Override public int getFragmentsTo(int node) { return offsets[node + 1]; }
+    @Override public double getA(int node) { return planes[3 * node]; }
+    @Override public double getB(int node) { return planes[3 * node + 1]; }
+    @Override public double getC(int node) { return planes[3 * node + 2]; }
+
+    @Override
+    public double evaluate(int node, double x, double y) {
+        return planes[3 * node] * x + planes[3 * node + 1] * y + planes[3 * node + 2];
+    }
+
+    @Override public double getX1(int fragment) { return coordinates[4 * fragment]; }
+    @Override public double getY1(int fragment) { return coordinates[4 * fragment + 1]; }
+    @Override public double getX2(int fragment) { return coordinates[4 * fragment + 2]; }
+    @Override public double getY2(int fragment) { return coordinates[4 * fragment + 3]; }
+    @Override public Color getColor(int fragment) { return palette[colorIds[fragment]]; }
+
+    @Override
+    public String toString() {
+        return "FlatBSPTree[" + getNodeCount() + " nodes, " + getFragmentCount() + " fragments, " + palette.length + " colors]";
+    }
+}
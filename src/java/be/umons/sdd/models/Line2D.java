@@ -56,6 +56,16 @@ public class Line2D {
     public double evaluate(Point2D p) {
         return a * p.x + b * p.y + c;
     }
+
+    /**
+     * Evaluates the line equation at the point (x, y), without creating a point.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return a signed distance value (proportional to the distance)
+     */
+    public double evaluate(double x, double y) {
+        return a * x + b * y + c;
+    }
     
     /**
      * Checks if this line touches (i.e. intersects) the given other line.
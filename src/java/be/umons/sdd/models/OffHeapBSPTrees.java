@@ -0,0 +1,120 @@
+package be.umons.sdd.models;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.BuildContext;
+import be.umons.sdd.interfaces.BSPTreeStore;
+import be.umons.sdd.interfaces.OffHeapBSPTree;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creation of BSP trees stored outside of the Java heap.
+ *
+ * <p> The off-heap store uses the incubating foreign memory API (jdk.incubator.foreign). As the SIMD
+ * line kernel, its source is kept in a separate root (src/java-foreign) so that the application still
+ * compiles without the module; it is loaded by reflection and is only available when that root is
+ * compiled and the JVM is started with {@code --add-modules jdk.incubator.foreign} (as the benchmarks do).
+ */
+public final class OffHeapBSPTrees {
+
+    private static final String NATIVE_TREE_CLASS = "be.umons.sdd.models.NativeBSPTree";
+    private static final String FOREIGN_API_CLASS = "jdk.incubator.foreign.ResourceScope";
+
+    private OffHeapBSPTrees() {
+    }
+
+    /**
+     * Returns true if off-heap trees can be created.
+     *
+     * @return true if the foreign memory API and the store class are available.
+     */
+    public static boolean isAvailable() {
+        try {
+            loadNativeTree();
+            return true;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies a BSP tree outside of the heap. The tree is flattened first (see {@link FlatBSPTree#of(BSPNode)}),
+     * and the flattened copy can be collected once this returns. To store a new tree, {@link #build(BSPTreeBuilder, SegmentStore)}
+     * avoids the linked and the flattened copies.
+     *
+     * @param root the root of the tree.
+     * @return the off-heap tree, to close once it is not used anymore.
+     * @throws IllegalStateException if the foreign memory API or the store class is not available.
+     */
+    public static OffHeapBSPTree of(BSPNode root) {
+        return of(FlatBSPTree.of(root));
+    }
+
+    /**
+     * Copies a stored BSP tree outside of the heap, with the same node and fragment indices.
+     *
+     * @param tree the tree to copy.
+     * @return the off-heap tree, to close once it is not used anymore.
+     * @throws IllegalStateException if the foreign memory API or the store class is not available.
+     */
+    public static OffHeapBSPTree of(BSPTreeStore tree) {
+        if (tree == null) {
+            throw new IllegalArgumentException("The tree cannot be null.");
+        }
+        return invoke("of", new Class<?>[] { BSPTreeStore.class }, tree);
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store straight outside of the heap: the nodes and fragments
+     * are written to native memory as the builder creates them, without BSPNode objects nor a flattened copy
+     * (see {@link BSPTreeBuilder#buildTree(SegmentStore, Line2D, BuildContext, be.umons.sdd.interfaces.BSPTreeWriter)}).
+     * Apart from the store, the heap only holds the index buffers of the build.
+     *
+     * @param builder the builder partitioning the store.
+     * @param store the segments to partition, to which fragments are appended.
+     * @return the off-heap tree, to close once it is not used anymore.
+     * @throws IllegalStateException if the foreign memory API or the store class is not available.
+     */
+    public static OffHeapBSPTree build(BSPTreeBuilder builder, SegmentStore store) {
+        return build(builder, store, BuildContext.NONE);
+    }
+
+    /**
+     * Builds a BSP tree from all the segments of a store straight outside of the heap, stopping if the context
+     * is cancelled, see {@link #build(BSPTreeBuilder, SegmentStore)}.
+     *
+     * @param builder the builder partitioning the store.
+     * @param store the segments to partition, to which fragments are appended.
+     * @param context the build context of the build.
+     * @return the off-heap tree, to close once it is not used anymore.
+     * @throws IllegalStateException if the foreign memory API or the store class is not available.
+     * @throws be.umons.sdd.builders.BuildCancelledException if the build was stopped by the context.
+     */
+    public static OffHeapBSPTree build(BSPTreeBuilder builder, SegmentStore store, BuildContext context) {
+        if (builder == null || store == null || context == null) {
+            throw new IllegalArgumentException("The builder, the store and the context cannot be null.");
+        }
+        return invoke("build", new Class<?>[] { BSPTreeBuilder.class, SegmentStore.class, BuildContext.class }, builder, store, context);
+    }
+
+    private static OffHeapBSPTree invoke(String method, Class<?>[] parameterTypes, Object... arguments) {
+        try {
+            return (OffHeapBSPTree) loadNativeTree().getMethod(method, parameterTypes).invoke(null, arguments);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Unable to store the tree off-heap.", e.getCause());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("The off-heap store is not available, compile src/java-foreign and run with --add-modules jdk.incubator.foreign.", e);
+        }
+    }
+
+    // The store class can be loaded without the module, which is only needed once it is used.
+    private static Class<?> loadNativeTree() throws ClassNotFoundException {
+        Class.forName(FOREIGN_API_CLASS);
+        return Class.forName(NATIVE_TREE_CLASS);
+    }
+}
@@ -63,6 +63,43 @@ public class Scene2D {
         return extentY; 
     }
     
+    /**
+     * Creates a compact store holding the segments of the scene, in the same order.
+     * The store is new on every call, so builders can append fragments to it.
+     *
+     * @return a new {@link SegmentStore} with the segments of the scene.
+     */
+    public SegmentStore toSegmentStore() {
+        return SegmentStore.of(segments);
+    }
+
+    /**
+     * Computes a 64-bit hash of the content of the scene: its extents and the coordinates and
+     * colors of its segments, in order. Scenes with the same content have the same hash, whatever
+     * their name; the hash changes when a segment is added, removed or reordered.
+     *
+     * @return the content hash of the scene.
+     */
+    public long contentHash() {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, extentX);
+        hash = mix(hash, extentY);
+        for (StraightSegment2D segment : segments) {
+            hash = mix(hash, Double.doubleToLongBits(segment.getStart().x));
+            hash = mix(hash, Double.doubleToLongBits(segment.getStart().y));
+            hash = mix(hash, Double.doubleToLongBits(segment.getEnd().x));
+            hash = mix(hash, Double.doubleToLongBits(segment.getEnd().y));
+            hash = mix(hash, segment.getColor().getRGB());
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        // FNV-1a step on the whole value, then a multiply-xorshift so that every bit spreads.
+        hash = (hash ^ value) * 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
     /**
      * Creates and returns a copy of the current Scene2D object.
      * This method performs a deep copy of the list of StraightSegment2D objects.
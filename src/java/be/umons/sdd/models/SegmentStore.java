@@ -0,0 +1,249 @@
+package be.umons.sdd.models;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact storage of straight segments, as parallel arrays of primitive coordinates.
+ *
+ * <p> Segment i goes from (x1[i], y1[i]) to (x2[i], y2[i]), and its color is given by an id
+ * in the palette of the store. Segments are identified by their index and can only be appended,
+ * so the fragments created when splitting a segment are added at the end of the store.
+ * Compared to a list of {@link StraightSegment2D}, scans over the coordinates do not follow
+ * references and each segment takes 36 bytes instead of a hundred.
+ *
+ * <p> A store created from StraightSegment2D objects also keeps their origin (see {@link StraightSegment2D#getOrigin()}),
+ * one more reference per segment, so that the fragments it creates still know the segment of the scene they come from.
+ *
+ * <p> A store is not thread-safe: segments must not be added while other threads read it.
+ */
+public class SegmentStore {
+    private static final double EPSILON = 1e-6;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] x1;
+    private double[] y1;
+    private double[] x2;
+    private double[] y2;
+    private int[] colorIds;
+    private StraightSegment2D[] origins; // null until a StraightSegment2D is added
+    private int size;
+
+    private final List<Color> palette = new ArrayList<>();
+    private final Map<Color, Integer> paletteIds = new HashMap<>();
+
+    /**
+     * Constructs an empty store.
+     */
+    public SegmentStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty store able to hold the given number of segments before growing.
+     * @param capacity the initial capacity
+     */
+    public SegmentStore(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity cannot be negative.");
+        }
+
+        this.x1 = new double[capacity];
+        this.y1 = new double[capacity];
+        this.x2 = new double[capacity];
+        this.y2 = new double[capacity];
+        this.colorIds = new int[capacity];
+    }
+
+    /**
+     * Creates a store holding the given segments, in the same order.
+     * @param segments the segments to store
+     * @return the new store
+     */
+    public static SegmentStore of(List<StraightSegment2D> segments) {
+        // Leave room for the fragments created by a build.
+        SegmentStore store = new SegmentStore(segments.size() + segments.size() / 2 + 1);
+        for (StraightSegment2D segment : segments) {
+            store.add(segment);
+        }
+        return store;
+    }
+
+    /**
+     * Appends a segment.
+     * @param segment the segment to append
+     * @return the index of the segment
+     */
+    public int add(StraightSegment2D segment) {
+        int index = add(segment.getStart().x, segment.getStart().y, segment.getEnd().x, segment.getEnd().y, getColorId(segment.getColor()));
+        setOrigin(index, segment.getOrigin());
+        return index;
+    }
+
+    private void setOrigin(int index, StraightSegment2D origin) {
+        if (origins == null || origins.length < x1.length) {
+            origins = origins == null ? new StraightSegment2D[x1.length] : Arrays.copyOf(origins, x1.length);
+        }
+        origins[index] = origin;
+    }
+
+    /**
+     * Appends a segment given by its coordinates.
+     * @param x1 the x-coordinate of the start point
+     * @param y1 the y-coordinate of the start point
+     * @param x2 the x-coordinate of the end point
+     * @param y2 the y-coordinate of the end point
+     * @param colorId the id of the color in the palette
+     * @return the index of the segment
+     */
+    public int add(double x1, double y1, double x2, double y2, int colorId) {
+        if (colorId < 0 || colorId >= palette.size()) {
+            throw new IllegalArgumentException("Unknown color id: " + colorId);
+        }
+
+        if (size == this.x1.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            this.x1 = Arrays.copyOf(this.x1, capacity);
+            this.y1 = Arrays.copyOf(this.y1, capacity);
+            this.x2 = Arrays.copyOf(this.x2, capacity);
+            this.y2 = Arrays.copyOf(this.y2, capacity);
+            this.colorIds = Arrays.copyOf(this.colorIds, capacity);
+        }
+
+        this.x1[size] = x1;
+        this.y1[size] = y1;
+        this.x2[size] = x2;
+        this.y2[size] = y2;
+        this.colorIds[size] = colorId;
+        return size++;
+    }
+
+    /**
+     * Returns the id of a color, adding it to the palette if needed.
+     * @param color the color
+     * @return the id of the color
+     */
+    public int getColorId(Color color) {
+        Integer id = paletteIds.get(color);
+        if (id == null) {
+            id = palette.size();
+            palette.add(color);
+            paletteIds.put(color, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of segments in the store.
+     * @return the number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    public double getX1(int index) { return x1[index]; }
+    public double getY1(int index) { return y1[index]; }
+    public double getX2(int index) { return x2[index]; }
+    public double getY2(int index) { return y2[index]; }
+    public double getCenterX(int index) { return (x1[index] + x2[index]) / 2.0; }
+    public double getCenterY(int index) { return (y1[index] + y2[index]) / 2.0; }
+    public int getColorId(int index) { return colorIds[index]; }
+    public Color getColor(int index) { return palette.get(colorIds[index]); }
+
+    /**
+     * Returns the support line of a segment, identical to {@link StraightSegment2D#getSupportLine()}.
+     * @param index the index of the segment
+     * @return the support line
+     */
+    public Line2D getSupportLine(int index) {
+        return new Line2D(new Point2D(x1[index], y1[index]), new Point2D(x2[index], y2[index]));
+    }
+
+    /**
+     * Creates the StraightSegment2D of a stored segment.
+     * @param index the index of the segment
+     * @return a new segment with the same coordinates, color and origin
+     */
+    public StraightSegment2D getSegment(int index) {
+        StraightSegment2D origin = origins != null && index < origins.length ? origins[index] : null;
+        return new StraightSegment2D(new Point2D(x1[index], y1[index]), new Point2D(x2[index], y2[index]), getColor(index), origin);
+    }
+
+    /**
+     * Creates the StraightSegment2D of the segments whose indices are in {@code indices[from..to)}.
+     * @param indices the array of segment indices
+     * @param from the first position in the array (inclusive)
+     * @param to the last position in the array (exclusive)
+     * @return a new list of segments, in the order of the indices
+     */
+    public List<StraightSegment2D> getSegments(int[] indices, int from, int to) {
+        List<StraightSegment2D> segments = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            segments.add(getSegment(indices[i]));
+        }
+        return segments;
+    }
+
+    /**
+     * Splits a segment by a line, the same way as {@link StraightSegment2D#split(Line2D)}.
+     * Fragments are appended to the store; a segment lying on one side is returned as is.
+     * @param index the index of the segment
+     * @param splitter the splitting line
+     * @return the indices of the positive and negative parts, -1 for a missing part
+     */
+    public int[] split(int index, Line2D splitter) {
+        double startX = x1[index];
+        double startY = y1[index];
+        double endX = x2[index];
+        double endY = y2[index];
+        double evalStart = splitter.evaluate(startX, startY);
+        double evalEnd = splitter.evaluate(endX, endY);
+
+        // If both endpoints are on the same side, no split occurs.
+        if (evalStart * evalEnd > 0) {
+            return evalStart > 0 ? new int[] { index, -1 } : new int[] { -1, index };
+        }
+
+        // If both evaluations are nearly zero, consider the segment as coplanar.
+        if (Math.abs(evalStart) < EPSILON && Math.abs(evalEnd) < EPSILON) {
+            return new int[] { index, -1 };
+        }
+
+        // Otherwise, compute the intersection point.
+        double t = evalStart / (evalStart - evalEnd);
+        double ix = startX + t * (endX - startX);
+        double iy = startY + t * (endY - startY);
+        int colorId = colorIds[index];
+
+        // Degenerate fragments are dropped.
+        int positive;
+        int negative;
+        if (evalStart > 0) {
+            positive = isPoint(startX, startY, ix, iy) ? -1 : add(startX, startY, ix, iy, colorId);
+            negative = isPoint(ix, iy, endX, endY) ? -1 : add(ix, iy, endX, endY, colorId);
+        } else {
+            positive = isPoint(ix, iy, endX, endY) ? -1 : add(ix, iy, endX, endY, colorId);
+            negative = isPoint(startX, startY, ix, iy) ? -1 : add(startX, startY, ix, iy, colorId);
+        }
+
+        // The fragments come from the same segment of the scene.
+        if (origins != null && index < origins.length && origins[index] != null) {
+            if (positive >= 0) setOrigin(positive, origins[index]);
+            if (negative >= 0) setOrigin(negative, origins[index]);
+        }
+        return new int[] { positive, negative };
+    }
+
+    private static boolean isPoint(double ax, double ay, double bx, double by) {
+        return Double.compare(ax, bx) == 0 && Double.compare(ay, by) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentStore[" + size + " segments, " + palette.size() + " colors]";
+    }
+}
@@ -6,6 +6,10 @@ import java.awt.Color;
 /**
  * A straight segment in the plane.
  * Its support line is the line passing through its two endpoints.
+ *
+ * <p> A fragment created by {@link #split(Line2D)} keeps a reference to the segment of the
+ * scene it comes from (see {@link #getOrigin()}), so that the fragments of a segment can be
+ * found again, e.g. to delete it from a tree.
  */
 public class StraightSegment2D {
     private static final double EPSILON = 1e-6;
@@ -13,7 +17,8 @@ public class StraightSegment2D {
     private final Point2D start;
     private final Point2D end;
     private final Color color;
-    
+    private final StraightSegment2D origin; // null for a segment of the scene
+
     /**
      * Constructs a straight segment.
      * @param start the starting point
@@ -21,6 +26,17 @@ public class StraightSegment2D {
      * @param color the color of the segment
      */
     public StraightSegment2D(Point2D start, Point2D end, Color color) {
+        this(start, end, color, null);
+    }
+
+    /**
+     * Constructs a fragment of a segment of the scene.
+     * @param start the starting point
+     * @param end the ending point
+     * @param color the color of the segment
+     * @param origin the segment of the scene the fragment comes from, or null for a segment of the scene
+     */
+    StraightSegment2D(Point2D start, Point2D end, Color color, StraightSegment2D origin) {
         if (start == null || end == null || color == null) {
             throw new IllegalArgumentException("All parameters must be non-null.");
         }
@@ -32,6 +48,7 @@ public class StraightSegment2D {
         this.start = start;
         this.end = end;
         this.color = color;
+        this.origin = origin;
     }
 
     public StraightSegment2D(double x1, double y1, double x2, double y2, String colorName) {
@@ -42,6 +59,7 @@ public class StraightSegment2D {
         this.start = new Point2D(x1, y1);
         this.end = new Point2D(x2, y2);
         this.color = ColorParser.getColor(colorName);
+        this.origin = null;
     }
 
     public Line2D getSupportLine() {
@@ -63,6 +81,14 @@ public class StraightSegment2D {
     public Color getColor() {
         return color;
     }
+
+    /**
+     * Returns the segment of the scene this segment is a fragment of.
+     * @return the segment it was split from, or this segment if it was not split
+     */
+    public StraightSegment2D getOrigin() {
+        return origin == null ? this : origin;
+    }
     
     public StraightSegment2D[] split(Line2D splitter) {
         double evalStart = splitter.evaluate(start);
@@ -94,11 +120,11 @@ public class StraightSegment2D {
         StraightSegment2D segNegative;
 
         if (evalStart > 0) {
-            segPositive = new StraightSegment2D(start, intersection, color);
-            segNegative = new StraightSegment2D(intersection, end, color);
+            segPositive = new StraightSegment2D(start, intersection, color, getOrigin());
+            segNegative = new StraightSegment2D(intersection, end, color, getOrigin());
         } else {
-            segPositive = new StraightSegment2D(intersection, end, color);
-            segNegative = new StraightSegment2D(start, intersection, color);
+            segPositive = new StraightSegment2D(intersection, end, color, getOrigin());
+            segNegative = new StraightSegment2D(start, intersection, color, getOrigin());
         }
 
         // Remove degenerate segments.
@@ -1,9 +1,13 @@
 package be.umons.sdd.panels;
 
+import be.umons.sdd.builders.AutopartitionBSPTreeBuilder;
 import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.BuildProgress;
+import be.umons.sdd.builders.CostModelBSPTreeBuilder;
 import be.umons.sdd.builders.DeterministicBSPTreeBuilder;
 import be.umons.sdd.builders.RandomBSPTreeBuilder;
 import be.umons.sdd.builders.TellerBSPTreeBuilder;
+import be.umons.sdd.interfaces.BuildProgressObserver;
 import be.umons.sdd.interfaces.ObserverObserver;
 import be.umons.sdd.interfaces.SceneObserver;
 import be.umons.sdd.interfaces.TreeBuilderObserver;
@@ -15,7 +19,7 @@ import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
-public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderObserver, ObserverObserver {
+public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderObserver, ObserverObserver, BuildProgressObserver {
 
     private static DetailsPanel instance;
 
@@ -28,10 +32,12 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
     private JPanel selectedScenePanel;
     private JPanel selectedBuilderPanel;
     private JPanel selectedObserverPanel;
+    private JPanel buildProgressPanel;
 
     private JLabel sceneTitleLabel, sceneNameLabel, sceneSizeLabel, sceneSegmentCountLabel, noSceneLabel;
     private JLabel builderTitleLabel, builderNameLabel, builderTauValueLabel, noBuilderLabel;
     private JLabel observerTitleLabel, observerPositionLabel, observerAngleRangeLabel, noObserverLabel;
+    private JLabel progressTitleLabel, progressSegmentsLabel, progressNodesLabel, progressDepthLabel, progressTimeLabel, noProgressLabel;
 
     /**
      * Returns the single instance of the DetailsPanel class.
@@ -55,8 +61,8 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
      * 
      * <p> This method sets up the main panel with a vertical BoxLayout and a titled border
      * to display the current selection of scene and builder. It also initializes and adds
-     * two sub-panels: one for displaying information about the selected scene and another
-     * for the selected tree builder.
+     * the sub-panels displaying information about the selected scene, tree builder and
+     * observer, and the progress of the tree build.
      */
     private void initUI() {
         // Main panel settings
@@ -64,15 +70,17 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
         setBorder(BorderFactory.createTitledBorder("Current Selection"));
 
         // Only set width, height should be determined by content
-        setPreferredSize(new Dimension(300, 250));
+        setPreferredSize(new Dimension(300, 350));
 
         createSelectedScenePanel();
         createSelectedBuilderPanel();
         createSelectedObserverPanel();
+        createBuildProgressPanel();
 
         add(selectedScenePanel);
         add(selectedBuilderPanel);
         add(selectedObserverPanel);
+        add(buildProgressPanel);
     }
 
     /**
@@ -156,6 +164,32 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
         noObserverLabel = new JLabel(" - No observer selected.");
     }
 
+    /**
+     * Creates the panel that displays the progress of the build of the current tree.
+     * <p>
+     * This method initializes the panel with a title label and creates labels for the
+     * segments finalised, the nodes and fragments created, the depth reached and the
+     * elapsed and remaining time. It also adds a label that appears when the current
+     * tree was not built (no scene or builder selected, or tree taken from the cache).
+     */
+    private void createBuildProgressPanel() {
+        buildProgressPanel = new JPanel();
+        buildProgressPanel.setLayout(new BoxLayout(buildProgressPanel, BoxLayout.Y_AXIS));
+        buildProgressPanel.setBorder(BorderFactory.createEmptyBorder(15, 10, 0, 0));
+
+        progressTitleLabel = new JLabel("Build Progress :");
+        progressTitleLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 5, 0));
+        buildProgressPanel.add(progressTitleLabel);
+
+        // Initialize progress labels.
+        progressSegmentsLabel = new JLabel();
+        progressNodesLabel = new JLabel();
+        progressDepthLabel = new JLabel();
+        progressTimeLabel = new JLabel();
+        noProgressLabel = new JLabel(" - No build in progress.");
+        buildProgressPanel.add(noProgressLabel);
+    }
+
     // Observers
 
     /**
@@ -206,10 +240,20 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
                 builderTauValueLabel.setText(" - Tau: " + ((TellerBSPTreeBuilder) currentBuilder).getTau());
                 builderNameLabel.setText(" - Name: Teller Algorithm Builder");
             }
+            else if (builder instanceof AutopartitionBSPTreeBuilder) {
+                builderTauValueLabel.setText(" - Seed: " + ((AutopartitionBSPTreeBuilder) currentBuilder).getSeed());
+                builderNameLabel.setText(" - Name: Randomized Autopartition Builder");
+            }
+            else if (builder instanceof CostModelBSPTreeBuilder) {
+                builderTauValueLabel.setText("");
+                builderNameLabel.setText(" - Name: Painter Cost Model Builder");
+            }
             else if (builder instanceof RandomBSPTreeBuilder) {
+                builderTauValueLabel.setText(" - Seed: " + ((RandomBSPTreeBuilder) currentBuilder).getSeed());
                 builderNameLabel.setText(" - Name: Random Algorithm Builder");
             }
             else if (builder instanceof DeterministicBSPTreeBuilder) {
+                builderTauValueLabel.setText("");
                 builderNameLabel.setText(" - Name: Deterministic Algorithm Builder");
             }
 
@@ -260,4 +304,41 @@ public class DetailsPanel extends JPanel implements SceneObserver, TreeBuilderOb
         selectedObserverPanel.revalidate();
         selectedObserverPanel.repaint();
     }
+
+    /**
+     * Updates the progress of the build of the current tree.
+     *
+     * @param progress the progress of the build, or null if the current tree was not built.
+     */
+    @Override
+    public void onBuildProgress(BuildProgress progress) {
+        // Update labels accordingly
+        buildProgressPanel.removeAll();
+        buildProgressPanel.add(progressTitleLabel);
+
+        if (progress != null) {
+            progressSegmentsLabel.setText(String.format(" - Segments: %d / %d (%.0f%%)",
+                progress.getSegmentsFinalised(), progress.getSegmentsTotal(), progress.getFraction() * 100));
+            progressNodesLabel.setText(" - Nodes: " + progress.getNodesBuilt() + ", Fragments: " + progress.getFragmentsCreated());
+            progressDepthLabel.setText(" - Depth: " + progress.getCurrentDepth() + " (max " + progress.getMaxDepth() + ")");
+            if (progress.isFinished()) {
+                progressTimeLabel.setText(" - Built in " + progress.getElapsedNanos() / 1_000_000 + " ms");
+            } else if (progress.getEstimatedRemainingNanos() == BuildProgress.UNKNOWN) {
+                progressTimeLabel.setText(" - Elapsed: " + progress.getElapsedNanos() / 1_000_000 + " ms");
+            } else {
+                progressTimeLabel.setText(" - Elapsed: " + progress.getElapsedNanos() / 1_000_000 + " ms, Remaining: ~"
+                    + progress.getEstimatedRemainingNanos() / 1_000_000 + " ms");
+            }
+            buildProgressPanel.add(progressSegmentsLabel);
+            buildProgressPanel.add(progressNodesLabel);
+            buildProgressPanel.add(progressDepthLabel);
+            buildProgressPanel.add(progressTimeLabel);
+        } else {
+            buildProgressPanel.add(noProgressLabel);
+        }
+
+        // Refresh the UI
+        buildProgressPanel.revalidate();
+        buildProgressPanel.repaint();
+    }
 }
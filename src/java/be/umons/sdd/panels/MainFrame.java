@@ -1,28 +1,66 @@
 package be.umons.sdd.panels;
 
 import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.BSPTreeCache;
+import be.umons.sdd.builders.BuildCancelledException;
+import be.umons.sdd.builders.BuildContext;
+import be.umons.sdd.builders.BuildProgress;
+import be.umons.sdd.builders.BuildProgressTracker;
+import be.umons.sdd.builders.DynamicBSPTree;
+import be.umons.sdd.interfaces.BuildProgressObserver;
+import be.umons.sdd.interfaces.SceneEditObserver;
 import be.umons.sdd.interfaces.SceneObserver;
 import be.umons.sdd.interfaces.TreeBuilderObserver;
 import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.models.StraightSegment2D;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JSplitPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 
-public class MainFrame extends JFrame implements SceneObserver, TreeBuilderObserver {
+public class MainFrame extends JFrame implements SceneObserver, TreeBuilderObserver, SceneEditObserver {
 
     private static MainFrame instance;
 
+    // Time budget of the build on the event thread, then of each refinement step in the background.
+    private static final long BUILD_BUDGET_NANOS = 100_000_000L;
+    private static final long REFINE_STEP_NANOS = 50_000_000L;
+
     private Scene2D currentScene = null;
     private BSPTreeBuilder currentTreeBuilder = null;
     private BSPNode currentBspTree = null;
+    private DynamicBSPTree currentDynamicTree = null;
+    private SwingWorker<Void, BSPNode> refinementWorker = null;
+    private BuildContext refinementContext = null;
+
+    // Edits of the current tree, applied in order outside of the event thread.
+    private final ExecutorService editExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bsp-tree-edits");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Observers of the progress of the builds, and the number of the current build.
+    private final List<BuildProgressObserver> buildProgressObservers = new ArrayList<>();
+    private int buildGeneration = 0;
+
+    // Complete trees already built, and the key of the current tree (null once it has been edited).
+    private final BSPTreeCache treeCache = new BSPTreeCache();
+    private BSPTreeCache.Key currentCacheKey = null;
 
     private JSplitPane mainSplitPane;
     private JPanel formPanel;
@@ -84,8 +122,10 @@ public class MainFrame extends JFrame implements SceneObserver, TreeBuilderObser
     }
 
     private void initObservers() {
+        addBuildProgressObserver(DetailsPanel.getInstance());
         onSceneSelected(SceneSelectorPanel.getInstance().addSceneObserver(this));
         TreeBuilderSelectorPanel.getInstance().addTreeBuilderObserver(this);
+        SceneVisualizerPanel.getInstance().addSceneEditObserver(this);
     }
 
     private JPanel initFormPanel() {
@@ -161,15 +201,260 @@ public class MainFrame extends JFrame implements SceneObserver, TreeBuilderObser
         return menuPanel;
     }
 
+    /**
+     * Builds the tree of the current scene within {@link #BUILD_BUDGET_NANOS}, so that the UI
+     * stays responsive on large scenes. An incomplete tree is shown at once, and refined in the
+     * background by {@link #startRefinement(DynamicBSPTree, BuildProgressTracker, boolean)}.
+     * Complete trees are kept in the {@link BSPTreeCache}, unless split on sampled lines, so coming
+     * back to a scene and builder already built is immediate.
+     */
     private void updateBspTree() {
+        // The tree being refined is superseded: stop its refinement at the next node.
+        if (refinementWorker != null) {
+            refinementContext.cancel();
+            refinementWorker.cancel(false);
+            refinementWorker = null;
+            refinementContext = null;
+        }
+
+        int generation = ++buildGeneration;
         if (currentScene != null && currentTreeBuilder != null) {
-            currentBspTree = currentTreeBuilder.buildTree(currentScene.getSegments(), null);
+            currentCacheKey = BSPTreeCache.key(currentScene, currentTreeBuilder);
+            BSPNode cached = treeCache.get(currentCacheKey);
+            if (cached != null) {
+                currentDynamicTree = new DynamicBSPTree(currentTreeBuilder, currentScene.getSegments(),
+                    DynamicBSPTree.DEFAULT_BALANCE, cached);
+                notifyBuildProgressObservers(null);
+            } else {
+                BuildProgressTracker progress = newProgressTracker(generation);
+                BuildContext context = new BuildContext(BSPTreeBuilder.NO_DEADLINE, progress);
+                currentDynamicTree = new DynamicBSPTree(currentTreeBuilder, currentScene.getSegments(),
+                    DynamicBSPTree.DEFAULT_BALANCE, System.nanoTime() + BUILD_BUDGET_NANOS, context);
+                boolean sampled = context.getSampledSplitCount() > 0;
+                if (currentDynamicTree.isComplete()) {
+                    if (!sampled) {
+                        treeCache.put(currentCacheKey, currentDynamicTree.getRoot());
+                    }
+                    progress.complete();
+                } else {
+                    startRefinement(currentDynamicTree, progress, !sampled);
+                }
+            }
+            currentBspTree = currentDynamicTree.getRoot();
+        } else {
+            currentDynamicTree = null;
+            currentCacheKey = null;
+            notifyBuildProgressObservers(null);
         }
         sceneVisualizerPanel.setScene(currentScene);
         sceneVisualizerPanel.onBSPUpdated(currentBspTree);
         painterVisualizerPanel.onBSPUpdated(currentBspTree);
     }
 
+    /**
+     * Creates the tracker of the progress of a build, reporting to the observers on the event thread.
+     * Reports of a superseded build are dropped.
+     * 
+     * @param generation the number of the build
+     * @return the tracker
+     */
+    private BuildProgressTracker newProgressTracker(int generation) {
+        return new BuildProgressTracker(currentScene.getSegments().size(),
+            report -> SwingUtilities.invokeLater(() -> {
+                if (generation == buildGeneration) {
+                    notifyBuildProgressObservers(report);
+                }
+            }));
+    }
+
+    /**
+     * Refines a tree in the background, step by step, and shows it after each step
+     * as long as it is still the current tree. The refinement stops at the next node
+     * when its context is cancelled by {@link #updateBspTree()}. If the tree was edited
+     * back to an incomplete tree meanwhile, a new refinement is started when this one ends.
+     * The complete tree is cached if it can be, and none of its regions was split on sampled lines.
+     * 
+     * @param tree the tree to refine
+     * @param progress the tracker of the progress of the build of the tree
+     * @param cacheable false if the complete tree must not be cached (e.g. if regions of the tree were
+     *        already split on sampled lines)
+     */
+    private void startRefinement(DynamicBSPTree tree, BuildProgressTracker progress, boolean cacheable) {
+        BuildContext context = new BuildContext(BSPTreeBuilder.NO_DEADLINE, progress);
+        refinementContext = context;
+        refinementWorker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                boolean complete = false;
+                try {
+                    while (!complete && !isCancelled()) {
+                        complete = tree.refine(System.nanoTime() + REFINE_STEP_NANOS, context);
+                        publish(tree.getRoot());
+                    }
+                    if (complete) {
+                        progress.complete();
+                    }
+                } catch (BuildCancelledException e) {
+                    // Superseded by another tree, which is refined by its own worker.
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<BSPNode> roots) {
+                if (!isCancelled() && tree == currentDynamicTree) {
+                    onBspTreeEdited();
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || tree != currentDynamicTree) {
+                    return;
+                }
+                if (!tree.isComplete()) {
+                    // Unless an edit already started the next refinement.
+                    if (refinementWorker == this) {
+                        startRefinement(tree, newProgressTracker(buildGeneration), cacheable && context.getSampledSplitCount() == 0);
+                    }
+                } else if (currentCacheKey != null && cacheable && context.getSampledSplitCount() == 0) {
+                    treeCache.put(currentCacheKey, tree.getRoot());
+                }
+            }
+        };
+        refinementWorker.execute();
+    }
+
+    /**
+     * Refines the current tree in the background after an edit left it incomplete,
+     * unless it is already being refined.
+     */
+    private void refineEditedTree() {
+        if (refinementWorker == null || refinementWorker.isDone()) {
+            // The edited tree was released from the cache.
+            startRefinement(currentDynamicTree, newProgressTracker(buildGeneration), false);
+        }
+    }
+
+    /**
+     * Adds a segment to the current scene. The current tree is updated by inserting
+     * the segment instead of being rebuilt, outside of the event thread.
+     * 
+     * @param segment the segment to add
+     */
+    public void addSegment(StraightSegment2D segment) {
+        if (currentScene == null) {
+            return;
+        }
+
+        currentScene.getSegments().add(segment);
+        editTree(tree -> tree.insert(segment));
+    }
+
+    /**
+     * Removes a segment from the current scene. The current tree is updated by deleting
+     * the fragments of the segment instead of being rebuilt, outside of the event thread.
+     * If the deletions call for a full rebuild, it is built within {@link #BUILD_BUDGET_NANOS}
+     * and refined in the background.
+     * 
+     * @param segment the segment to remove
+     */
+    public void removeSegment(StraightSegment2D segment) {
+        if (currentScene == null || !currentScene.getSegments().remove(segment)) {
+            return;
+        }
+
+        editTree(tree -> tree.delete(segment, System.nanoTime() + BUILD_BUDGET_NANOS));
+    }
+
+    /**
+     * Applies an edit to the current tree on the edit thread, then shows the tree if it is still
+     * the current one. Edits are applied in order; they wait for the current refinement step.
+     * The tree can be painted meanwhile, as the updates replace its nodes instead of modifying their objects.
+     * 
+     * @param edit the edit to apply
+     */
+    private void editTree(Consumer<DynamicBSPTree> edit) {
+        DynamicBSPTree tree = currentDynamicTree;
+        if (tree == null) {
+            return;
+        }
+
+        releaseCachedTree();
+        editExecutor.execute(() -> {
+            edit.accept(tree);
+            boolean complete = tree.isComplete();
+            SwingUtilities.invokeLater(() -> {
+                if (tree == currentDynamicTree) {
+                    onBspTreeEdited();
+                    if (!complete) {
+                        refineEditedTree();
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Removes the current tree from the cache before it is edited: the cached tree is the one
+     * being modified, and it no longer matches the scene it was built for.
+     */
+    private void releaseCachedTree() {
+        if (currentCacheKey != null) {
+            treeCache.remove(currentCacheKey);
+            currentCacheKey = null;
+        }
+    }
+
+    /**
+     * Returns the cache of the trees built for the scenes and builders selected so far.
+     * 
+     * @return the tree cache
+     */
+    public BSPTreeCache getTreeCache() {
+        return treeCache;
+    }
+
+    /**
+     * Adds an observer of the progress of the tree builds.
+     * Reports are delivered on the event dispatch thread, only for the current build.
+     * 
+     * @param observer the BuildProgressObserver to be added
+     * @throws IllegalArgumentException if the observer is null or already registered
+     */
+    public void addBuildProgressObserver(BuildProgressObserver observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("BuildProgressObserver cannot be null.");
+        }
+
+        if (buildProgressObservers.contains(observer)) {
+            throw new IllegalArgumentException("BuildProgressObserver is already registered.");
+        }
+
+        buildProgressObservers.add(observer);
+    }
+
+    /**
+     * Removes an observer of the progress of the tree builds.
+     * 
+     * @param observer the BuildProgressObserver to be removed
+     */
+    public void removeBuildProgressObserver(BuildProgressObserver observer) {
+        buildProgressObservers.remove(observer);
+    }
+
+    private void notifyBuildProgressObservers(BuildProgress progress) {
+        for (BuildProgressObserver observer : buildProgressObservers) {
+            observer.onBuildProgress(progress);
+        }
+    }
+
+    private void onBspTreeEdited() {
+        currentBspTree = currentDynamicTree.getRoot();
+        sceneVisualizerPanel.onBSPUpdated(currentBspTree);
+        painterVisualizerPanel.onBSPUpdated(currentBspTree);
+    }
+
     @Override
     public void onSceneSelected(Scene2D scene) {
         currentScene = scene;
@@ -182,5 +467,15 @@ public class MainFrame extends JFrame implements SceneObserver, TreeBuilderObser
         updateBspTree();
     }
 
+    @Override
+    public void onSegmentAdded(StraightSegment2D segment) {
+        addSegment(segment);
+    }
+
+    @Override
+    public void onSegmentRemoved(StraightSegment2D segment) {
+        removeSegment(segment);
+    }
+
     
 }
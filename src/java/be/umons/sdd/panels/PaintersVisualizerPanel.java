@@ -27,6 +27,8 @@ public class PaintersVisualizerPanel extends JPanel implements BSPNodeObserver,
     private Point2D observerPosition;
     private double observerStartAngle;
     private double observerEndAngle;
+    // Orders of the coarse leaves of the tree, kept between paintings from the same position.
+    private final PaintersViewBuilder.CoarseLeafOrders leafOrders = new PaintersViewBuilder.CoarseLeafOrders();
 
 
     /**
@@ -67,7 +69,7 @@ public class PaintersVisualizerPanel extends JPanel implements BSPNodeObserver,
         // Check if we have the BSP node and a valid observer position.
         if (currentNode != null && observerPosition != null) {
             // Compute the 360° view using the Painters algorithm.
-            View360 view = PaintersViewBuilder.paintersAlgorithm(currentNode, observerPosition);
+            View360 view = PaintersViewBuilder.paintersAlgorithm(currentNode, observerPosition, leafOrders);
             // Draw the result.
             drawView360(g2, view);
             // Draw the linear view.
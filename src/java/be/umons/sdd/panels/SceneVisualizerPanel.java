@@ -2,6 +2,7 @@ package be.umons.sdd.panels;
 
 import be.umons.sdd.interfaces.BSPNodeObserver;
 import be.umons.sdd.interfaces.ObserverObserver;
+import be.umons.sdd.interfaces.SceneEditObserver;
 import be.umons.sdd.models.BSPNode;
 import be.umons.sdd.models.Line2D;
 import be.umons.sdd.models.Point2D;
@@ -15,8 +16,11 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.BorderFactory;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, ObserverObserver {
     
@@ -30,6 +34,12 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
 
     private Point2D cursorScenePosition = null;
 
+    // Segment being drawn by dragging the mouse, and the observers of the edits of the scene.
+    private static final Color NEW_SEGMENT_COLOR = Color.BLACK;
+    private static final int PICK_DISTANCE_PIXELS = 5;
+    private Point2D dragStart = null;
+    private final List<SceneEditObserver> sceneEditObservers = new ArrayList<>();
+
     /**
      * Returns the single instance of the SceneVisualizerPanel class.
      * The panel is created on first call to this method.
@@ -51,7 +61,7 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
     private void initUI() {
         setPreferredSize(new Dimension(900, 740));
         setBackground(Color.WHITE);
-        setBorder(BorderFactory.createTitledBorder("Scene Visualization"));
+        setBorder(BorderFactory.createTitledBorder("Scene Visualization (drag to add a segment, right-click to remove one)"));
     }
 
     private void initObservers() {
@@ -67,35 +77,94 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
                     return;
                 }
                 
-                // Panel drawing area (20 pixels margin on each side)
-                int panelWidth = getWidth() - 40;
-                int panelHeight = getHeight() - 40;
-                int centerX = getWidth() / 2;
-                int centerY = getHeight() / 2;
-                
-                // Scene dimensions
-                int sceneWidth = currentScene.getExtentX() * 2;
-                int sceneHeight = currentScene.getExtentY() * 2;
-                
-                // Compute scale factors and use the lower one to maintain aspect ratio.
-                double scaleX = panelWidth / (double) sceneWidth;
-                double scaleY = panelHeight / (double) sceneHeight;
-                if (scaleX < scaleY) {
-                    scaleY = scaleX;
-                } else {
-                    scaleX = scaleY;
-                }
-                
-                // Convert mouse position (panel coordinates) to scene coordinates.
-                double sceneX = (e.getX() - centerX) / scaleX;
-                double sceneY = (centerY - e.getY()) / scaleY;
-                cursorScenePosition = new Point2D(sceneX, sceneY);
+                cursorScenePosition = toScenePoint(e.getX(), e.getY());
                 // Request a repaint to update the marker.
                 repaint();
             }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                mouseMoved(e);
+            }
+        });
+
+        // Drag with the left button to add a segment, right-click on a segment to remove it.
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (currentScene == null) {
+                    return;
+                }
+
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    dragStart = toScenePoint(e.getX(), e.getY());
+                } else if (SwingUtilities.isRightMouseButton(e)) {
+                    StraightSegment2D segment = findSegment(toScenePoint(e.getX(), e.getY()));
+                    if (segment != null) {
+                        notifySegmentRemoved(segment);
+                    }
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (dragStart == null || !SwingUtilities.isLeftMouseButton(e)) {
+                    return;
+                }
+
+                Point2D start = dragStart;
+                Point2D end = toScenePoint(e.getX(), e.getY());
+                dragStart = null;
+                // A click without dragging does not add a segment.
+                if (Math.hypot(end.x - start.x, end.y - start.y) * getScale() >= PICK_DISTANCE_PIXELS) {
+                    notifySegmentAdded(new StraightSegment2D(start, end, NEW_SEGMENT_COLOR));
+                }
+                repaint();
+            }
         });
     }
-    
+
+    /**
+     * Returns the scale from scene coordinates to panel pixels, the same on both axes
+     * so that the whole scene is visible (20 pixels margin on each side).
+     */
+    private double getScale() {
+        double scaleX = (getWidth() - 40) / (currentScene.getExtentX() * 2.0);
+        double scaleY = (getHeight() - 40) / (currentScene.getExtentY() * 2.0);
+        return Math.min(scaleX, scaleY);
+    }
+
+    // Converts a position of the panel to scene coordinates.
+    private Point2D toScenePoint(int x, int y) {
+        double scale = getScale();
+        return new Point2D((x - getWidth() / 2) / scale, (getHeight() / 2 - y) / scale);
+    }
+
+    /**
+     * Finds the segment of the scene closest to a point, within {@link #PICK_DISTANCE_PIXELS}.
+     *
+     * @param point the point, in scene coordinates
+     * @return the segment, or null if none is close enough
+     */
+    private StraightSegment2D findSegment(Point2D point) {
+        double maxDistance = PICK_DISTANCE_PIXELS / getScale();
+        StraightSegment2D closest = null;
+        double closestDistance = maxDistance * maxDistance;
+        for (StraightSegment2D segment : currentScene.getSegments()) {
+            double dx = segment.getEnd().x - segment.getStart().x;
+            double dy = segment.getEnd().y - segment.getStart().y;
+            double t = ((point.x - segment.getStart().x) * dx + (point.y - segment.getStart().y) * dy) / (dx * dx + dy * dy);
+            t = Math.max(0, Math.min(1, t));
+            double ex = segment.getStart().x + t * dx - point.x;
+            double ey = segment.getStart().y + t * dy - point.y;
+            if (ex * ex + ey * ey <= closestDistance) {
+                closest = segment;
+                closestDistance = ex * ex + ey * ey;
+            }
+        }
+        return closest;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -106,6 +175,7 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
         if (currentScene != null && currentNode != null) {
             drawNode(g2, currentNode, drawPartitionLine);
             drawObserver(g2);
+            drawNewSegment(g2);
             drawCursorMarker(g2);
 
         } else {
@@ -256,6 +326,18 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
         drawNode(g2, node.getRight(), drawPartitionLine);
     }
 
+    // Draws the segment being added, from the start of the drag to the cursor.
+    private void drawNewSegment(Graphics2D g2) {
+        if (dragStart == null || cursorScenePosition == null) return;
+
+        double scale = getScale();
+        int centerX = getWidth() / 2;
+        int centerY = getHeight() / 2;
+        g2.setColor(NEW_SEGMENT_COLOR);
+        g2.drawLine((int) (centerX + dragStart.x * scale), (int) (centerY - dragStart.y * scale),
+            (int) (centerX + cursorScenePosition.x * scale), (int) (centerY - cursorScenePosition.y * scale));
+    }
+
     private void drawCursorMarker(Graphics2D g2) {
         if (cursorScenePosition == null || currentScene == null) return;
         
@@ -307,7 +389,47 @@ public class SceneVisualizerPanel extends JPanel implements BSPNodeObserver, Obs
 
     public void setScene(Scene2D scene) {
         currentScene = scene;
+        dragStart = null;
         repaint();
     }
 
+    /**
+     * Adds an observer of the segments added and removed with the mouse.
+     * 
+     * @param observer the SceneEditObserver to be added
+     * @throws IllegalArgumentException if the observer is null or already registered
+     */
+    public void addSceneEditObserver(SceneEditObserver observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("SceneEditObserver cannot be null.");
+        }
+
+        if (sceneEditObservers.contains(observer)) {
+            throw new IllegalArgumentException("SceneEditObserver is already registered.");
+        }
+
+        sceneEditObservers.add(observer);
+    }
+
+    /**
+     * Removes an observer of the segments added and removed with the mouse.
+     * 
+     * @param observer the SceneEditObserver to be removed
+     */
+    public void removeSceneEditObserver(SceneEditObserver observer) {
+        sceneEditObservers.remove(observer);
+    }
+
+    private void notifySegmentAdded(StraightSegment2D segment) {
+        for (SceneEditObserver observer : sceneEditObservers) {
+            observer.onSegmentAdded(segment);
+        }
+    }
+
+    private void notifySegmentRemoved(StraightSegment2D segment) {
+        for (SceneEditObserver observer : sceneEditObservers) {
+            observer.onSegmentRemoved(segment);
+        }
+    }
+
 }
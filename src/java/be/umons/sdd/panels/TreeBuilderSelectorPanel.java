@@ -1,6 +1,8 @@
 package be.umons.sdd.panels;
 
+import be.umons.sdd.builders.AutopartitionBSPTreeBuilder;
 import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.CostModelBSPTreeBuilder;
 import be.umons.sdd.builders.DeterministicBSPTreeBuilder;
 import be.umons.sdd.builders.RandomBSPTreeBuilder;
 import be.umons.sdd.builders.TellerBSPTreeBuilder;
@@ -11,6 +13,7 @@ import java.awt.FlowLayout;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.SplittableRandom;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JComboBox;
@@ -24,6 +27,17 @@ public class TreeBuilderSelectorPanel extends JPanel {
 
     private static TreeBuilderSelectorPanel instance;
 
+    // Nodes holding at least this many segments have their subtrees built in parallel.
+    private static final int PARALLEL_BUILD_CUTOFF = 2048;
+
+    // Nodes where candidates times segments reach this amount of work have their candidates scored in parallel.
+    private static final long PARALLEL_SCORING_THRESHOLD = 1_000_000;
+
+    // Seeds of the randomized builders, drawn once so that selecting a builder again gives the same
+    // configuration, and so the tree cached for it (see BSPTreeBuilder#getConfiguration()).
+    private final long randomSeed = new SplittableRandom().nextLong();
+    private final long autopartitionSeed = new SplittableRandom().nextLong();
+
     private BSPTreeBuilder selectedTreeBuilder;
 
     public List<TreeBuilderObserver> treeBuilderObservers = new ArrayList<>();
@@ -162,10 +176,16 @@ public class TreeBuilderSelectorPanel extends JPanel {
         BSPTreeBuilder treeBuilder;
         treeBuilder = switch (builder) {
             case TELLER -> new TellerBSPTreeBuilder(tau);
-            case RANDOM -> new RandomBSPTreeBuilder();
+            case RANDOM -> new RandomBSPTreeBuilder(randomSeed);
+            case AUTOPARTITION -> new AutopartitionBSPTreeBuilder(autopartitionSeed);
+            case COST_MODEL -> new CostModelBSPTreeBuilder();
             default -> new DeterministicBSPTreeBuilder();
         };
 
+        treeBuilder.setParallelBuild(PARALLEL_BUILD_CUTOFF);
+        treeBuilder.setParallelScoring(PARALLEL_SCORING_THRESHOLD);
+        treeBuilder.setIterativeBuild(true);
+
         selectedTreeBuilder = treeBuilder;
         notifyTreeBuilderObservers();
     }
@@ -0,0 +1,156 @@
+package be.umons.sdd.test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measurements of one benchmark configuration (a scene and a builder) over several repetitions.
+ * Results can be written to and read back from CSV, which is the format used for baselines.
+ */
+public class BenchmarkResult {
+
+    /**
+     * Header of the CSV format, in the order used by {@link #toCsv()}.
+     */
+    public static final String CSV_HEADER = "scene,builder,segments,repetitions,tree_size,tree_height,fragments,"
+        + "build_median_ms,build_p95_ms,build_min_ms,build_max_ms,"
+        + "painter_median_ms,painter_p95_ms,painter_min_ms,painter_max_ms";
+
+    public final String scene;
+    public final String builder;
+    public final int segmentCount;
+    public final int repetitions;
+    public final int size;
+    public final int height;
+    public final int fragmentCount;
+    public final Timing buildTime;
+    public final Timing painterTime;
+
+    public BenchmarkResult(String scene, String builder, int segmentCount, int repetitions,
+                           int size, int height, int fragmentCount, Timing buildTime, Timing painterTime) {
+        this.scene = scene;
+        this.builder = builder;
+        this.segmentCount = segmentCount;
+        this.repetitions = repetitions;
+        this.size = size;
+        this.height = height;
+        this.fragmentCount = fragmentCount;
+        this.buildTime = buildTime;
+        this.painterTime = painterTime;
+    }
+
+    /**
+     * Returns the key identifying the configuration of this result (scene and builder).
+     *
+     * @return the configuration key
+     */
+    public String getKey() {
+        return scene + "/" + builder;
+    }
+
+    /**
+     * Formats this result as a CSV line following {@link #CSV_HEADER}.
+     *
+     * @return the CSV line (without line terminator)
+     */
+    public String toCsv() {
+        return String.join(",",
+            scene, builder,
+            Integer.toString(segmentCount), Integer.toString(repetitions),
+            Integer.toString(size), Integer.toString(height), Integer.toString(fragmentCount),
+            formatMs(buildTime.median), formatMs(buildTime.p95), formatMs(buildTime.min), formatMs(buildTime.max),
+            formatMs(painterTime.median), formatMs(painterTime.p95), formatMs(painterTime.min), formatMs(painterTime.max));
+    }
+
+    /**
+     * Parses a CSV line written by {@link #toCsv()}.
+     *
+     * @param line the CSV line
+     * @return the parsed result
+     * @throws IllegalArgumentException if the line does not follow {@link #CSV_HEADER}
+     */
+    public static BenchmarkResult fromCsv(String line) {
+        String[] tokens = line.trim().split(",");
+        if (tokens.length != 15) {
+            throw new IllegalArgumentException("Invalid result line, expected 15 columns but found " + tokens.length + ": " + line);
+        }
+
+        try {
+            return new BenchmarkResult(
+                tokens[0], tokens[1],
+                Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]),
+                Integer.parseInt(tokens[4]), Integer.parseInt(tokens[5]), Integer.parseInt(tokens[6]),
+                new Timing(Double.parseDouble(tokens[7]), Double.parseDouble(tokens[8]), Double.parseDouble(tokens[9]), Double.parseDouble(tokens[10])),
+                new Timing(Double.parseDouble(tokens[11]), Double.parseDouble(tokens[12]), Double.parseDouble(tokens[13]), Double.parseDouble(tokens[14])));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in result line: " + line, e);
+        }
+    }
+
+    /**
+     * Formats this result as a JSON object.
+     *
+     * @return the JSON object
+     */
+    public String toJson() {
+        return "{"
+            + "\"scene\": \"" + scene + "\", "
+            + "\"builder\": \"" + builder + "\", "
+            + "\"segments\": " + segmentCount + ", "
+            + "\"repetitions\": " + repetitions + ", "
+            + "\"treeSize\": " + size + ", "
+            + "\"treeHeight\": " + height + ", "
+            + "\"fragments\": " + fragmentCount + ", "
+            + "\"buildMs\": " + buildTime.toJson() + ", "
+            + "\"painterMs\": " + painterTime.toJson()
+            + "}";
+    }
+
+    private static String formatMs(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Summary statistics of a series of timings, in milliseconds.
+     */
+    public static class Timing {
+        public final double median;
+        public final double p95;
+        public final double min;
+        public final double max;
+
+        public Timing(double median, double p95, double min, double max) {
+            this.median = median;
+            this.p95 = p95;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Computes the statistics of a series of durations measured with System.nanoTime.
+         * The 95th percentile uses the nearest-rank method.
+         *
+         * @param nanos the measured durations, in nanoseconds
+         * @return the statistics, in milliseconds
+         */
+        public static Timing fromNanos(long[] nanos) {
+            if (nanos.length == 0) {
+                throw new IllegalArgumentException("At least one measurement is required.");
+            }
+
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+
+            int n = sorted.length;
+            double median = (n % 2 == 1) ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+            long p95 = sorted[(int) Math.ceil(0.95 * n) - 1];
+
+            return new Timing(median / 1e6, p95 / 1e6, sorted[0] / 1e6, sorted[n - 1] / 1e6);
+        }
+
+        private String toJson() {
+            return "{\"median\": " + formatMs(median) + ", \"p95\": " + formatMs(p95)
+                + ", \"min\": " + formatMs(min) + ", \"max\": " + formatMs(max) + "}";
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package be.umons.sdd.test;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.BuildContext;
+import be.umons.sdd.builders.BuildStatistics;
+import be.umons.sdd.builders.PaintersViewBuilder;
+import be.umons.sdd.enums.EScenes;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.utils.SceneSerializer;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless benchmark of the BSP tree builders, meant to be run unattended (e.g. by a nightly job).
+ *
+ * <p> Every configuration (scene and builder) is measured on its own, one after the other:
+ * a number of warmup runs are executed and discarded, then each repetition builds a tree with
+ * a fresh builder and applies the painter's algorithm on it, both timed with System.nanoTime.
+ * The results are written as CSV (default) or JSON, on the standard output or in a file.
+ * With statistics on, one more (untimed) build of each configuration is instrumented, and its
+ * {@link BuildStatistics} are printed on the standard error.
+ *
+ * <p> Usage:
+ * <pre>
+ * BenchmarkRunner [--scenes all|NAME,...] [--builders deterministic,random,...] [--taus 0.1,0.5,...]
+ *                 [--repetitions N] [--warmup N] [--observer X,Y] [--format csv|json] [--output FILE]
+ *                 [--statistics on|off]
+ * </pre>
+ * The builders given by --builders and the Teller builders of --taus are run; without either option,
+ * the deterministic, random and Teller (tau = 0.5) builders are.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(Config.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            List<BenchmarkResult> results = new ArrayList<>();
+            for (EScenes scene : config.scenes) {
+                Scene2D scene2D = loadScene(scene);
+                for (BuilderSpec builder : config.builders) {
+                    System.err.println("Running " + scene.name() + " with " + builder.getLabel() + "...");
+                    results.add(runConfiguration(scene.name(), scene2D, builder, config.warmup, config.repetitions, config.observer));
+                    if (config.statistics) {
+                        System.err.println("  " + collectStatistics(scene2D, builder));
+                    }
+                }
+            }
+
+            String report = config.json ? toJson(results) : toCsv(results);
+            if (config.output == null) {
+                System.out.print(report);
+            } else {
+                Files.write(Paths.get(config.output), report.getBytes(StandardCharsets.UTF_8));
+                System.err.println("Results written to " + config.output);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Measures one configuration. The warmup runs are executed but not recorded, then every
+     * repetition builds a new tree with a fresh builder instance and computes the view from
+     * the observer position.
+     *
+     * @param sceneName the name identifying the scene in the results
+     * @param scene the scene to build the trees for
+     * @param builder the builder configuration
+     * @param warmup the number of discarded runs
+     * @param repetitions the number of measured runs (at least 1)
+     * @param observer the observer position used for the painter's algorithm
+     * @return the measurements of the configuration
+     */
+    public static BenchmarkResult runConfiguration(String sceneName, Scene2D scene, BuilderSpec builder,
+                                                   int warmup, int repetitions, Point2D observer) {
+        for (int i = 0; i < warmup; i++) {
+            BSPNode root = builder.create().buildTree(scene.getSegments(), null);
+            PaintersViewBuilder.paintersAlgorithm(root, observer);
+        }
+
+        long[] buildNanos = new long[repetitions];
+        long[] painterNanos = new long[repetitions];
+        BSPNode root = null;
+
+        for (int i = 0; i < repetitions; i++) {
+            // Let the previous run's garbage go before measuring this one.
+            root = null;
+            System.gc();
+
+            BSPTreeBuilder treeBuilder = builder.create();
+
+            long buildStart = System.nanoTime();
+            root = treeBuilder.buildTree(scene.getSegments(), null);
+            buildNanos[i] = System.nanoTime() - buildStart;
+
+            long paintStart = System.nanoTime();
+            PaintersViewBuilder.paintersAlgorithm(root, observer);
+            painterNanos[i] = System.nanoTime() - paintStart;
+        }
+
+        return new BenchmarkResult(
+            sceneName,
+            builder.toString(),
+            scene.getSegments().size(),
+            repetitions,
+            root.size(),
+            root.height(),
+            root.fragmentCount(),
+            BenchmarkResult.Timing.fromNanos(buildNanos),
+            BenchmarkResult.Timing.fromNanos(painterNanos)
+        );
+    }
+
+    /**
+     * Builds one more tree for a configuration, with instrumentation on.
+     *
+     * @param scene the scene to build the tree for
+     * @param builder the builder configuration
+     * @return the statistics of the build
+     */
+    public static BuildStatistics collectStatistics(Scene2D scene, BuilderSpec builder) {
+        BuildStatistics statistics = new BuildStatistics();
+        BuildContext context = new BuildContext(BSPTreeBuilder.NO_DEADLINE, null, statistics);
+        builder.create().buildTree(scene.getSegments(), null, context);
+        return statistics;
+    }
+
+    /**
+     * Loads one of the bundled scenes.
+     *
+     * @param scene the scene to load
+     * @return the loaded scene
+     * @throws IOException if the scene file cannot be read
+     */
+    public static Scene2D loadScene(EScenes scene) throws IOException {
+        return SceneSerializer.readScene(scene.getDisplayName(), scene.getPath());
+    }
+
+    /**
+     * Resolves a bundled scene from its constant name (e.g. "RANDOMHUGE") or display name.
+     *
+     * @param name the scene name
+     * @return the scene
+     * @throws IllegalArgumentException if no bundled scene has this name
+     */
+    public static EScenes resolveScene(String name) {
+        for (EScenes scene : bundledScenes()) {
+            if (scene.name().equalsIgnoreCase(name) || scene.getDisplayName().equalsIgnoreCase(name)) {
+                return scene;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scene: " + name);
+    }
+
+    /**
+     * Returns all the scenes bundled with the application (excluding the placeholder and custom entries).
+     *
+     * @return the list of bundled scenes
+     */
+    public static List<EScenes> bundledScenes() {
+        List<EScenes> scenes = new ArrayList<>();
+        for (EScenes scene : EScenes.values()) {
+            if (scene.getPath() == null || scene == EScenes.CUSTOM) continue;
+
+            scenes.add(scene);
+        }
+        return scenes;
+    }
+
+    private static String toCsv(List<BenchmarkResult> results) {
+        StringBuilder sb = new StringBuilder(BenchmarkResult.CSV_HEADER).append(System.lineSeparator());
+        for (BenchmarkResult result : results) {
+            sb.append(result.toCsv()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static String toJson(List<BenchmarkResult> results) {
+        StringBuilder sb = new StringBuilder("[").append(System.lineSeparator());
+        for (int i = 0; i < results.size(); i++) {
+            sb.append("  ").append(results.get(i).toJson());
+            sb.append(i < results.size() - 1 ? "," : "").append(System.lineSeparator());
+        }
+        return sb.append("]").append(System.lineSeparator()).toString();
+    }
+
+    /**
+     * Command line configuration of the runner.
+     */
+    static class Config {
+        static final String USAGE = "Usage: BenchmarkRunner [--scenes all|NAME,...] [--builders deterministic,random,...]"
+            + " [--taus 0.1,0.5,...] [--repetitions N] [--warmup N] [--observer X,Y] [--format csv|json] [--output FILE]"
+            + " [--statistics on|off]";
+
+        List<EScenes> scenes = bundledScenes();
+        List<BuilderSpec> builders = new ArrayList<>();
+        int repetitions = 5;
+        int warmup = 2;
+        Point2D observer = new Point2D(0, 0);
+        boolean json = false;
+        String output = null;
+        boolean statistics = false;
+
+        /**
+         * Parses the command line arguments.
+         *
+         * @param args the arguments
+         * @return the configuration
+         * @throws IllegalArgumentException if an argument is invalid
+         */
+        static Config parse(String[] args) {
+            Config config = new Config();
+            // Defaults, only used if neither the builders nor the taus are given.
+            List<String> builderNames = null;
+            List<String> taus = null;
+
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+
+                switch (option) {
+                    case "--scenes" -> {
+                        if (!value.equalsIgnoreCase("all")) {
+                            config.scenes = new ArrayList<>();
+                            for (String name : splitList(value)) {
+                                config.scenes.add(resolveScene(name));
+                            }
+                        }
+                    }
+                    case "--builders" -> builderNames = splitList(value);
+                    case "--taus" -> taus = splitList(value);
+                    case "--repetitions" -> config.repetitions = parsePositive(option, value, 1);
+                    case "--warmup" -> config.warmup = parsePositive(option, value, 0);
+                    case "--observer" -> {
+                        List<String> coordinates = splitList(value);
+                        if (coordinates.size() != 2) {
+                            throw new IllegalArgumentException("Observer must be given as X,Y: " + value);
+                        }
+                        try {
+                            config.observer = new Point2D(Double.parseDouble(coordinates.get(0)), Double.parseDouble(coordinates.get(1)));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid observer position: " + value, e);
+                        }
+                    }
+                    case "--format" -> {
+                        switch (value.toLowerCase(Locale.ROOT)) {
+                            case "csv" -> config.json = false;
+                            case "json" -> config.json = true;
+                            default -> throw new IllegalArgumentException("Unknown format: " + value);
+                        }
+                    }
+                    case "--output" -> config.output = value;
+                    case "--statistics" -> {
+                        switch (value.toLowerCase(Locale.ROOT)) {
+                            case "on" -> config.statistics = true;
+                            case "off" -> config.statistics = false;
+                            default -> throw new IllegalArgumentException("Statistics must be on or off: " + value);
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+
+            if (builderNames == null && taus == null) {
+                builderNames = List.of("deterministic", "random");
+                taus = List.of("0.5");
+            }
+            for (String name : builderNames != null ? builderNames : List.<String>of()) {
+                config.builders.add(BuilderSpec.parse(name));
+            }
+            for (String tau : taus != null ? taus : List.<String>of()) {
+                config.builders.add(BuilderSpec.parse("teller:" + tau));
+            }
+
+            if (config.builders.isEmpty()) {
+                throw new IllegalArgumentException("At least one builder is required.");
+            }
+            return config;
+        }
+
+        private static List<String> splitList(String value) {
+            List<String> items = new ArrayList<>();
+            for (String item : value.split(",")) {
+                if (!item.isBlank()) items.add(item.trim());
+            }
+            return items;
+        }
+
+        private static int parsePositive(String option, String value, int min) {
+            try {
+                int parsed = Integer.parseInt(value);
+                if (parsed < min) {
+                    throw new IllegalArgumentException(option + " must be at least " + min + ": " + value);
+                }
+                return parsed;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + option + ": " + value, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package be.umons.sdd.test;
+
+import be.umons.sdd.builders.AutopartitionBSPTreeBuilder;
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.CandidateSampling;
+import be.umons.sdd.builders.CostModelBSPTreeBuilder;
+import be.umons.sdd.builders.DeterministicBSPTreeBuilder;
+import be.umons.sdd.builders.LineKernels;
+import be.umons.sdd.builders.RandomBSPTreeBuilder;
+import be.umons.sdd.builders.TellerBSPTreeBuilder;
+import be.umons.sdd.interfaces.LineKernel;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Textual description of a BSP tree builder configuration, used by the benchmarks
+ * and command line tools to select builders without going through the UI.
+ *
+ * <p> Accepted formats (case insensitive):
+ * - "deterministic"
+ * - "random" or "random:SEED": objects shuffled before the deterministic build, with a new seed for each
+ *   created builder or with the given one, see {@link RandomBSPTreeBuilder}
+ * - "teller:TAU" where TAU is a value in (0, 1), e.g. "teller:0.5"
+ * - "autopartition" or "autopartition:SEED": randomized autopartition with the given seed (default 42),
+ *   see {@link AutopartitionBSPTreeBuilder}
+ * - "costmodel": lines minimizing the estimated cost of the painter's algorithm, see {@link CostModelBSPTreeBuilder}
+ *
+ * <p> A builder can be followed by options, each introduced by a "+":
+ * - "+sampled" or "+sampled=THRESHOLD": approximate candidate scoring on nodes larger than
+ *   THRESHOLD objects (default 2000), see {@link CandidateSampling}.
+ * - "+parallel" or "+parallel=CUTOFF": subtrees of nodes holding at least CUTOFF objects
+ *   (default 2048) are built in parallel, see {@link BSPTreeBuilder#setParallelBuild(int)}.
+ * - "+parallel-scoring" or "+parallel-scoring=WORK": the candidates of nodes where candidates times
+ *   objects reaches WORK (default 1000000) are scored in parallel, see {@link BSPTreeBuilder#setParallelScoring(long)}.
+ * - "+iterative": subtrees are built with an explicit stack instead of recursion,
+ *   see {@link BSPTreeBuilder#setIterativeBuild(boolean)}.
+ * - "+indexed": the tree is built on a compact segment store with index ranges,
+ *   see {@link BSPTreeBuilder#setIndexedBuild(boolean)}.
+ * - "+interned": candidates lying on the same support line are scored once per node,
+ *   see {@link BSPTreeBuilder#setLineInterning(boolean)}.
+ * - "+bounded": candidates are scored with branch-and-bound, see {@link BSPTreeBuilder#setBranchAndBound(boolean)}.
+ * - "+lazy": nodes are partitioned on their first traversal, see {@link BSPTreeBuilder#setLazyBuild(boolean)}.
+ * - "+kernel=scalar", "+kernel=vector" or "+kernel=best": candidates are scored in batches by
+ *   a line kernel, see {@link LineKernels} and {@link BSPTreeBuilder#setLineKernel(LineKernel)}.
+ *
+ * <p> For example "teller:0.5+sampled=5000".
+ */
+public class BuilderSpec {
+
+    private static final int DEFAULT_SAMPLING_THRESHOLD = 2000;
+    private static final int DEFAULT_CANDIDATE_SAMPLES = 256;
+    private static final int DEFAULT_CENTER_SAMPLES = 1024;
+    private static final long DEFAULT_SEED = 42;
+    private static final int DEFAULT_PARALLEL_CUTOFF = 2048;
+    private static final int DEFAULT_PARALLEL_SCORING_THRESHOLD = 1_000_000;
+
+    private final String type;
+    private final double tau;
+    private final long seed;
+    // False only for the random builder without a seed, which draws a new one for each created builder.
+    private final boolean seeded;
+    private final List<String> options;
+
+    private BuilderSpec(String type, double tau, List<String> options) {
+        this(type, tau, DEFAULT_SEED, !type.equals("random"), options);
+    }
+
+    private BuilderSpec(String type, double tau, long seed, boolean seeded, List<String> options) {
+        this.type = type;
+        this.tau = tau;
+        this.seed = seed;
+        this.seeded = seeded;
+        this.options = options;
+    }
+
+    /**
+     * Parses a builder specification.
+     *
+     * @param spec the textual specification (e.g. "teller:0.5")
+     * @return the parsed BuilderSpec
+     * @throws IllegalArgumentException if the specification is not valid
+     */
+    public static BuilderSpec parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Builder specification cannot be empty.");
+        }
+
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split("\\+");
+        List<String> options = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            validateOption(parts[i], spec);
+            options.add(parts[i]);
+        }
+
+        String[] tokens = parts[0].split(":");
+        String type = tokens[0];
+
+        switch (type) {
+            case "deterministic":
+            case "costmodel":
+                if (tokens.length != 1) {
+                    throw new IllegalArgumentException("Builder '" + type + "' does not take parameters: " + spec);
+                }
+                return new BuilderSpec(type, Double.NaN, options);
+
+            case "teller":
+                if (tokens.length != 2) {
+                    throw new IllegalArgumentException("Teller builder requires a tau value (e.g. teller:0.5): " + spec);
+                }
+                double tau;
+                try {
+                    tau = Double.parseDouble(tokens[1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid tau value: " + tokens[1], e);
+                }
+                if (tau <= 0 || tau >= 1) {
+                    throw new IllegalArgumentException("Invalid tau value for the Teller method. Must be in the range (0, 1): " + tau);
+                }
+                return new BuilderSpec(type, tau, options);
+
+            case "random":
+            case "autopartition":
+                if (tokens.length > 2) {
+                    throw new IllegalArgumentException("Builder '" + type + "' takes at most a seed (e.g. " + type + ":7): " + spec);
+                }
+                if (tokens.length == 1) {
+                    return new BuilderSpec(type, Double.NaN, options);
+                }
+                long seed;
+                try {
+                    seed = Long.parseLong(tokens[1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid seed value: " + tokens[1], e);
+                }
+                return new BuilderSpec(type, Double.NaN, seed, true, options);
+
+            default:
+                throw new IllegalArgumentException("Unknown builder: " + spec);
+        }
+    }
+
+    /**
+     * Creates a new builder instance for this specification, with its options applied.
+     * A fresh instance is returned on every call so that runs do not share state.
+     *
+     * @return a new BSPTreeBuilder
+     */
+    public BSPTreeBuilder create() {
+        BSPTreeBuilder builder = switch (type) {
+            case "teller" -> new TellerBSPTreeBuilder(tau);
+            case "random" -> seeded ? new RandomBSPTreeBuilder(seed) : new RandomBSPTreeBuilder();
+            case "autopartition" -> new AutopartitionBSPTreeBuilder(seed);
+            case "costmodel" -> new CostModelBSPTreeBuilder();
+            default -> new DeterministicBSPTreeBuilder();
+        };
+
+        for (String option : options) {
+            applyOption(builder, option);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns true if the builders of this configuration always build the same tree from the same scene.
+     * The random builder without a seed draws a new one for each created builder, so its trees differ from one run to the next.
+     *
+     * @return true if the trees are reproducible
+     */
+    public boolean isReproducible() {
+        return seeded;
+    }
+
+    /**
+     * Returns a human readable name for this configuration, e.g. "Teller (Tau = 0.5) [sampled]".
+     *
+     * @return the display label
+     */
+    public String getLabel() {
+        String label = switch (type) {
+            case "teller" -> "Teller (Tau = " + new DecimalFormat("#.#########").format(tau) + ")";
+            case "random" -> seeded ? "Random (Seed = " + seed + ")" : "Random";
+            case "autopartition" -> "Autopartition (Seed = " + seed + ")";
+            case "costmodel" -> "Cost Model";
+            default -> "Deterministic";
+        };
+
+        return options.isEmpty() ? label : label + " [" + String.join(", ", options) + "]";
+    }
+
+    /**
+     * Returns the canonical textual form of this specification, which can be parsed back.
+     *
+     * @return the specification string
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type);
+        if (type.equals("teller")) {
+            sb.append(':').append(new DecimalFormat("0.#########", DecimalFormatSymbols.getInstance(Locale.ROOT)).format(tau));
+        } else if (seeded && (type.equals("autopartition") || type.equals("random"))) {
+            sb.append(':').append(seed);
+        }
+        for (String option : options) {
+            sb.append('+').append(option);
+        }
+        return sb.toString();
+    }
+
+    private static void validateOption(String option, String spec) {
+        String name = optionName(option);
+        String value = optionValue(option);
+
+        switch (name) {
+            case "sampled", "parallel", "parallel-scoring" -> {
+                if (value != null) parseCount(value, option);
+            }
+            case "iterative", "indexed", "interned", "bounded", "lazy" -> {
+                if (value != null) {
+                    throw new IllegalArgumentException("Builder option '" + name + "' does not take a value: " + spec);
+                }
+            }
+            case "kernel" -> {
+                if (value == null || !List.of("scalar", "vector", "best").contains(value)) {
+                    throw new IllegalArgumentException("Builder option 'kernel' must be scalar, vector or best: " + spec);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown builder option '" + name + "' in: " + spec);
+        }
+    }
+
+    private static void applyOption(BSPTreeBuilder builder, String option) {
+        String value = optionValue(option);
+
+        switch (optionName(option)) {
+            case "sampled" -> builder.setCandidateSampling(new CandidateSampling(
+                value == null ? DEFAULT_SAMPLING_THRESHOLD : parseCount(value, option),
+                DEFAULT_CANDIDATE_SAMPLES, DEFAULT_CENTER_SAMPLES, DEFAULT_SEED));
+            case "parallel" -> builder.setParallelBuild(value == null ? DEFAULT_PARALLEL_CUTOFF : parseCount(value, option));
+            case "parallel-scoring" -> builder.setParallelScoring(value == null ? DEFAULT_PARALLEL_SCORING_THRESHOLD : parseCount(value, option));
+            case "iterative" -> builder.setIterativeBuild(true);
+            case "indexed" -> builder.setIndexedBuild(true);
+            case "interned" -> builder.setLineInterning(true);
+            case "bounded" -> builder.setBranchAndBound(true);
+            case "lazy" -> builder.setLazyBuild(true);
+            case "kernel" -> builder.setLineKernel(LineKernels.byName(value));
+            default -> throw new IllegalStateException("Unknown builder option: " + option);
+        }
+    }
+
+    private static String optionName(String option) {
+        int separator = option.indexOf('=');
+        return separator < 0 ? option : option.substring(0, separator);
+    }
+
+    private static String optionValue(String option) {
+        int separator = option.indexOf('=');
+        return separator < 0 ? null : option.substring(separator + 1);
+    }
+
+    private static int parseCount(String value, String option) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("Option value cannot be negative: " + option);
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for builder option: " + option, e);
+        }
+    }
+}
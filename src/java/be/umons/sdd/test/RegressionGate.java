@@ -0,0 +1,289 @@
+package be.umons.sdd.test;
+
+import be.umons.sdd.builders.BSPTreeBuilder;
+import be.umons.sdd.builders.DeterministicBSPTreeBuilder;
+import be.umons.sdd.builders.RandomBSPTreeBuilder;
+import be.umons.sdd.enums.EScenes;
+import be.umons.sdd.models.BSPNode;
+import be.umons.sdd.models.Point2D;
+import be.umons.sdd.models.Scene2D;
+import be.umons.sdd.models.StraightSegment2D;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Performance regression gate for the BSP tree builders.
+ *
+ * <p> It reads a baseline produced by {@link BenchmarkRunner} (CSV format), reruns every
+ * configuration of the baseline on the bundled scenes and compares the build time, painter time,
+ * tree size and fragment count against it. A per-configuration report is printed, and the
+ * process exits with status 1 if any metric regressed beyond its tolerance.
+ *
+ * <p> Times are compared on their median. A time only regresses if it is slower by more than the
+ * relative time tolerance and by more than the absolute slack, so that sub-millisecond noise on the
+ * small scenes does not fail the gate. The tree size and fragment count are only compared for the
+ * builders whose trees are reproducible (see {@link BuilderSpec#isReproducible()}): the trees of the
+ * random builder without a seed differ from one run to the next, so only its times are gated. The gate also
+ * checks, on a small scene, that the anytime build of the random builder shuffles the objects like its other builds.
+ *
+ * <p> Usage:
+ * <pre>
+ * RegressionGate --baseline FILE [--time-tolerance 0.25] [--size-tolerance 0.05] [--min-time-ms 1.0]
+ *                [--warmup N] [--observer X,Y] [--output FILE]
+ * </pre>
+ */
+public class RegressionGate {
+
+    static final String USAGE = "Usage: RegressionGate --baseline FILE [--time-tolerance 0.25] [--size-tolerance 0.05]"
+        + " [--min-time-ms 1.0] [--warmup N] [--observer X,Y] [--output FILE]";
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        String baselineFile;
+        double timeTolerance;
+        double sizeTolerance;
+        double minTimeMs;
+        int warmup;
+        Point2D observer;
+
+        try {
+            options = parseOptions(args);
+            baselineFile = options.get("--baseline");
+            if (baselineFile == null) {
+                throw new IllegalArgumentException("A baseline file is required.");
+            }
+            timeTolerance = parseDouble(options, "--time-tolerance", 0.25);
+            sizeTolerance = parseDouble(options, "--size-tolerance", 0.05);
+            minTimeMs = parseDouble(options, "--min-time-ms", 1.0);
+            warmup = (int) parseDouble(options, "--warmup", 2);
+
+            String[] coordinates = options.getOrDefault("--observer", "0,0").split(",");
+            if (coordinates.length != 2) {
+                throw new IllegalArgumentException("Observer must be given as X,Y.");
+            }
+            observer = new Point2D(Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            List<BenchmarkResult> baseline = readResults(baselineFile);
+            if (baseline.isEmpty()) {
+                throw new IOException("The baseline file does not contain any result: " + baselineFile);
+            }
+
+            List<BenchmarkResult> current = new ArrayList<>();
+            List<String> failures = new ArrayList<>();
+            Map<EScenes, Scene2D> scenes = new HashMap<>();
+
+            for (BenchmarkResult expected : baseline) {
+                EScenes scene = BenchmarkRunner.resolveScene(expected.scene);
+                Scene2D scene2D = scenes.get(scene);
+                if (scene2D == null) {
+                    scene2D = BenchmarkRunner.loadScene(scene);
+                    scenes.put(scene, scene2D);
+                }
+
+                System.err.println("Running " + expected.getKey() + "...");
+                BenchmarkResult actual = BenchmarkRunner.runConfiguration(
+                    expected.scene, scene2D, BuilderSpec.parse(expected.builder), warmup, expected.repetitions, observer);
+                current.add(actual);
+
+                List<String> regressions = compare(expected, actual, timeTolerance, sizeTolerance, minTimeMs);
+                printReport(expected, actual, regressions);
+                if (!regressions.isEmpty()) {
+                    failures.add(expected.getKey());
+                }
+            }
+
+            boolean shuffled = shufflesAnytimeBuild(BenchmarkRunner.loadScene(EScenes.RECTANGLESMALL));
+            System.out.println();
+            System.out.println("Random anytime build : " + (shuffled ? "OK" : "REGRESSION (not shuffled)"));
+            if (!shuffled) {
+                failures.add("random anytime build");
+            }
+
+            String output = options.get("--output");
+            if (output != null) {
+                StringBuilder sb = new StringBuilder(BenchmarkResult.CSV_HEADER).append(System.lineSeparator());
+                for (BenchmarkResult result : current) {
+                    sb.append(result.toCsv()).append(System.lineSeparator());
+                }
+                Files.write(Paths.get(output), sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            System.out.println();
+            if (failures.isEmpty()) {
+                System.out.println("PASSED: " + baseline.size() + " configuration(s) within tolerance.");
+            } else {
+                System.out.println("FAILED: " + failures.size() + " check(s) regressed: " + String.join(", ", failures));
+                System.exit(1);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Compares a rerun with its baseline.
+     *
+     * @param expected the baseline result
+     * @param actual the new result
+     * @param timeTolerance the allowed relative slowdown of the median times (e.g. 0.25 for +25%)
+     * @param sizeTolerance the allowed relative growth of the tree size and fragment count (reproducible builders only)
+     * @param minTimeMs the absolute slowdown (in ms) under which a time is never reported
+     * @return the descriptions of the regressed metrics, empty if none regressed
+     */
+    static List<String> compare(BenchmarkResult expected, BenchmarkResult actual,
+                                double timeTolerance, double sizeTolerance, double minTimeMs) {
+        List<String> regressions = new ArrayList<>();
+
+        if (timeRegressed(expected.buildTime.median, actual.buildTime.median, timeTolerance, minTimeMs)) {
+            regressions.add("build time");
+        }
+        if (timeRegressed(expected.painterTime.median, actual.painterTime.median, timeTolerance, minTimeMs)) {
+            regressions.add("painter time");
+        }
+        if (!BuilderSpec.parse(expected.builder).isReproducible()) {
+            return regressions;
+        }
+        if (actual.size > expected.size * (1 + sizeTolerance)) {
+            regressions.add("tree size");
+        }
+        if (actual.fragmentCount > expected.fragmentCount * (1 + sizeTolerance)) {
+            regressions.add("fragment count");
+        }
+        return regressions;
+    }
+
+    /**
+     * Checks that the anytime build of the random builder shuffles the objects: one of its trees, for a
+     * few seeds (a shuffle can keep the order by chance), must differ from the tree of the deterministic builder.
+     *
+     * @param scene the scene to build
+     * @return true if the anytime build is shuffled
+     */
+    static boolean shufflesAnytimeBuild(Scene2D scene) {
+        List<StraightSegment2D> segments = scene.getSegments();
+        List<Point2D> deterministic = endpoints(new DeterministicBSPTreeBuilder().buildTree(segments, null, BSPTreeBuilder.NO_DEADLINE));
+        for (long seed = 1; seed <= 3; seed++) {
+            if (!deterministic.equals(endpoints(new RandomBSPTreeBuilder(seed).buildTree(segments, null, BSPTreeBuilder.NO_DEADLINE)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The endpoints of the objects of a tree, in pre-order.
+    private static List<Point2D> endpoints(BSPNode root) {
+        List<Point2D> points = new ArrayList<>();
+        Deque<BSPNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BSPNode node = stack.pop();
+            for (StraightSegment2D object : node.getCoplanarObjects()) {
+                points.add(object.getStart());
+                points.add(object.getEnd());
+            }
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                stack.push(node.getLeft());
+            }
+        }
+        return points;
+    }
+
+    private static boolean timeRegressed(double expectedMs, double actualMs, double tolerance, double minTimeMs) {
+        return actualMs > expectedMs * (1 + tolerance) && actualMs - expectedMs > minTimeMs;
+    }
+
+    private static void printReport(BenchmarkResult expected, BenchmarkResult actual, List<String> regressions) {
+        String format = "  %-24s | %14s | %14s | %9s%n";
+
+        System.out.println();
+        System.out.println(expected.getKey() + (regressions.isEmpty() ? " : OK" : " : REGRESSION (" + String.join(", ", regressions) + ")"));
+        System.out.printf(format, "Metric", "Baseline", "Current", "Change");
+        System.out.printf(format, "Build time (ms)", fmt(expected.buildTime.median), fmt(actual.buildTime.median), change(expected.buildTime.median, actual.buildTime.median));
+        System.out.printf(format, "Painter time (ms)", fmt(expected.painterTime.median), fmt(actual.painterTime.median), change(expected.painterTime.median, actual.painterTime.median));
+        // Not gated for the builders whose trees are not reproducible.
+        String gated = BuilderSpec.parse(expected.builder).isReproducible() ? "" : " (not gated)";
+        System.out.printf(format, "Tree size" + gated, expected.size, actual.size, change(expected.size, actual.size));
+        System.out.printf(format, "Fragments" + gated, expected.fragmentCount, actual.fragmentCount, change(expected.fragmentCount, actual.fragmentCount));
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String change(double expected, double actual) {
+        if (expected == 0) {
+            return actual == 0 ? "0.0%" : "n/a";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", (actual - expected) / expected * 100);
+    }
+
+    /**
+     * Reads the results of a CSV file written by {@link BenchmarkRunner}.
+     *
+     * @param file the path of the file
+     * @return the results, in file order
+     * @throws IOException if the file cannot be read or is not a result file
+     */
+    static List<BenchmarkResult> readResults(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).trim().equals(BenchmarkResult.CSV_HEADER)) {
+            throw new IOException("Not a benchmark result file (missing CSV header): " + file);
+        }
+
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+
+            results.add(BenchmarkResult.fromCsv(line));
+        }
+        return results;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!List.of("--baseline", "--time-tolerance", "--size-tolerance", "--min-time-ms", "--warmup", "--observer", "--output").contains(args[i])) {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static double parseDouble(Map<String, String> options, String option, double defaultValue) {
+        String value = options.get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed < 0) {
+                throw new IllegalArgumentException(option + " cannot be negative: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value, e);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package be.umons.sdd.test;
 
 import be.umons.sdd.builders.BSPTreeBuilder;
 import be.umons.sdd.builders.PaintersViewBuilder;
-import be.umons.sdd.builders.RandomBSPTreeBuilder;
 import be.umons.sdd.builders.TellerBSPTreeBuilder;
 import be.umons.sdd.enums.EScenes;
 import be.umons.sdd.enums.ETreeBuilder;
@@ -11,7 +10,6 @@ import be.umons.sdd.models.Point2D;
 import be.umons.sdd.models.Scene2D;
 import be.umons.sdd.utils.SceneSerializer;
 import java.io.File;
-import java.text.DecimalFormat;
 import java.util.List;
 import java.util.Scanner;
 import java.util.stream.Collectors;
@@ -20,6 +18,12 @@ public class TestBSPTree {
 
     public static void main(String[] args) {
 
+        // With arguments, run the headless benchmark instead of the interactive comparison.
+        if (args.length > 0) {
+            BenchmarkRunner.main(args);
+            return;
+        }
+
         System.out.println("====================================== BSP TREE COMPARISON ======================================");
         System.out.println("This small program allows you to compare different methods of building a BSP tree.");
         System.out.println("You can either choose a predefined scene or load a custom scene from a file.");
@@ -139,10 +143,10 @@ public class TestBSPTree {
         builders.add(new TellerBSPTreeBuilder(0.0000001));
         builders.add(new TellerBSPTreeBuilder(0.9999999));
 
+        // Builders are measured one after the other so that they do not compete for the CPU.
         return builders
-            .parallelStream()
+            .stream()
             .map(builder -> {
-                // exactly the same code as before:
                 long buildStart = System.currentTimeMillis();
                 BSPNode root = builder.buildTree(scene.getSegments(), null);
                 long buildEnd   = System.currentTimeMillis();
@@ -152,7 +156,7 @@ public class TestBSPTree {
                 long paintEnd   = System.currentTimeMillis();
 
                 return new BSPMetrics(
-                    (builder instanceof TellerBSPTreeBuilder ? "Teller (Tau = " + new DecimalFormat("#.#########").format(((TellerBSPTreeBuilder) builder).getTau()) + ")" : builder instanceof RandomBSPTreeBuilder ? "Random" : "Deterministic"),
+                    builder.getLabel(),
                     scene.getSegments().size(),
                     root.size(),
                     root.height(),
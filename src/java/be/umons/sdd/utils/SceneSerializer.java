@@ -20,23 +20,45 @@ public class SceneSerializer {
     private static final File SCENES_FILE = buildSceneDirectoryPathFromCurrentDir();
 
     /**
-     * Tries to find the directory containing the scenes (src/ressources/scenes) by walking up the directory
-     * tree from the current directory. The search depth is limited to 5. If the directory is not found, a
-     * RuntimeException is thrown.
+     * Tries to find the directory containing the scenes (src/ressources/scenes).
+     *
+     * <p> The lookup is done in the following order:
+     * 1. The directory given by the "sdd.scenes" system property, if set.
+     * 2. The current directory and its parents (up to a depth of 5), so that tools started
+     *    from a sub-module (e.g. the benchmarks) still find the bundled scenes.
+     * 3. A search for a "src" folder containing "ressources/scenes" below the current
+     *    directory, with a maximum depth of 5.
+     * If the directory is not found, a RuntimeException is thrown.
      *
      * @return The directory containing the scenes, if found.
      * @throws RuntimeException If the directory is not found within a search depth of 5.
      */
     private static File buildSceneDirectoryPathFromCurrentDir() {
+        String override = System.getProperty("sdd.scenes");
+        if (override != null && !override.isBlank()) {
+            return new File(override);
+        }
+
         try {
             // Get the current directory as a real path
             Path currentDir = Paths.get(".").toRealPath();
 
-            // Search for a directory named "src" with a maximum depth of 5
+            // Walk up the directory tree looking for src/ressources/scenes
+            Path ancestor = currentDir;
+            for (int depth = 0; depth <= 5 && ancestor != null; depth++) {
+                Path scenePath = ancestor.resolve("src").resolve("ressources").resolve("scenes");
+                if (Files.isDirectory(scenePath)) {
+                    return scenePath.toFile();
+                }
+                ancestor = ancestor.getParent();
+            }
+
+            // Search for a directory named "src" holding the scenes with a maximum depth of 5
             Optional<Path> srcDirectory = Files.find(
                 currentDir, 
                 5, 
                 (path, attributes) -> Files.isDirectory(path) && "src".equals(path.getFileName().toString())
+                    && Files.isDirectory(path.resolve("ressources").resolve("scenes"))
             ).findFirst();
 
             if (srcDirectory.isPresent()) {